@@ -0,0 +1,64 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.Application;
+import org.babich.sort.DataFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting of the text file into the text file by the application with its default settings,
+ * the output of the application is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class ApplicationBenchmark {
+
+    @Param({"RANDOM", "SORTED", "LOW_CARDINALITY"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"1000000", "4000000"})
+    int size;
+
+    @Param({"1000000"})
+    int batchSize;
+
+    Path inputFile;
+    Path outputFile;
+    PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inputFile = BenchmarkData.write(BenchmarkData.generate(distribution, size), DataFormat.TEXT);
+        outputFile = Files.createTempFile("application", ".out");
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        Files.deleteIfExists(inputFile);
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public long sort() throws IOException {
+        Application.main(new String[]{"-incomingData", inputFile.toString(), "-result", outputFile.toString()
+                , "-batchSize", Integer.toString(batchSize)});
+        return Files.size(outputFile);
+    }
+}
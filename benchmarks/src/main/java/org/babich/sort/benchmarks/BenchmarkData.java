@@ -0,0 +1,87 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.DataFormat;
+import org.babich.sort.DataGenerator;
+import org.babich.sort.IntOutput;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The reproducible incoming data of the benchmarks, each distribution is generated by the {@link DataGenerator}
+ * from the fixed seed. The {@link Distribution#RANDOM} data is the data of the application generator
+ * given {@code -generate <n> -seed 42}.
+ */
+public final class BenchmarkData {
+
+    public static final long SEED = 42;
+
+    public enum Distribution {
+
+        /**
+         * uniform over all ints.
+         */
+        RANDOM(DataGenerator.Distribution.UNIFORM, 0),
+
+        /**
+         * ascending values spread over all ints.
+         */
+        SORTED(DataGenerator.Distribution.SORTED, 0),
+
+        /**
+         * descending values spread over all ints.
+         */
+        REVERSED(DataGenerator.Distribution.REVERSE, 0),
+
+        /**
+         * ascending values with a tenth of them replaced by uniform values.
+         */
+        NEARLY_SORTED(DataGenerator.Distribution.NEARLY_SORTED, 0),
+
+        /**
+         * uniform over a hundred values.
+         */
+        LOW_CARDINALITY(DataGenerator.Distribution.DUPLICATES, 100),
+
+        /**
+         * a million values by the Zipf law.
+         */
+        SKEWED(DataGenerator.Distribution.ZIPF, 1_000_000);
+
+        private final DataGenerator.Distribution generated;
+        private final int range;
+
+        Distribution(DataGenerator.Distribution generated, int range) {
+            this.generated = generated;
+            this.range = range;
+        }
+    }
+
+    private BenchmarkData() {
+    }
+
+    public static int[] generate(Distribution distribution, int size) {
+        return DataGenerator.newGenerator()
+                .withDistribution(distribution.generated)
+                .withRange(distribution.range)
+                .withPerturbation(10)
+                .withItems(size)
+                .withSeed(SEED)
+                .build()
+                .toArray();
+    }
+
+    /**
+     * @return the temporary file of the data in the format.
+     */
+    public static Path write(int[] data, DataFormat format) throws IOException {
+        Path file = Files.createTempFile("benchmark", ".in");
+        try (IntOutput writer = format.createWriter(file)) {
+            for (int value : data) {
+                writer.accept(value);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,52 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.Sorter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting of the data with a few distinct values by the counting sort and by the batches
+ * written in temporary files and merged, the time includes the merging into the consumer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx512m")
+public class CountingSortBenchmark {
+
+    @Param({"OFF", "ON"})
+    Sorter.Counting counting;
+
+    @Param({"100", "100000"})
+    int distinctValues;
+
+    @Param({"4000000"})
+    int size;
+
+    @Param({"1000000"})
+    int batchSize;
+
+    int[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = new Random(42).ints(size, 0, distinctValues).toArray();
+    }
+
+    @Benchmark
+    public void sort(Blackhole blackhole) {
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(batchSize)
+                .withCounting(counting)
+                .build();
+        for (int value : data) {
+            sorter.accept(value);
+        }
+        sorter.finish().doMergeIn(blackhole::consume);
+    }
+}
@@ -0,0 +1,65 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.DataFormat;
+import org.babich.sort.IntInput;
+import org.babich.sort.IntOutput;
+import org.babich.sort.Sorter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting of the file into the file of the same format, the text is parsed and formatted
+ * while the binary integers are copied in bulk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class DataFormatBenchmark {
+
+    @Param({"TEXT", "INT32_LE", "INT32_BE"})
+    DataFormat format;
+
+    @Param({"4000000"})
+    int size;
+
+    @Param({"1000000"})
+    int batchSize;
+
+    Path inputFile;
+    Path outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inputFile = Files.createTempFile("format", ".in");
+        outputFile = Files.createTempFile("format", ".out");
+        Random random = new Random(42);
+        try (IntOutput writer = format.createWriter(inputFile)) {
+            for (int i = 0; i < size; i++) {
+                writer.accept(random.nextInt());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(inputFile);
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public long sort() throws IOException {
+        Sorter sorter = Sorter.newSorter().withBatchSize(batchSize).build();
+        try (IntInput reader = format.createReader(inputFile)) {
+            reader.readTo(sorter);
+        }
+        return sorter.finish().doMergeInto(outputFile, format);
+    }
+}
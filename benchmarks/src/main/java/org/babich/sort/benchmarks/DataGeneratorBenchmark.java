@@ -0,0 +1,62 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.DataFormat;
+import org.babich.sort.DataGenerator;
+import org.babich.sort.IntOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating of the incoming data: the single thread {@link Random} written value by value
+ * against the {@link DataGenerator} chunks generated by all cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class DataGeneratorBenchmark {
+
+    @Param({"TEXT", "INT32_LE"})
+    DataFormat format;
+
+    @Param({"4000000"})
+    int size;
+
+    Path outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        outputFile = Files.createTempFile("benchmark", ".out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public void random() throws IOException {
+        Random random = new Random(BenchmarkData.SEED);
+        try (IntOutput writer = format.createWriter(outputFile)) {
+            for (int i = 0; i < size; i++) {
+                writer.accept(random.nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public long dataGenerator() {
+        return DataGenerator.newGenerator()
+                .withItems(size)
+                .withSeed(BenchmarkData.SEED)
+                .build()
+                .generate(outputFile, format);
+    }
+}
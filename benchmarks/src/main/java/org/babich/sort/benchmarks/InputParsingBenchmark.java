@@ -0,0 +1,64 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.DataFormat;
+import org.babich.sort.IntTextReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parsing of the line separated text file of integers:
+ * {@code Files.lines + Integer.parseInt} against the byte level {@link IntTextReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class InputParsingBenchmark {
+
+    @Param({"RANDOM", "LOW_CARDINALITY"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"1000000", "4000000"})
+    int size;
+
+    Path inputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inputFile = BenchmarkData.write(BenchmarkData.generate(distribution, size), DataFormat.TEXT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    public void filesLines(Blackhole blackhole) throws IOException {
+        try (Stream<String> stream = Files.lines(inputFile)) {
+            stream.mapToInt(Integer::parseInt).forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public long intTextReader(Blackhole blackhole) throws IOException {
+        try (IntTextReader reader = IntTextReader.newReader().withFile(inputFile).build()) {
+            return reader.readTo(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public long intTextReaderMapped(Blackhole blackhole) throws IOException {
+        try (IntTextReader reader = IntTextReader.newReader().withFile(inputFile).withMapped(true).build()) {
+            return reader.readTo(blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.Merger;
+import org.babich.sort.ParticleFormat;
+import org.babich.sort.ParticleReader;
+import org.babich.sort.ParticleWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Merging of the same items split into the given number of sorted batches in temporary files,
+ * the time includes reading the batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class MergeBenchmark {
+
+    @Param({"LINEAR", "LOSER_TREE"})
+    Merger.Strategy strategy;
+
+    @Param({"2", "16", "64", "256"})
+    int fanIn;
+
+    @Param({"RANDOM", "LOW_CARDINALITY"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"4000000"})
+    int size;
+
+    List<ParticleWriter> particles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int[] data = BenchmarkData.generate(distribution, size);
+        particles = new ArrayList<>();
+        for (int i = 0; i < fanIn; i++) {
+            int[] batch = Arrays.copyOfRange(data, (int) ((long) size * i / fanIn)
+                    , (int) ((long) size * (i + 1) / fanIn));
+            Arrays.sort(batch);
+            File file = Files.createTempFile("merge", ".in").toFile();
+            ParticleWriter particle = ParticleFormat.RAW.createWriter(file, null, ParticleReader.DEFAULT_BLOCK_SIZE
+                    , false);
+            for (int value : batch) {
+                particle.writeInt(value);
+            }
+            particle.close();
+            particles.add(particle);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        particles.forEach(ParticleWriter::delete);
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) {
+        strategy.create(particles.stream()
+                .map(ParticleWriter::asParticleReader)
+                .collect(Collectors.toList()))
+                .doMergeIn(blackhole::consume);
+    }
+}
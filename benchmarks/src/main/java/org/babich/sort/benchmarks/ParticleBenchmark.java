@@ -0,0 +1,81 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.ParticleFormat;
+import org.babich.sort.ParticleReader;
+import org.babich.sort.ParticleWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing of a sorted batch into the temporary file and reading it back by blocks in each of the formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class ParticleBenchmark {
+
+    @Param({"RAW", "DELTA_VARINT"})
+    ParticleFormat format;
+
+    @Param({"RANDOM", "LOW_CARDINALITY"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"1000000", "4000000"})
+    int size;
+
+    int[] data;
+    int[] block = new int[ParticleReader.DEFAULT_BLOCK_SIZE / Integer.BYTES];
+    Path writtenFile;
+    Path readFile;
+    ParticleWriter particle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = BenchmarkData.generate(distribution, size);
+        Arrays.sort(data);
+        writtenFile = Files.createTempFile("particle", ".out");
+        readFile = Files.createTempFile("particle", ".in");
+        particle = write(readFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(writtenFile);
+        Files.deleteIfExists(readFile);
+    }
+
+    @Benchmark
+    public long write() {
+        return write(writtenFile).bytesWritten();
+    }
+
+    @Benchmark
+    public long read(Blackhole blackhole) throws IOException {
+        long count = 0;
+        try (ParticleReader reader = particle.asParticleReader()) {
+            for (int read = reader.readInts(block); read > 0; read = reader.readInts(block)) {
+                blackhole.consume(block);
+                count += read;
+            }
+        }
+        return count;
+    }
+
+    private ParticleWriter write(Path file) {
+        ParticleWriter writer = format.createWriter(file.toFile(), null, ParticleReader.DEFAULT_BLOCK_SIZE, false);
+        for (int value : data) {
+            writer.writeInt(value);
+        }
+        writer.close();
+        return writer;
+    }
+}
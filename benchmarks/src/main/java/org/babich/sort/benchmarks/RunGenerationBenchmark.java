@@ -0,0 +1,74 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.Sorter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting with the batches of the fixed size against the replacement selection,
+ * the time includes writing the sorted batches and merging them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx100m")
+public class RunGenerationBenchmark {
+
+    @Param({"BATCH", "REPLACEMENT_SELECTION"})
+    Sorter.RunStrategy runStrategy;
+
+    @Param({"RANDOM", "NEARLY_SORTED"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"2000000"})
+    int size;
+
+    @Param({"200000"})
+    int batchSize;
+
+    int[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.generate(distribution, size);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        deleteSortedParticles();
+    }
+
+    @Benchmark
+    public int sortAndMerge(Blackhole blackhole) {
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(batchSize)
+                .withRunStrategy(runStrategy)
+                .build();
+        for (int value : data) {
+            sorter.accept(value);
+        }
+        sorter.finish().doMergeIn(blackhole::consume);
+        return sorter.getSortedParticlesCount();
+    }
+
+    /**
+     * sorted batches are written into the default temporary directory.
+     */
+    static void deleteSortedParticles() throws IOException {
+        Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> particles = Files.newDirectoryStream(tempDir, "sorter*")) {
+            for (Path particle : particles) {
+                Files.deleteIfExists(particle);
+            }
+        }
+    }
+}
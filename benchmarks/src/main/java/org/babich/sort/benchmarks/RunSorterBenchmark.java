@@ -0,0 +1,46 @@
+package org.babich.sort.benchmarks;
+
+import org.babich.sort.RunSorter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting of a batch in memory by each of the run sorters,
+ * the time includes copying the not sorted batch which is the same for all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx512m")
+public class RunSorterBenchmark {
+
+    @Param({"JDK", "PARALLEL_JDK", "RADIX", "PARALLEL_RADIX"})
+    RunSorter.Algorithm algorithm;
+
+    @Param({"RANDOM", "SORTED", "REVERSED", "LOW_CARDINALITY"})
+    BenchmarkData.Distribution distribution;
+
+    @Param({"4000000"})
+    int size;
+
+    int[] data;
+    int[] batch;
+    RunSorter sorter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.generate(distribution, size);
+        batch = new int[size];
+        sorter = algorithm.create();
+    }
+
+    @Benchmark
+    public int[] sort() {
+        System.arraycopy(data, 0, batch, 0, size);
+        sorter.sort(batch, 0, size);
+        return batch;
+    }
+}
@@ -8,10 +8,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Random;
-import java.util.function.Consumer;
-import java.util.stream.Collector;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.exit;
 import static java.lang.System.out;
@@ -22,6 +22,7 @@ import static java.lang.System.out;
  *  -incomingData ~/tmp/random-int.txt (1G test file = 10_000_000 elements)
  *  -result ~/tmp/sorted-int.txt
  *  -batchSize 10_000_000  (better size of batch for -Xmx100m)
+ *  -memoryBudget auto  (instead of the batchSize, works out the batch size from the maximum heap size)
  *  </pre>
  * This application use hard drive storage to external store data and implemented sort-merge strategy.
  * Sorted data batches are saved in temporary files as binary data format and looks like:
@@ -40,7 +41,9 @@ import static java.lang.System.out;
 public class Application {
 
     private static final String USAGE_STRING = "java -jar external-sorting-{version}.jar [-help]" +
-            " [-incomingData] [-result] [-batchSize] [generate]";
+            " [-incomingData] [-result] [-batchSize] [-memoryBudget] [-runStrategy] [-runSorter] [-sortThreads] [-mergeStrategy] [-mergeThreads]" +
+            " [-maxFanIn] [-spillFormat] [-mappedReads] [-prefetch] [-asyncSpill] [-forceSpill] [-spillDir]" +
+            " [-distinct] [-counts] [-counting] [-inputFormat] [-outputFormat] [-recordSize] [-keyOffset] [-resume] [-limit] [-offset] [-largest] [-progress] [-metrics] [generate] [-seed] [-distribution] [-range] [-perturbation]";
 
     private static final Options options;
 
@@ -74,6 +77,211 @@ public class Application {
                 .build()
         );
 
+        options.addOption(Option.builder("memoryBudget")
+                .required(false)
+                .hasArg(true)
+                .desc("bytes of memory for sorted batches and merge buffers with optional suffix k, m or g, or auto" +
+                        " for a share of the maximum heap size, the batch size, the number of sorting threads and" +
+                        " the maximum number of merged batches are worked out from it.")
+                .build()
+        );
+
+        options.addOption(Option.builder("runStrategy")
+                .required(false)
+                .hasArg(true)
+                .desc("the way of splitting data into sorted batches: BATCH or REPLACEMENT_SELECTION, default BATCH.")
+                .build()
+        );
+
+        options.addOption(Option.builder("runSorter")
+                .required(false)
+                .hasArg(true)
+                .desc("the sorting of batches in memory: JDK, PARALLEL_JDK, RADIX, PARALLEL_RADIX or AUTO, which chooses" +
+                        " it by the batch size and the number of cores, default AUTO.")
+                .build()
+        );
+
+        options.addOption(Option.builder("sortThreads")
+                .required(false)
+                .hasArg(true)
+                .desc("the number of threads sorting batches while the next batch is read, each thread keeps" +
+                        " one more batch in memory, default 1.")
+                .build()
+        );
+
+        options.addOption(Option.builder("mergeStrategy")
+                .required(false)
+                .hasArg(true)
+                .desc("the way of merging sorted batches: LINEAR or LOSER_TREE, default LOSER_TREE.")
+                .build()
+        );
+
+        options.addOption(Option.builder("mergeThreads")
+                .required(false)
+                .hasArg(true)
+                .desc("the number of key ranges of sorted batches merged in parallel, default 1.")
+                .build()
+        );
+
+        options.addOption(Option.builder("maxFanIn")
+                .required(false)
+                .hasArg(true)
+                .desc("the maximum number of sorted batches merged at once, the rest are merged in intermediate" +
+                        " passes, default 64.")
+                .build()
+        );
+
+        options.addOption(Option.builder("spillFormat")
+                .required(false)
+                .hasArg(true)
+                .desc("the format of sorted batches in temporary files: RAW or DELTA_VARINT, which takes one or two" +
+                        " bytes per item for dense data, default RAW.")
+                .build()
+        );
+
+        options.addOption(Option.builder("mappedReads")
+                .required(false)
+                .hasArg(false)
+                .desc("read sorted batches by memory-mapped blocks instead of direct buffers.")
+                .build()
+        );
+
+        options.addOption(Option.builder("prefetch")
+                .required(false)
+                .hasArg(false)
+                .desc("read merged batches in advance by a background thread, the batch which is exhausted first" +
+                        " is read first.")
+                .build()
+        );
+
+        options.addOption(Option.builder("asyncSpill")
+                .required(false)
+                .hasArg(false)
+                .desc("write sorted batches by a background thread while the next batch is sorted.")
+                .build()
+        );
+
+        options.addOption(Option.builder("forceSpill")
+                .required(false)
+                .hasArg(false)
+                .desc("force each sorted batch written by the background thread to the storage device.")
+                .build()
+        );
+
+        options.addOption(Option.builder("spillDir")
+                .required(false)
+                .hasArgs()
+                .valueSeparator(',')
+                .desc("comma separated directories of temporary files of sorted batches, the files are striped" +
+                        " across them, by default the temporary directory.")
+                .build()
+        );
+
+        options.addOption(Option.builder("distinct")
+                .required(false)
+                .hasArg(false)
+                .desc("put each value in the result once, the repeated values are collapsed in the sorted batches" +
+                        " before they are written.")
+                .build()
+        );
+
+        options.addOption(Option.builder("counts")
+                .required(false)
+                .hasArg(false)
+                .desc("put each value in the result once followed by the number of its occurrences on the same line," +
+                        " the sorted batches are written as pairs of the value and the count.")
+                .build()
+        );
+
+        options.addOption(Option.builder("counting")
+                .required(false)
+                .hasArg(true)
+                .desc("the counting sort of the values in the memory of the batches instead of sorting and merging" +
+                        " them: OFF, ON or AUTO, which counts the values only if they repeat in the first items," +
+                        " the sorting goes on by batches when there are too many distinct values, default OFF.")
+                .build()
+        );
+
+        options.addOption(Option.builder("inputFormat")
+                .required(false)
+                .hasArg(true)
+                .desc("the format of the incoming data: text, int32-le or int32-be for 32-bit binary integers" +
+                        " in the little-endian or big-endian byte order, default text.")
+                .build()
+        );
+
+        options.addOption(Option.builder("outputFormat")
+                .required(false)
+                .hasArg(true)
+                .desc("the format of the result and of the generated data: text, int32-le or int32-be, default text.")
+                .build()
+        );
+
+        options.addOption(Option.builder("recordSize")
+                .required(false)
+                .hasArg(true)
+                .desc("sort the binary file of fixed-width records of the given number of bytes by the signed 64-bit" +
+                        " big-endian key at {keyOffset}, 8 sorts the 64-bit keys alone. The result is the binary file" +
+                        " of the same records, the options of the integers like {inputFormat} are not used.")
+                .build()
+        );
+
+        options.addOption(Option.builder("keyOffset")
+                .required(false)
+                .hasArg(true)
+                .desc("the position of the 8 bytes of the key in the record of {recordSize} bytes, default 0.")
+                .build()
+        );
+
+        options.addOption(Option.builder("limit")
+                .required(false)
+                .hasArg(true)
+                .desc("put only the given number of the first items of the sorted order in the result, they are kept" +
+                        " by the heap in memory if they fit in the batch, otherwise the greater items are dropped" +
+                        " and the batches are cut and merged only up to the last needed value.")
+                .build()
+        );
+
+        options.addOption(Option.builder("offset")
+                .required(false)
+                .hasArg(true)
+                .desc("the number of the first items of the sorted order skipped before the {limit} items, default 0.")
+                .build()
+        );
+
+        options.addOption(Option.builder("largest")
+                .required(false)
+                .hasArg(false)
+                .desc("take the {limit} items from the greatest ones in descending order instead of the least ones.")
+                .build()
+        );
+
+        options.addOption(Option.builder("resume")
+                .required(false)
+                .hasArg(false)
+                .desc("record each sorted batch in the manifest next to the result, the sorting restarted after" +
+                        " a crash reuses the recorded batches and skips the incoming data consumed by them." +
+                        " It can be used only with the BATCH run strategy and the RAW spill format.")
+                .build()
+        );
+
+        options.addOption(Option.builder("progress")
+                .required(false)
+                .hasArg(true)
+                .desc("print the progress of the current phase with the estimated time left every given number" +
+                        " of seconds.")
+                .build()
+        );
+
+        options.addOption(Option.builder("metrics")
+                .required(false)
+                .hasArg(true)
+                .desc("path to the file of the JSON summary of the metrics of the sorting: the time of each phase," +
+                        " the parse rate, the sorted batches, the bytes of temporary files, the merge, the garbage" +
+                        " collection and the heap high-water mark. The summary is printed anyway.")
+                .build()
+        );
+
         options.addOption(Option.builder("generate")
                 .required(false)
                 .hasArg(true)
@@ -81,12 +289,68 @@ public class Application {
                 .build()
         );
 
+        options.addOption(Option.builder("seed")
+                .required(false)
+                .hasArg(true)
+                .desc("the seed of the generated random data, the same seed gives the same data, by default random.")
+                .build()
+        );
+
+        options.addOption(Option.builder("distribution")
+                .required(false)
+                .hasArg(true)
+                .desc("the distribution of the generated data: uniform, narrow, zipf, sorted, reverse, nearly-sorted" +
+                        " or duplicates, default uniform.")
+                .build()
+        );
+
+        options.addOption(Option.builder("range")
+                .required(false)
+                .hasArg(true)
+                .desc("the number of distinct values of the narrow, zipf and duplicates distributions of the generated" +
+                        " data, default 1000000 for narrow and zipf and 100 for duplicates.")
+                .build()
+        );
+
+        options.addOption(Option.builder("perturbation")
+                .required(false)
+                .hasArg(true)
+                .desc("the percent of the items of the nearly-sorted generated data out of order, default 1.")
+                .build()
+        );
+
     }
 
     private static Path inputFile;
     private static Path outputFile;
     private static int batchSize;
+    private static MemoryBudget memoryBudget;
+    private static Sorter.RunStrategy runStrategy;
+    private static RunSorter.Algorithm runSorter;
+    private static int sortThreads;
+    private static Merger.Strategy mergeStrategy;
+    private static int mergeThreads;
+    private static int maxFanIn;
+    private static ParticleFormat spillFormat;
+    private static boolean mappedReads;
+    private static boolean prefetch;
+    private static boolean asyncSpill;
+    private static boolean forceSpill;
+    private static volatile SpillStorage spillStorage;
+    private static Duplicates duplicates;
+    private static Sorter.Counting counting;
+    private static DataFormat inputFormat;
+    private static DataFormat outputFormat;
+    private static RecordLayout recordLayout;
+    private static boolean resume;
+    private static long limit;
+    private static boolean largest;
+    private static long offset;
+    private static long progressMillis;
+    private static Path metricsFile;
     private static long generateAmount;
+    private static Long seed;
+    private static DataGenerator.DataGeneratorBuilder generator;
 
     public static void main(String[] args) {
         try {
@@ -107,38 +371,179 @@ public class Application {
             return;
         }
 
+        if (null != recordLayout) {
+            sortRecords();
+            return;
+        }
+
         out.println("started sorting data from {" + inputFile + "}");
         out.println("the result will be placed in {" + outputFile + "}");
-        out.println("batch size of processed elements in memory: " + batchSize);
+        out.println("input format: " + inputFormat + ", output format: " + outputFormat);
 
-        try (Stream<String> stream = Files.lines(inputFile);
-             BufferedWriter writer = Files.newBufferedWriter(outputFile)) {
+        SortMetrics metrics = new SortMetrics();
+        try (IntInput reader = inputFormat.createReader(inputFile);
+             ProgressReporter progress = progressMillis > 0 ? new ProgressReporter(out, progressMillis) : null) {
+            if (null != progress) {
+                metrics.addListener(progress);
+            }
 
-            Collector<Integer, Sorter, Merger> sortedParticleCollector = Sorter.getSortedParticleCollector(batchSize);
+            JobManifest manifest = resume ? JobManifest.open(Paths.get(outputFile + ".manifest"), inputFile
+                    , "format=" + inputFormat + ", duplicates=" + duplicates) : null;
+            Sorter sorter = newSorter(manifest, reader, metrics);
 
-            long[] incomingDataAmount = new long[]{0};
-            long[] sortedDataAmount = new long[]{0};
-            stream.map(Integer::parseInt)
-                    .peek(item -> incomingDataAmount[0]++)
-                    .collect(sortedParticleCollector)
-                    .doMergeIn(writeResultToOutput(writer).andThen(v -> sortedDataAmount[0]++));
+            if (null != memoryBudget) {
+                out.println("memory budget: " + memoryBudget);
+            }
+            out.println("batch size of processed elements in memory: " + sorter.getBatchSize());
+            out.println("run strategy: " + runStrategy);
+            out.println("run sorter: " + sorter.getRunSorter());
+            out.println("number of sorting threads: " + sorter.getSortThreads());
+            out.println("merge strategy: " + mergeStrategy);
+            out.println("number of merging threads: " + mergeThreads);
+            out.println("maximum number of batches merged at once: " + sorter.getMaxFanIn());
+            out.println("read buffer of each merged batch: " + sorter.getReadBufferSize());
+            out.println("spill format: " + sorter.getParticleFormat());
+            out.println("spill directories: " + sorter.getSpillStorage().getDirectories());
+            out.println("duplicates: " + sorter.getDuplicates());
+            out.println("counting sort: " + sorter.getCounting());
+
+            long inputBytes = Files.size(inputFile);
+            if (null != progress) {
+                progress.track(SortMetrics.Phase.READING, reader::position, inputBytes);
+            }
+            metrics.startPhase(SortMetrics.Phase.READING);
+            long incomingDataAmount = 0;
+            if (null != manifest) {
+                incomingDataAmount = manifest.getConsumedItems();
+                long offset = manifest.getConsumedOffset();
+                if (offset >= 0) {
+                    reader.seek(offset);
+                } else {
+                    offset = reader.skip(incomingDataAmount);
+                }
+                out.println("job manifest: " + manifest.getFile());
+                out.println("Resumed sorted batches:" + sorter.getResumedParticlesCount() + ", skipped items:"
+                        + incomingDataAmount + " up to byte offset " + offset);
+            }
+            TopSorter top = limit > 0
+                    ? TopSorter.newTopSorter().withSorter(sorter).withOffset(offset).withLimit(limit)
+                    .withLargest(largest).build() : null;
+            incomingDataAmount += reader.readTo(null != top ? top : sorter);
+            metrics.recordInput(incomingDataAmount, inputBytes);
+
+            metrics.startPhase(SortMetrics.Phase.FINISHING);
+            Merger merger = null != top ? top.finish() : sorter.finish();
+            out.println("Sorted batches:" + sorter.getSortedParticlesCount());
+            if (null != top) {
+                out.println("Limit:" + limit + ", offset:" + offset + ", " + (top.isHeap()
+                        ? "the first items are kept by the heap in memory"
+                        : "items are put in batches " + (top.isLargest() ? "down" : "up") + " to the value "
+                        + top.getBoundValue())
+                        + ", dropped items:" + top.getDroppedItems()
+                        + ", pruned batches:" + sorter.getPrunedParticlesCount());
+            }
+            if (sorter.isCounted()) {
+                out.println("Values are counted without sorting batches, distinct values:"
+                        + sorter.getCountedValues());
+            } else if (Sorter.Counting.OFF != sorter.getCounting()) {
+                out.println("Counting sort has fallen back to sorting batches, too many distinct values.");
+            }
+            if (sorter.isInputSorted()) {
+                out.println("Incoming data is already sorted, the batches are read without merging.");
+            }
 
-            out.println("Total items found in the incoming data file:" + incomingDataAmount[0]);
-            out.println("Total items were put in the result:" + sortedDataAmount[0]);
+            if (null != progress) {
+                long outputItems = limit > 0 ? Math.min(limit, incomingDataAmount) : incomingDataAmount;
+                long outputBytes = outputFormat.isFixedWidth() ? outputFormat.lengthOf(0) * outputItems
+                        : DataFormat.TEXT == inputFormat && 0 == limit ? inputBytes : outputItems * 11;
+                progress.track(SortMetrics.Phase.MERGING, () -> outputFile.toFile().length(), outputBytes);
+            }
+            metrics.startPhase(SortMetrics.Phase.MERGING);
+            long sortedDataAmount = merger.doMergeInto(outputFile, outputFormat);
+            metrics.completePhase();
+            if (null != manifest) {
+                manifest.complete();
+            }
+            metrics.recordSorter(sorter);
+            metrics.recordMerger(merger, sortedDataAmount);
+
+            out.println("Total items found in the incoming data file:" + incomingDataAmount);
+            out.println("Total items were put in the result:" + sortedDataAmount);
+            out.println("Merge passes:" + merger.passes() + ", bytes rewritten in intermediate passes:"
+                    + merger.rewrittenBytes());
+            out.println("Bytes written in temporary files:" + sorter.getBytesWritten()
+                    + ", bytes read from them:" + sorter.getBytesRead());
+            if (prefetch) {
+                out.println("Merge waited for batches read in advance, ms:"
+                        + TimeUnit.NANOSECONDS.toMillis(sorter.getPrefetchStallNanos()));
+            }
         }
 
+        String summary = metrics.toJson();
+        out.println("metrics: " + summary);
+        if (null != metricsFile) {
+            Files.write(metricsFile, Collections.singletonList(summary));
+        }
         out.println("sorting data completed.");
     }
 
-    static Consumer<Integer> writeResultToOutput(BufferedWriter writer){
-        return value -> {
-            try {
-                writer.write(String.valueOf(value));
-                writer.newLine();
-            } catch (IOException e) {
-                throw new UncheckedIOException("Cannot write data to output file", e);
-            }
-        };
+    private static Sorter newSorter(JobManifest manifest, IntInput reader, SortListener listener) {
+        Sorter.SorterBuilder builder = Sorter.newSorter()
+                .withRunStrategy(runStrategy)
+                .withRunSorter(runSorter)
+                .withMergeStrategy(mergeStrategy)
+                .withMergeThreads(mergeThreads)
+                .withParticleFormat(spillFormat)
+                .withMappedReads(mappedReads)
+                .withPrefetch(prefetch)
+                .withAsyncSpill(asyncSpill)
+                .withForceSpill(forceSpill)
+                .withSpillStorage(spillStorage)
+                .withDuplicates(duplicates)
+                .withCounting(counting)
+                .withManifest(manifest)
+                .withInputOffset(reader::itemOffset)
+                .withListener(listener);
+
+        if (null != memoryBudget) {
+            return builder.withMemoryBudget(memoryBudget).build();
+        }
+        return builder
+                .withBatchSize(batchSize)
+                .withSortThreads(sortThreads)
+                .withMaxFanIn(maxFanIn)
+                .build();
+    }
+
+    static void sortRecords() {
+        out.println("started sorting records from {" + inputFile + "}");
+        out.println("the result will be placed in {" + outputFile + "}");
+        out.println("record layout: " + recordLayout);
+
+        RecordSorter.RecordSorterBuilder builder = RecordSorter.newRecordSorter()
+                .withLayout(recordLayout)
+                .withSpillStorage(spillStorage);
+        RecordSorter sorter = null != memoryBudget
+                ? builder.withMemoryBudget(memoryBudget).build()
+                : builder.withBatchSize(batchSize).withMaxFanIn(maxFanIn).build();
+        if (null != memoryBudget) {
+            out.println("memory budget: " + memoryBudget);
+        }
+        out.println("batch size of records in memory: " + sorter.getBatchSize());
+        out.println("maximum number of batches merged at once: " + sorter.getMaxFanIn());
+        out.println("spill directories: " + spillStorage.getDirectories());
+
+        long start = System.nanoTime();
+        long incomingDataAmount = sorter.readFrom(inputFile);
+        RecordMerger merger = sorter.finish();
+        out.println("Sorted batches:" + merger.getRunsCount());
+        long sortedDataAmount = merger.doMergeInto(outputFile);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        out.println("Total records found in the incoming data file:" + incomingDataAmount);
+        out.println("Total records were put in the result:" + sortedDataAmount);
+        out.println("Intermediate merges:" + merger.getIntermediateMerges() + ", sorted in " + millis + " ms");
+        out.println("sorting records completed.");
     }
 
     static void generateRandomData() {
@@ -146,15 +551,10 @@ public class Application {
         out.println("the result will be placed in {" + outputFile + "}");
         out.println("amount of output elements: " + generateAmount);
 
-        Random random = new Random();
-        try (BufferedWriter writer = Files.newBufferedWriter(outputFile)) {
-            for (int i = 0; i < generateAmount; i++) {
-                writer.write(String.valueOf(random.nextInt()));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        long start = System.nanoTime();
+        long bytes = generator.withItems(generateAmount).withSeed(seed).build().generate(outputFile, outputFormat);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        out.println("Bytes written: " + bytes + " in " + millis + " ms");
 
         out.println("generating data completed.");
     }
@@ -178,9 +578,86 @@ public class Application {
 
         setUpGenerateAmount(commandLine.getOptionValue("generate"));
 
+        seed = commandLine.hasOption("seed") ? Long.valueOf(commandLine.getOptionValue("seed")) : null;
+
+        setUpGenerator(commandLine);
+
         setUpOutputFile(commandLine.getOptionValue("result"));
 
         setUpBatchSize(commandLine.getOptionValue("batchSize"));
+
+        setUpMemoryBudget(commandLine);
+
+        setUpRunStrategy(commandLine.getOptionValue("runStrategy"));
+
+        setUpRunSorter(commandLine.getOptionValue("runSorter"));
+
+        setUpSortThreads(commandLine.getOptionValue("sortThreads"));
+
+        setUpMergeStrategy(commandLine.getOptionValue("mergeStrategy"));
+
+        setUpMergeThreads(commandLine.getOptionValue("mergeThreads"));
+
+        setUpMaxFanIn(commandLine.getOptionValue("maxFanIn"));
+
+        setUpSpillFormat(commandLine.getOptionValue("spillFormat"));
+
+        mappedReads = commandLine.hasOption("mappedReads");
+
+        prefetch = commandLine.hasOption("prefetch");
+
+        asyncSpill = commandLine.hasOption("asyncSpill");
+
+        setUpSpillStorage(commandLine.getOptionValues("spillDir"));
+
+        forceSpill = commandLine.hasOption("forceSpill");
+        if (forceSpill && !asyncSpill) {
+            throw new IllegalArgumentException("Option {forceSpill} can be used only with the option {asyncSpill}.");
+        }
+
+        setUpDuplicates(commandLine);
+
+        setUpCounting(commandLine.getOptionValue("counting"));
+
+        inputFormat = setUpDataFormat(commandLine.getOptionValue("inputFormat"));
+        outputFormat = setUpDataFormat(commandLine.getOptionValue("outputFormat"));
+        if (Duplicates.COUNTS == duplicates && DataFormat.TEXT != outputFormat) {
+            throw new IllegalArgumentException("Option {counts} can be used only with the text output format.");
+        }
+
+        setUpRecordLayout(commandLine);
+
+        progressMillis = commandLine.hasOption("progress")
+                ? TimeUnit.SECONDS.toMillis(Long.parseLong(commandLine.getOptionValue("progress"))) : 0;
+        if (commandLine.hasOption("progress") && progressMillis <= 0) {
+            throw new IllegalArgumentException("Option {progress} must be a positive number of seconds.");
+        }
+        metricsFile = commandLine.hasOption("metrics")
+                ? Paths.get(commandLine.getOptionValue("metrics")).normalize().toAbsolutePath() : null;
+
+        resume = commandLine.hasOption("resume");
+        if (resume && (Sorter.RunStrategy.BATCH != runStrategy || ParticleFormat.RAW != spillFormat || asyncSpill
+                || Duplicates.COUNTS == duplicates || Sorter.Counting.OFF != counting)) {
+            throw new IllegalArgumentException("Option {resume} can be used only with the BATCH run strategy," +
+                    " the RAW spill format and without the options {asyncSpill}, {counts} and {counting}.");
+        }
+
+        limit = commandLine.hasOption("limit") ? Long.parseLong(commandLine.getOptionValue("limit")) : 0;
+        offset = commandLine.hasOption("offset") ? Long.parseLong(commandLine.getOptionValue("offset")) : 0;
+        if (commandLine.hasOption("limit") && limit <= 0) {
+            throw new IllegalArgumentException("Option {limit} must be a positive number of items.");
+        }
+        largest = commandLine.hasOption("largest");
+        if (largest && 0 == limit) {
+            throw new IllegalArgumentException("Option {largest} can be used only with the option {limit}.");
+        }
+        if (commandLine.hasOption("offset") && (0 == limit || offset < 0)) {
+            throw new IllegalArgumentException("Option {offset} must be a not negative number of items" +
+                    " and can be used only with the option {limit}.");
+        }
+        if (limit > 0 && (resume || Duplicates.COUNTS == duplicates)) {
+            throw new IllegalArgumentException("Option {limit} cannot be used with the options {resume} and {counts}.");
+        }
     }
 
     private static void setUpInputFile(String path) {
@@ -214,6 +691,172 @@ public class Application {
         batchSize = Integer.parseInt(value);
     }
 
+    private static void setUpMemoryBudget(CommandLine commandLine) {
+        if (!commandLine.hasOption("memoryBudget")) {
+            memoryBudget = null;
+            return;
+        }
+        for (String option : new String[]{"batchSize", "sortThreads", "maxFanIn"}) {
+            if (commandLine.hasOption(option)) {
+                throw new IllegalArgumentException(String
+                        .format("Option {%s} cannot be used together with the memory budget.", option));
+            }
+        }
+        memoryBudget = MemoryBudget.parse(commandLine.getOptionValue("memoryBudget"));
+    }
+
+    private static void setUpRunStrategy(String value) {
+        if (null == value) {
+            runStrategy = Sorter.RunStrategy.BATCH;
+            return;
+        }
+        try {
+            runStrategy = Sorter.RunStrategy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid run strategy {%s}.", value));
+        }
+    }
+
+    private static void setUpRunSorter(String value) {
+        if (null == value) {
+            runSorter = RunSorter.Algorithm.AUTO;
+            return;
+        }
+        try {
+            runSorter = RunSorter.Algorithm.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid run sorter {%s}.", value));
+        }
+    }
+
+    private static void setUpSortThreads(String value) {
+        if (null == value) {
+            sortThreads = 1;
+            return;
+        }
+        sortThreads = Integer.parseInt(value);
+    }
+
+    private static void setUpMergeStrategy(String value) {
+        if (null == value) {
+            mergeStrategy = Merger.Strategy.LOSER_TREE;
+            return;
+        }
+        try {
+            mergeStrategy = Merger.Strategy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid merge strategy {%s}.", value));
+        }
+    }
+
+    private static void setUpMergeThreads(String value) {
+        if (null == value) {
+            mergeThreads = 1;
+            return;
+        }
+        mergeThreads = Integer.parseInt(value);
+    }
+
+    private static void setUpMaxFanIn(String value) {
+        if (null == value) {
+            maxFanIn = 64;
+            return;
+        }
+        maxFanIn = Integer.parseInt(value);
+    }
+
+    private static void setUpSpillFormat(String value) {
+        if (null == value) {
+            spillFormat = ParticleFormat.RAW;
+            return;
+        }
+        try {
+            spillFormat = ParticleFormat.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid spill format {%s}.", value));
+        }
+    }
+
+    private static void setUpSpillStorage(String[] values) {
+        if (null == values) {
+            spillStorage = SpillStorage.ofTempDirectory();
+            return;
+        }
+        List<Path> directories = new ArrayList<>();
+        for (String value : values) {
+            directories.add(Paths.get(value.trim()).normalize().toAbsolutePath());
+        }
+        spillStorage = SpillStorage.of(directories);
+    }
+
+    private static void setUpRecordLayout(CommandLine commandLine) {
+        if (!commandLine.hasOption("recordSize")) {
+            if (commandLine.hasOption("keyOffset")) {
+                throw new IllegalArgumentException("Option {keyOffset} can be used only with the option {recordSize}.");
+            }
+            recordLayout = null;
+            return;
+        }
+        for (String option : new String[]{"inputFormat", "outputFormat", "distinct", "counts", "counting", "resume"
+                , "limit", "runStrategy", "runSorter", "sortThreads", "mergeStrategy", "mergeThreads", "spillFormat"}) {
+            if (commandLine.hasOption(option)) {
+                throw new IllegalArgumentException(String
+                        .format("Option {%s} cannot be used together with the option {recordSize}.", option));
+            }
+        }
+        int keyOffset = commandLine.hasOption("keyOffset")
+                ? Integer.parseInt(commandLine.getOptionValue("keyOffset")) : 0;
+        recordLayout = RecordLayout.of(Integer.parseInt(commandLine.getOptionValue("recordSize")), keyOffset);
+    }
+
+    private static DataFormat setUpDataFormat(String value) {
+        if (null == value) {
+            return DataFormat.TEXT;
+        }
+        try {
+            return DataFormat.of(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid data format {%s}.", value));
+        }
+    }
+
+    private static void setUpCounting(String value) {
+        if (null == value) {
+            counting = Sorter.Counting.OFF;
+            return;
+        }
+        try {
+            counting = Sorter.Counting.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid counting sort {%s}.", value));
+        }
+    }
+
+    private static void setUpDuplicates(CommandLine commandLine) {
+        boolean distinct = commandLine.hasOption("distinct");
+        boolean counts = commandLine.hasOption("counts");
+        if (distinct && counts) {
+            throw new IllegalArgumentException("Options {distinct} and {counts} cannot be used together.");
+        }
+        if (counts && mergeThreads > 1) {
+            throw new IllegalArgumentException("Option {counts} can be used only with the single merging thread.");
+        }
+        duplicates = distinct ? Duplicates.DISTINCT : counts ? Duplicates.COUNTS : Duplicates.KEEP;
+    }
+
+    private static void setUpGenerator(CommandLine commandLine) {
+        generator = DataGenerator.newGenerator();
+        if (commandLine.hasOption("distribution")) {
+            generator.withDistribution(DataGenerator.Distribution.of(commandLine.getOptionValue("distribution")));
+        }
+        if (commandLine.hasOption("range")) {
+            generator.withRange(Integer.parseInt(commandLine.getOptionValue("range")));
+        }
+        if (commandLine.hasOption("perturbation")) {
+            generator.withPerturbation(Double.parseDouble(commandLine.getOptionValue("perturbation")));
+        }
+    }
+
     private static void setUpGenerateAmount(String value){
         if(null == value){
             generateAmount = 0;
@@ -243,6 +886,9 @@ public class Application {
             } catch (InterruptedException ignore) {
                 Thread.currentThread().interrupt();
             }
+            if (null != spillStorage) {
+                spillStorage.close();
+            }
             printStream.println("\nShutting down ...");
         }));
     }
@@ -0,0 +1,278 @@
+package org.babich.sort;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writing of sorted batches into files by the background thread.
+ * The streams of the batches fill byte buffers and hand the full ones to the thread, so the sorting thread goes on
+ * while the previous buffers are written. The thread writes all waiting buffers of a file by one gathering write.
+ * The number of buffers is limited, a stream waits for a free buffer when all of them are being written.
+ * Closing a stream does not wait for its file, see {@link #awaitWritten()}.
+ */
+class AsyncSpillWriter implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+    static final int DEFAULT_BUFFERS = 4;
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final boolean force;
+
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private int allocatedBuffers;
+
+    private volatile IOException failure;
+
+    /**
+     * @param maxBuffers - the maximum number of buffers, at least one more than the number of streams written at once.
+     * @param force - each file is forced to the storage device when it is written.
+     */
+    AsyncSpillWriter(int bufferSize, int maxBuffers, boolean force) {
+        if (bufferSize <= 0 || maxBuffers < 2) {
+            throw new IllegalArgumentException("bufferSize must be greater than zero and maxBuffers at least two.");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.force = force;
+        this.freeBuffers = new LinkedBlockingQueue<>(maxBuffers);
+        this.thread = new Thread(this::write, "spill-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    OutputStream open(File file) throws IOException {
+        return new SpillStream(FileChannel.open(file.toPath(), StandardOpenOption.CREATE
+                , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Waits until the files of all closed streams are written.
+     * @throws UncheckedIOException if writing of one of the files has failed.
+     */
+    void awaitWritten() {
+        CountDownLatch written = new CountDownLatch(1);
+        submit(new Task(null, null, written));
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing sorted batches.", e);
+        }
+        if (null != failure) {
+            throw new UncheckedIOException("Cannot write a sorted batch.", failure);
+        }
+    }
+
+    /**
+     * Stops the thread after the waiting buffers are written.
+     */
+    @Override
+    public void close() {
+        submit(new Task(null, null, null));
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        freeBuffers.clear();
+    }
+
+    private void submit(Task task) {
+        if (!tasks.offer(task)) {
+            throw new IllegalStateException("Cannot submit a sorted batch for writing.");
+        }
+    }
+
+    private ByteBuffer acquireBuffer() throws IOException {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (null != buffer) {
+            return buffer;
+        }
+        synchronized (this) {
+            if (allocatedBuffers < maxBuffers) {
+                allocatedBuffers++;
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a free buffer.", e);
+        }
+    }
+
+    private void write() {
+        List<Task> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(tasks.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            tasks.drainTo(batch);
+
+            for (int from = 0; from < batch.size(); ) {
+                Task task = batch.get(from);
+                if (null == task.stream) {
+                    if (null == task.completed) {
+                        return;
+                    }
+                    task.completed.countDown();
+                    from++;
+                    continue;
+                }
+                int to = from;
+                while (to < batch.size() && task.stream == batch.get(to).stream && null != batch.get(to).buffer) {
+                    to++;
+                }
+                if (to > from) {
+                    writeAll(task.stream, batch.subList(from, to));
+                } else {
+                    closeChannel(task.stream);
+                    to++;
+                }
+                from = to;
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeAll(SpillStream stream, List<Task> buffersOfStream) {
+        ByteBuffer[] buffers = new ByteBuffer[buffersOfStream.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = buffersOfStream.get(i).buffer;
+            buffers[i].flip();
+        }
+        try {
+            if (null == failure) {
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= stream.channel.write(buffers);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (ByteBuffer buffer : buffers) {
+                buffer.clear();
+                freeBuffers.add(buffer);
+            }
+        }
+    }
+
+    private void closeChannel(SpillStream stream) {
+        try {
+            if (force && null == failure) {
+                stream.channel.force(false);
+            }
+            stream.channel.close();
+        } catch (IOException e) {
+            if (null == failure) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * A buffer of the stream to write, the closing of the stream without a buffer
+     * or a barrier without a stream.
+     */
+    private static class Task {
+        final SpillStream stream;
+        final ByteBuffer buffer;
+        final CountDownLatch completed;
+
+        Task(SpillStream stream, ByteBuffer buffer, CountDownLatch completed) {
+            this.stream = stream;
+            this.buffer = buffer;
+            this.completed = completed;
+        }
+    }
+
+    private class SpillStream extends OutputStream {
+
+        final FileChannel channel;
+        private ByteBuffer buffer;
+        private boolean closed;
+
+        SpillStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (null == buffer || !buffer.hasRemaining()) {
+                nextBuffer();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (null == buffer || !buffer.hasRemaining()) {
+                    nextBuffer();
+                }
+                int part = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, part);
+                offset += part;
+                length -= part;
+            }
+        }
+
+        private void nextBuffer() throws IOException {
+            checkState();
+            submitBuffer();
+            buffer = acquireBuffer();
+        }
+
+        private void submitBuffer() {
+            if (null != buffer && buffer.position() > 0) {
+                submit(new Task(this, buffer, null));
+            } else if (null != buffer) {
+                freeBuffers.add(buffer);
+            }
+            buffer = null;
+        }
+
+        private void checkState() throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed.");
+            }
+            if (null != failure) {
+                throw new IOException("Cannot write a sorted batch.", failure);
+            }
+        }
+
+        /**
+         * Hands the rest of the data and the closing of the file to the thread without waiting for them.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            submitBuffer();
+            submit(new Task(this, null, null));
+        }
+    }
+}
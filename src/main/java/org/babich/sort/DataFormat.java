@@ -0,0 +1,106 @@
+package org.babich.sort;
+
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * The formats of the files of the incoming data and of the result.
+ */
+public enum DataFormat {
+
+    /**
+     * line separated decimal integers.
+     */
+    TEXT {
+        @Override
+        public IntInput createReader(Path file) {
+            return IntTextReader.newReader().withFile(file).build();
+        }
+
+        @Override
+        public IntOutput createWriter(Path file) {
+            return IntTextWriter.newWriter().withFile(file).build();
+        }
+
+        @Override
+        public IntOutput createWriter(FileChannel channel) {
+            return IntTextWriter.newWriter().withChannel(channel).build();
+        }
+
+        @Override
+        public int lengthOf(int value) {
+            return IntTextWriter.lineLength(value);
+        }
+    },
+
+    /**
+     * 32-bit integers in the little-endian byte order.
+     */
+    INT32_LE {
+        @Override
+        public IntInput createReader(Path file) {
+            return IntBinaryReader.newReader().withFile(file).withOrder(ByteOrder.LITTLE_ENDIAN).build();
+        }
+
+        @Override
+        public IntOutput createWriter(Path file) {
+            return IntBinaryWriter.newWriter().withFile(file).withOrder(ByteOrder.LITTLE_ENDIAN).build();
+        }
+
+        @Override
+        public IntOutput createWriter(FileChannel channel) {
+            return IntBinaryWriter.newWriter().withChannel(channel).withOrder(ByteOrder.LITTLE_ENDIAN).build();
+        }
+    },
+
+    /**
+     * 32-bit integers in the big-endian byte order.
+     */
+    INT32_BE {
+        @Override
+        public IntInput createReader(Path file) {
+            return IntBinaryReader.newReader().withFile(file).withOrder(ByteOrder.BIG_ENDIAN).build();
+        }
+
+        @Override
+        public IntOutput createWriter(Path file) {
+            return IntBinaryWriter.newWriter().withFile(file).withOrder(ByteOrder.BIG_ENDIAN).build();
+        }
+
+        @Override
+        public IntOutput createWriter(FileChannel channel) {
+            return IntBinaryWriter.newWriter().withChannel(channel).withOrder(ByteOrder.BIG_ENDIAN).build();
+        }
+    };
+
+    public abstract IntInput createReader(Path file);
+
+    public abstract IntOutput createWriter(Path file);
+
+    /**
+     * @param channel - the channel positioned at the beginning of the written data.
+     */
+    public abstract IntOutput createWriter(FileChannel channel);
+
+    /**
+     * @return number of bytes of the value in the file.
+     */
+    public int lengthOf(int value) {
+        return Integer.BYTES;
+    }
+
+    /**
+     * @return true if each value takes the same number of bytes.
+     */
+    public boolean isFixedWidth() {
+        return TEXT != this;
+    }
+
+    /**
+     * @param name - the name of the format in any case with dashes instead of underscores, like {@code int32-le}.
+     */
+    public static DataFormat of(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,455 @@
+package org.babich.sort;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The generator of the test data. The data is split into chunks of items, each chunk is generated and formatted
+ * by a pool of threads from its own {@link SplittableRandom} split off the seeded one in the order of the chunks,
+ * and the chunks are written in the same order, so the same seed gives the same data with any number of threads.
+ * Each item of the ordered distributions depends only on its index and the random of its chunk.
+ */
+public class DataGenerator {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+
+    public enum Distribution {
+
+        /**
+         * uniform over all ints.
+         */
+        UNIFORM(0),
+
+        /**
+         * uniform over the range of values from zero.
+         */
+        NARROW(1_000_000),
+
+        /**
+         * the range of values from zero by the Zipf law, the smaller the value the more often it occurs.
+         */
+        ZIPF(1_000_000),
+
+        /**
+         * ascending values spread over all ints.
+         */
+        SORTED(0),
+
+        /**
+         * descending values spread over all ints.
+         */
+        REVERSE(0),
+
+        /**
+         * ascending values with the percent of perturbation of them replaced by uniform values.
+         */
+        NEARLY_SORTED(0),
+
+        /**
+         * uniform over the range of random values spread over all ints.
+         */
+        DUPLICATES(100);
+
+        private final int defaultRange;
+
+        Distribution(int defaultRange) {
+            this.defaultRange = defaultRange;
+        }
+
+        /**
+         * @param name - the name of the distribution in any case with dashes instead of underscores,
+         *             like {@code nearly-sorted}.
+         */
+        public static Distribution of(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final Distribution distribution;
+    private final long items;
+    private final long seed;
+    private final int threads;
+    private final int chunkSize;
+    private final int range;
+    private final double perturbation;
+    private final double exponent;
+
+    /**
+     * the constants of the rejection-inversion sampling of the Zipf distribution by Hoermann and Derflinger.
+     */
+    private final double zipfLow;
+    private final double zipfHigh;
+    private final double zipfSquash;
+
+    /**
+     * the values of the high duplicates distribution.
+     */
+    private final int[] duplicates;
+
+    /**
+     * The generated chunk, the values and their bytes in the format are reused by the next chunks.
+     */
+    private static class Chunk {
+        final int[] values;
+        final byte[] bytes;
+        int length;
+
+        Chunk(int chunkSize, int maxLength) {
+            this.values = new int[chunkSize];
+            this.bytes = new byte[chunkSize * maxLength];
+        }
+    }
+
+    private DataGenerator(Distribution distribution, long items, long seed, int threads, int chunkSize, int range
+            , double perturbation, double exponent) {
+        this.distribution = distribution;
+        this.items = items;
+        this.seed = seed;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.range = range;
+        this.perturbation = perturbation;
+        this.exponent = exponent;
+        this.zipfLow = hIntegral(1.5) - 1;
+        this.zipfHigh = hIntegral(range + 0.5);
+        this.zipfSquash = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        this.duplicates = Distribution.DUPLICATES == distribution
+                ? new SplittableRandom(seed).ints(range).toArray() : null;
+    }
+
+    /**
+     * @return the value from zero, the rank of the Zipf law less one.
+     */
+    private int nextZipf(SplittableRandom random) {
+        while (true) {
+            double u = zipfHigh + random.nextDouble() * (zipfLow - zipfHigh);
+            double x = hIntegralInverse(u);
+            long rank = Math.min(range, Math.max(1, (long) (x + 0.5)));
+            if (rank - x <= zipfSquash || u >= hIntegral(rank + 0.5) - h(rank)) {
+                return (int) (rank - 1);
+            }
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1ByX((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(log1pByX(t) * x);
+    }
+
+    private static double log1pByX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1 / 3.0 - 0.25 * x));
+    }
+
+    private static double expm1ByX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+
+    /**
+     * Writes the data into the file in the format.
+     * @return number of bytes written.
+     */
+    public long generate(Path file, DataFormat format) {
+        int maxLength = format.isFixedWidth() ? Integer.BYTES : IntTextWriter.MAX_LINE_LENGTH;
+        Deque<Chunk> free = new ArrayDeque<>();
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        long written = 0;
+        ExecutorService executor = newExecutor();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE
+                , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (long first = 0; first < items; first += chunkSize) {
+                if (pending.size() == 2 * threads) {
+                    Chunk chunk = await(pending.poll());
+                    written += write(channel, chunk);
+                    free.push(chunk);
+                }
+                Chunk chunk = free.isEmpty() ? new Chunk(chunkSize, maxLength) : free.pop();
+                long start = first;
+                SplittableRandom chunkRandom = random.split();
+                pending.add(executor.submit(() -> {
+                    int count = fill(chunk.values, start, chunkRandom);
+                    chunk.length = encode(format, chunk.values, count, chunk.bytes);
+                    return chunk;
+                }));
+            }
+            while (!pending.isEmpty()) {
+                written += write(channel, await(pending.poll()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write generated data to " + file, e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return written;
+    }
+
+    /**
+     * @return the data in memory, the same as the data written into a file by the same generator.
+     */
+    public int[] toArray() {
+        if (items > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many items to be generated in memory: " + items);
+        }
+        int[] data = new int[(int) items];
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        ExecutorService executor = newExecutor();
+        try {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (long first = 0; first < data.length; first += chunkSize) {
+                int start = (int) first;
+                SplittableRandom chunkRandom = random.split();
+                pending.add(executor.submit(() -> {
+                    int[] values = new int[chunkSize];
+                    int count = fill(values, start, chunkRandom);
+                    System.arraycopy(values, 0, data, start, count);
+                }));
+            }
+            while (!pending.isEmpty()) {
+                await(pending.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return data;
+    }
+
+    /**
+     * Generates the values of the chunk starting from the item.
+     * @return number of the values of the chunk.
+     */
+    private int fill(int[] values, long first, SplittableRandom random) {
+        int count = (int) Math.min(values.length, items - first);
+        switch (distribution) {
+            case UNIFORM:
+                for (int i = 0; i < count; i++) {
+                    values[i] = random.nextInt();
+                }
+                break;
+            case NARROW:
+                for (int i = 0; i < count; i++) {
+                    values[i] = random.nextInt(range);
+                }
+                break;
+            case ZIPF:
+                for (int i = 0; i < count; i++) {
+                    values[i] = nextZipf(random);
+                }
+                break;
+            case SORTED:
+                for (int i = 0; i < count; i++) {
+                    values[i] = ascending(first + i, random);
+                }
+                break;
+            case REVERSE:
+                for (int i = 0; i < count; i++) {
+                    values[i] = ascending(items - 1 - first - i, random);
+                }
+                break;
+            case NEARLY_SORTED:
+                for (int i = 0; i < count; i++) {
+                    values[i] = random.nextDouble() * 100 < perturbation ? random.nextInt()
+                            : ascending(first + i, random);
+                }
+                break;
+            case DUPLICATES:
+                for (int i = 0; i < count; i++) {
+                    values[i] = duplicates[random.nextInt(range)];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+        return count;
+    }
+
+    /**
+     * @return the value of the item within its share of all ints, the value is greater or equal to the values
+     * of the items before it.
+     */
+    private int ascending(long index, SplittableRandom random) {
+        long low = share(index);
+        long high = share(index + 1);
+        return (int) (Integer.MIN_VALUE + (high > low ? low + random.nextLong(high - low) : low));
+    }
+
+    /**
+     * @return the offset from {@link Integer#MIN_VALUE} at which the share of the item starts.
+     */
+    private long share(long index) {
+        return (long) (index * ((double) (1L << 32) / items));
+    }
+
+    /**
+     * @return number of bytes of the values in the format.
+     */
+    private static int encode(DataFormat format, int[] values, int count, byte[] bytes) {
+        switch (format) {
+            case TEXT:
+                int position = 0;
+                for (int i = 0; i < count; i++) {
+                    position = IntTextWriter.format(values[i], bytes, position);
+                    bytes[position++] = '\n';
+                }
+                return position;
+            case INT32_LE:
+                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(values, 0, count);
+                return count * Integer.BYTES;
+            case INT32_BE:
+                ByteBuffer.wrap(bytes).asIntBuffer().put(values, 0, count);
+                return count * Integer.BYTES;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    private static int write(FileChannel channel, Chunk chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk.bytes, 0, chunk.length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return chunk.length;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generating of data is interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot generate data", e.getCause());
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("generator-%d").setDaemon(true).build());
+    }
+
+    public static DataGeneratorBuilder newGenerator() {
+        return new DataGeneratorBuilder();
+    }
+
+    public static class DataGeneratorBuilder {
+
+        private Distribution distribution = Distribution.UNIFORM;
+        private long items;
+        private Long seed;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private Integer range;
+        private double perturbation = 1;
+        private double exponent = 1;
+
+        public DataGeneratorBuilder withDistribution(Distribution distribution) {
+            this.distribution = distribution;
+            return this;
+        }
+
+        public DataGeneratorBuilder withItems(long items) {
+            this.items = items;
+            return this;
+        }
+
+        /**
+         * @param seed - the same seed gives the same data, by default random.
+         */
+        public DataGeneratorBuilder withSeed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public DataGeneratorBuilder withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param chunkSize - number of items generated by a thread at once.
+         */
+        public DataGeneratorBuilder withChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param range - number of distinct values of the {@link Distribution#NARROW}, {@link Distribution#ZIPF}
+         *              and {@link Distribution#DUPLICATES} distributions.
+         */
+        public DataGeneratorBuilder withRange(int range) {
+            this.range = range;
+            return this;
+        }
+
+        /**
+         * @param perturbation - percent of the items of the {@link Distribution#NEARLY_SORTED} distribution
+         *                     out of order, default 1.
+         */
+        public DataGeneratorBuilder withPerturbation(double perturbation) {
+            this.perturbation = perturbation;
+            return this;
+        }
+
+        /**
+         * @param exponent - the exponent of the {@link Distribution#ZIPF} distribution, default 1.
+         */
+        public DataGeneratorBuilder withExponent(double exponent) {
+            this.exponent = exponent;
+            return this;
+        }
+
+        public DataGenerator build() {
+            if (null == distribution) {
+                throw new IllegalArgumentException("distribution must be set.");
+            }
+            if (items < 0) {
+                throw new IllegalArgumentException("items cannot be negative.");
+            }
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be greater than zero.");
+            }
+            if (chunkSize <= 0 || chunkSize > (Integer.MAX_VALUE - 8) / IntTextWriter.MAX_LINE_LENGTH) {
+                throw new IllegalArgumentException("chunkSize must be greater than zero and less than "
+                        + (Integer.MAX_VALUE - 8) / IntTextWriter.MAX_LINE_LENGTH + ".");
+            }
+            int rangeOf = null == range ? distribution.defaultRange : range;
+            if (rangeOf <= 0 && 0 != distribution.defaultRange) {
+                throw new IllegalArgumentException("range must be greater than zero.");
+            }
+            if (perturbation < 0 || perturbation > 100) {
+                throw new IllegalArgumentException("perturbation must be a percent from 0 to 100.");
+            }
+            if (exponent <= 0) {
+                throw new IllegalArgumentException("exponent must be greater than zero.");
+            }
+            return new DataGenerator(distribution, items, null == seed ? new SplittableRandom().nextLong() : seed
+                    , threads, chunkSize, rangeOf, perturbation, exponent);
+        }
+    }
+}
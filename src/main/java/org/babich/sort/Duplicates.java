@@ -0,0 +1,44 @@
+package org.babich.sort;
+
+/**
+ * The ways of handling the repeated values of the incoming data.
+ * The repeated values are collapsed in the sorted batches before they are written
+ * and once more in the result of the merge.
+ */
+public enum Duplicates {
+
+    /**
+     * every item is put in the result.
+     */
+    KEEP {
+        @Override
+        public ParticleWriter collapse(ParticleWriter particle) {
+            return particle;
+        }
+    },
+
+    /**
+     * each value is put in the result once.
+     */
+    DISTINCT {
+        @Override
+        public ParticleWriter collapse(ParticleWriter particle) {
+            return new ParticleWriter.DistinctParticleWriter(particle);
+        }
+    },
+
+    /**
+     * each value is put in the result once along with the number of its occurrences.
+     */
+    COUNTS {
+        @Override
+        public ParticleWriter collapse(ParticleWriter particle) {
+            return new ParticleWriter.RunLengthParticleWriter(particle);
+        }
+    };
+
+    /**
+     * @return the writer of the sorted batch collapsing the repeated values into the particle.
+     */
+    public abstract ParticleWriter collapse(ParticleWriter particle);
+}
@@ -0,0 +1,157 @@
+package org.babich.sort;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * The reader of a binary file of 32-bit integers in the given byte order.
+ * The file is read into the direct buffer and the integers are copied by blocks through its int view,
+ * the {@link Sorter} takes each block at once into its batch, see {@link Sorter#accept(int[], int, int)}.
+ */
+public class IntBinaryReader implements IntInput {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    static final int BLOCK_SIZE = 1 << 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int[] block = new int[BLOCK_SIZE];
+    private long offset;
+
+    private IntBinaryReader(FileChannel channel, int bufferSize, ByteOrder order) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(order);
+        this.buffer.flip();
+    }
+
+    @Override
+    public long readTo(IntConsumer consumer) {
+        Sorter sorter = consumer instanceof Sorter ? (Sorter) consumer : null;
+        long count = 0;
+        try {
+            while (fill()) {
+                IntBuffer ints = buffer.asIntBuffer();
+                while (ints.hasRemaining()) {
+                    int length = Math.min(ints.remaining(), block.length);
+                    ints.get(block, 0, length);
+                    if (null != sorter) {
+                        sorter.accept(block, 0, length);
+                    } else {
+                        for (int i = 0; i < length; i++) {
+                            consumer.accept(block[i]);
+                        }
+                    }
+                    count += length;
+                }
+                int read = ints.position() * Integer.BYTES;
+                buffer.position(buffer.position() + read);
+                offset += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        return count;
+    }
+
+    /**
+     * Moves the incomplete integer at the end of the buffer to its beginning and reads the next bytes after it.
+     * @return false if the file is over.
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        int read = 0;
+        while (buffer.position() < Integer.BYTES && -1 != read) {
+            read = channel.read(buffer);
+        }
+        buffer.flip();
+        if (-1 == read && buffer.hasRemaining()) {
+            throw new EOFException(String.format("Incomplete integer at byte offset %d.", offset));
+        }
+        return buffer.hasRemaining();
+    }
+
+    @Override
+    public long position() {
+        return offset;
+    }
+
+    @Override
+    public long skip(long items) {
+        try {
+            long skipped = Math.min(items, channel.size() / Integer.BYTES);
+            if (skipped < items) {
+                throw new EOFException(String.format("The file has %d of %d skipped items.", skipped, items));
+            }
+            offset = items * Integer.BYTES;
+            channel.position(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static IntBinaryReaderBuilder newReader() {
+        return new IntBinaryReaderBuilder();
+    }
+
+    public static class IntBinaryReaderBuilder {
+
+        private Path file;
+        private FileChannel channel;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+        public IntBinaryReaderBuilder withFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public IntBinaryReaderBuilder withChannel(FileChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        public IntBinaryReaderBuilder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public IntBinaryReaderBuilder withOrder(ByteOrder order) {
+            this.order = order;
+            return this;
+        }
+
+        public IntBinaryReader build() {
+            if (bufferSize < Integer.BYTES) {
+                throw new IllegalArgumentException("bufferSize must be at least " + Integer.BYTES + " bytes.");
+            }
+            if (null != channel) {
+                return new IntBinaryReader(channel, bufferSize, order);
+            }
+
+            if (null != file) {
+                try {
+                    return new IntBinaryReader(FileChannel.open(file, StandardOpenOption.READ), bufferSize, order);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            throw new IllegalStateException("Reader cannot be created without a file.");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.babich.sort;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The writer of a binary file of 32-bit integers in the given byte order.
+ * Integers are put into the direct buffer which is flushed through the file channel when it is full.
+ */
+public class IntBinaryWriter implements IntOutput {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private IntBinaryWriter(FileChannel channel, int bufferSize, ByteOrder order) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(order);
+    }
+
+    @Override
+    public void accept(int value) {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        buffer.putInt(value);
+    }
+
+    @Override
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write data to output file", e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public static IntBinaryWriterBuilder newWriter() {
+        return new IntBinaryWriterBuilder();
+    }
+
+    public static class IntBinaryWriterBuilder {
+
+        private Path file;
+        private FileChannel channel;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+        public IntBinaryWriterBuilder withFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public IntBinaryWriterBuilder withChannel(FileChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        public IntBinaryWriterBuilder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public IntBinaryWriterBuilder withOrder(ByteOrder order) {
+            this.order = order;
+            return this;
+        }
+
+        public IntBinaryWriter build() {
+            if (bufferSize < Integer.BYTES) {
+                throw new IllegalArgumentException("bufferSize must be at least " + Integer.BYTES + " bytes.");
+            }
+            if (null != channel) {
+                return new IntBinaryWriter(channel, bufferSize, order);
+            }
+
+            if (null != file) {
+                try {
+                    return new IntBinaryWriter(FileChannel.open(file, StandardOpenOption.CREATE
+                            , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), bufferSize, order);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            throw new IllegalStateException("Writer cannot be created without a file.");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.babich.sort;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The numbers of occurrences of int keys in the open addressing hash table with linear probing.
+ * The slot with the zero count is free, so any int including zero can be a key.
+ * The table grows twice when it is half full, the number of keys is limited to keep the table in the given memory.
+ */
+public class IntHistogram {
+
+    /**
+     * the table is at most a quarter full right after growing, each slot takes the key and the count.
+     */
+    static final int MAX_BYTES_PER_KEY = 4 * (Integer.BYTES + Long.BYTES);
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final int maxKeys;
+    private int[] keys;
+    private long[] counts;
+    private int size;
+    private long total;
+
+    /**
+     * @param maxKeys - the maximum number of distinct keys.
+     */
+    public IntHistogram(int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("maxKeys must be greater than zero.");
+        }
+        this.maxKeys = maxKeys;
+        this.keys = new int[INITIAL_CAPACITY];
+        this.counts = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return the maximum number of distinct keys counted in the memory.
+     */
+    public static int maxKeys(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE >> 2, bytes / MAX_BYTES_PER_KEY));
+    }
+
+    /**
+     * Counts one more occurrence of the key.
+     * @return false if the key is new and there are already the maximum number of keys, the key is not counted.
+     */
+    public boolean add(int key) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (0 != counts[slot]) {
+            if (keys[slot] == key) {
+                counts[slot]++;
+                total++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == maxKeys) {
+            return false;
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        size++;
+        total++;
+        if (2 * size > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of occurrences of the key.
+     */
+    public long count(int key) {
+        int mask = keys.length - 1;
+        for (int slot = slotOf(key, mask); 0 != counts[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of distinct keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of occurrences of all keys.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Gives the keys in ascending order with their numbers of occurrences.
+     */
+    public void forEachSorted(Merger.CountConsumer consumer) {
+        int[] sortedKeys = keys();
+        Arrays.sort(sortedKeys);
+        for (int key : sortedKeys) {
+            consumer.accept(key, count(key));
+        }
+    }
+
+    /**
+     * Gives the keys in ascending order with their numbers of occurrences until the consumer is done.
+     * The keys are taken one by one from the min-heap, so the keys after the last given one are not sorted,
+     * Q(k + m * log(k)) for m given keys.
+     * @param done - checked before each key.
+     */
+    public void forEachSorted(Merger.CountConsumer consumer, BooleanSupplier done) {
+        int[] heap = keys();
+        for (int node = (heap.length >>> 1) - 1; node >= 0; node--) {
+            siftDown(heap, node, heap[node], heap.length);
+        }
+        for (int heapSize = heap.length; heapSize > 0 && !done.getAsBoolean(); ) {
+            int key = heap[0];
+            heapSize--;
+            siftDown(heap, 0, heap[heapSize], heapSize);
+            consumer.accept(key, count(key));
+        }
+    }
+
+    private int[] keys() {
+        int[] found = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (0 != counts[slot]) {
+                found[count++] = keys[slot];
+            }
+        }
+        return found;
+    }
+
+    private static void siftDown(int[] heap, int index, int key, int heapSize) {
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        if (index < heapSize) {
+            heap[index] = key;
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[2 * oldKeys.length];
+        counts = new long[2 * oldCounts.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (0 == oldCounts[i]) {
+                continue;
+            }
+            int slot = slotOf(oldKeys[i], mask);
+            while (0 != counts[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    /**
+     * The Fibonacci hashing spreads the neighbouring keys across the table.
+     */
+    private static int slotOf(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,44 @@
+package org.babich.sort;
+
+import java.io.Closeable;
+import java.util.function.IntConsumer;
+
+/**
+ * The reader of the incoming integers of a file in one of the {@link DataFormat}s.
+ */
+public interface IntInput extends Closeable {
+
+    /**
+     * Reads all remaining integers of the file into the consumer.
+     * @return number of read integers
+     */
+    long readTo(IntConsumer consumer);
+
+    /**
+     * @return number of bytes of the file that have been read.
+     */
+    long position();
+
+    /**
+     * Skips the first items of the file, it is called before reading.
+     * @return byte offset of the next item.
+     * @throws java.io.UncheckedIOException if the file has fewer items.
+     */
+    long skip(long items);
+
+    /**
+     * @return byte offset of the item being given to the consumer, so the items before it are read,
+     * or -1 if the reader does not track it, then the read items are skipped by {@link #skip(long)}.
+     */
+    default long itemOffset() {
+        return -1;
+    }
+
+    /**
+     * Moves to the item at the byte offset taken by {@link #itemOffset()}, it is called before reading.
+     * @throws java.io.UncheckedIOException if the file is shorter.
+     */
+    default void seek(long byteOffset) {
+        throw new UnsupportedOperationException("The reader cannot seek, the items are skipped instead.");
+    }
+}
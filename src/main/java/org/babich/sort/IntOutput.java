@@ -0,0 +1,14 @@
+package org.babich.sort;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.function.IntConsumer;
+
+/**
+ * The writer of the resulting integers into a file in one of the {@link DataFormat}s.
+ */
+public interface IntOutput extends IntConsumer, Flushable, Closeable {
+
+    @Override
+    void flush();
+}
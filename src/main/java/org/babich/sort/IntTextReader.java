@@ -0,0 +1,294 @@
+package org.babich.sort;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * The reader of a line separated text file of integers.
+ * It scans raw bytes of the file and parses signed decimal integers directly into the consumer,
+ * no String or other object is created per line.
+ * Lines can be separated by {@code \n} or {@code \r\n}, the last line may have no separator.
+ * A malformed line is reported with {@link NumberFormatException} containing the byte offset of the line.
+ */
+public class IntTextReader implements IntInput {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int bufferSize;
+    private final boolean mapped;
+    private ByteBuffer buffer;
+
+    // parser state is kept between the buffers, so a line may be split by a buffer boundary.
+    private long offset;
+    private long lineOffset;
+    private int value;
+    private boolean negative;
+    private boolean signed;
+    private int digits;
+    private boolean carriageReturn;
+
+    private IntTextReader(FileChannel channel, int bufferSize, boolean mapped) {
+        this.channel = channel;
+        this.bufferSize = bufferSize;
+        this.mapped = mapped;
+        if (!mapped) {
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    /**
+     * Parses all remaining integers of the file into the consumer.
+     * @return number of parsed integers
+     */
+    @Override
+    public long readTo(IntConsumer consumer) {
+        long count = 0;
+        try {
+            for (ByteBuffer window = nextWindow(); null != window; window = nextWindow()) {
+                count += parse(window, consumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        if (digits > 0) {
+            consumer.accept(negative ? value : -value);
+            count++;
+            resetLine(offset);
+        } else if (signed) {
+            throw malformedLine(offset);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of bytes of the file that have been parsed.
+     */
+    @Override
+    public long position() {
+        return offset;
+    }
+
+    /**
+     * The lines are counted by their separators without parsing them.
+     */
+    @Override
+    public long skip(long items) {
+        long skipped = 0;
+        long lineEnd = offset;
+        try {
+            for (ByteBuffer window = skipped < items ? nextWindow() : null; null != window
+                    ; window = skipped < items ? nextWindow() : null) {
+                int start = window.position();
+                int length = window.limit();
+                int i = start;
+                while (i < length && skipped < items) {
+                    if ('\n' == window.get(i++)) {
+                        skipped++;
+                        lineEnd = offset + i - start;
+                    }
+                }
+                offset += i - start;
+            }
+            if (skipped < items && offset > lineEnd) {
+                skipped++;
+            }
+            if (skipped < items) {
+                throw new EOFException(String.format("The file has %d of %d skipped items.", skipped, items));
+            }
+            if (!mapped) {
+                channel.position(offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        resetLine(offset);
+        return offset;
+    }
+
+    /**
+     * @return byte offset of the line being given to the consumer, the offset of the line is taken
+     * after the consumer gets its item.
+     */
+    @Override
+    public long itemOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public void seek(long byteOffset) {
+        try {
+            if (byteOffset < 0 || byteOffset > channel.size()) {
+                throw new EOFException(String.format("The file has no byte offset %d.", byteOffset));
+            }
+            if (!mapped) {
+                channel.position(byteOffset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        offset = byteOffset;
+        resetLine(offset);
+    }
+
+    private ByteBuffer nextWindow() throws IOException {
+        if (mapped) {
+            long remaining = channel.size() - offset;
+            if (remaining <= 0) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(remaining, bufferSize));
+        }
+
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (0 == read);
+        if (-1 == read) {
+            return null;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The integer is accumulated as a negative number like {@link Integer#parseInt(String)} does,
+     * so {@link Integer#MIN_VALUE} is parsed without overflow.
+     */
+    private long parse(ByteBuffer window, IntConsumer consumer) {
+        long count = 0;
+        int result = value;
+        int digitCount = digits;
+        boolean minus = negative;
+        boolean sign = signed;
+        boolean cr = carriageReturn;
+        int limit = minus ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int multiplyLimit = limit / 10;
+
+        int start = window.position();
+        int length = window.limit();
+        for (int i = start; i < length; i++) {
+            byte b = window.get(i);
+            if (b >= '0' && b <= '9' && !cr) {
+                int digit = b - '0';
+                if (result < multiplyLimit) {
+                    throw malformedLine(offset + i - start);
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    throw malformedLine(offset + i - start);
+                }
+                result -= digit;
+                digitCount++;
+            } else if ('\n' == b && digitCount > 0) {
+                consumer.accept(minus ? result : -result);
+                count++;
+                result = 0;
+                digitCount = 0;
+                minus = false;
+                sign = false;
+                cr = false;
+                limit = -Integer.MAX_VALUE;
+                multiplyLimit = limit / 10;
+                lineOffset = offset + i - start + 1;
+            } else if ('\r' == b && digitCount > 0 && !cr) {
+                cr = true;
+            } else if (('-' == b || '+' == b) && !sign && 0 == digitCount) {
+                sign = true;
+                minus = '-' == b;
+                limit = minus ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+                multiplyLimit = limit / 10;
+            } else {
+                throw malformedLine(offset + i - start);
+            }
+        }
+
+        offset += length - start;
+        value = result;
+        digits = digitCount;
+        negative = minus;
+        signed = sign;
+        carriageReturn = cr;
+        return count;
+    }
+
+    private void resetLine(long lineOffset) {
+        this.lineOffset = lineOffset;
+        this.value = 0;
+        this.digits = 0;
+        this.negative = false;
+        this.signed = false;
+        this.carriageReturn = false;
+    }
+
+    private NumberFormatException malformedLine(long byteOffset) {
+        return new NumberFormatException(String
+                .format("Malformed line at byte offset %d, unexpected input at byte offset %d.", lineOffset, byteOffset));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static IntTextReaderBuilder newReader() {
+        return new IntTextReaderBuilder();
+    }
+
+    public static class IntTextReaderBuilder {
+
+        private Path file;
+        private FileChannel channel;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private boolean mapped;
+
+        public IntTextReaderBuilder withFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public IntTextReaderBuilder withChannel(FileChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        public IntTextReaderBuilder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * use memory mapped windows of the file instead of reading into the direct buffer.
+         */
+        public IntTextReaderBuilder withMapped(boolean mapped) {
+            this.mapped = mapped;
+            return this;
+        }
+
+        public IntTextReader build() {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("bufferSize must be greater than zero.");
+            }
+            if (null != channel) {
+                return new IntTextReader(channel, bufferSize, mapped);
+            }
+
+            if (null != file) {
+                try {
+                    return new IntTextReader(FileChannel.open(file, StandardOpenOption.READ), bufferSize, mapped);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            throw new IllegalStateException("Reader cannot be created without a file.");
+        }
+    }
+}
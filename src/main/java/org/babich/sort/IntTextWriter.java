@@ -0,0 +1,216 @@
+package org.babich.sort;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The writer of a line separated text file of integers.
+ * Integers are formatted two digits at a time into the reusable byte buffer,
+ * which is flushed through the file channel when it is full, no String or char[] is created per value.
+ */
+public class IntTextWriter implements IntOutput {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * the longest line is {@code -2147483648\n}
+     */
+    static final int MAX_LINE_LENGTH = 12;
+
+    /**
+     * the longest count at the end of the line is {@code 9223372036854775807\n}
+     */
+    static final int MAX_COUNT_LENGTH = 20;
+
+    private static final byte[] DIGIT_TENS = new byte[100];
+    private static final byte[] DIGIT_ONES = new byte[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position;
+
+    private IntTextWriter(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+        this.position = 0;
+    }
+
+    @Override
+    public void accept(int value) {
+        if (position > buffer.length - MAX_LINE_LENGTH) {
+            flush();
+        }
+        position = format(value, buffer, position);
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Writes the line of the value and the number of its occurrences separated by the space.
+     */
+    public void acceptCount(int value, long count) {
+        if (position > buffer.length - MAX_LINE_LENGTH) {
+            flush();
+        }
+        position = format(value, buffer, position);
+        buffer[position++] = ' ';
+        if (position > buffer.length - MAX_COUNT_LENGTH) {
+            flush();
+        }
+        position = formatCount(count, buffer, position);
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * @return position after the last digit of the not negative count.
+     */
+    static int formatCount(long count, byte[] buffer, int offset) {
+        int end = offset + 1;
+        for (long rest = count / 10; rest > 0; rest /= 10) {
+            end++;
+        }
+        for (int charPos = end; charPos > offset; count /= 10) {
+            buffer[--charPos] = (byte) ('0' + count % 10);
+        }
+        return end;
+    }
+
+    /**
+     * Formats the value from the lowest digits, the value is kept negative,
+     * so {@link Integer#MIN_VALUE} is formatted without overflow.
+     * @return position after the last digit.
+     */
+    static int format(int value, byte[] buffer, int offset) {
+        int end = offset + stringSize(value);
+        int charPos = end;
+        int i = value;
+        if (i < 0) {
+            buffer[offset] = '-';
+        } else {
+            i = -i;
+        }
+
+        while (i <= -100) {
+            int q = i / 100;
+            int r = (q * 100) - i;
+            i = q;
+            buffer[--charPos] = DIGIT_ONES[r];
+            buffer[--charPos] = DIGIT_TENS[r];
+        }
+
+        if (i <= -10) {
+            buffer[--charPos] = DIGIT_ONES[-i];
+            buffer[--charPos] = DIGIT_TENS[-i];
+        } else {
+            buffer[--charPos] = (byte) ('0' - i);
+        }
+        return end;
+    }
+
+    /**
+     * @return number of characters of the value including the minus sign.
+     */
+    static int stringSize(int value) {
+        int sign = 0;
+        if (value < 0) {
+            sign = 1;
+        } else {
+            value = -value;
+        }
+        int bound = -10;
+        for (int i = 1; i < 10; i++) {
+            if (value > bound) {
+                return i + sign;
+            }
+            bound *= 10;
+        }
+        return 10 + sign;
+    }
+
+    /**
+     * @return number of bytes of the value line in the output.
+     */
+    public static int lineLength(int value) {
+        return stringSize(value) + 1;
+    }
+
+    @Override
+    public void flush() {
+        byteBuffer.clear().limit(position);
+        try {
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write data to output file", e);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public static IntTextWriterBuilder newWriter() {
+        return new IntTextWriterBuilder();
+    }
+
+    public static class IntTextWriterBuilder {
+
+        private Path file;
+        private FileChannel channel;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+        public IntTextWriterBuilder withFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public IntTextWriterBuilder withChannel(FileChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        public IntTextWriterBuilder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public IntTextWriter build() {
+            if (bufferSize < MAX_COUNT_LENGTH) {
+                throw new IllegalArgumentException("bufferSize must be at least " + MAX_COUNT_LENGTH + " bytes.");
+            }
+            if (null != channel) {
+                return new IntTextWriter(channel, bufferSize);
+            }
+
+            if (null != file) {
+                try {
+                    return new IntTextWriter(FileChannel.open(file, StandardOpenOption.CREATE
+                            , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), bufferSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            throw new IllegalStateException("Writer cannot be created without a file.");
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.babich.sort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * The checkpoint of a sorting job, it records each completed sorted batch written by the {@link Sorter}
+ * so the job restarted after a crash reuses the batches instead of sorting their items again.
+ * Each batch holds the next items of the incoming data, the byte offset of the incoming data after the batch
+ * is where the reading goes on, see {@link IntInput#seek(long)}. If the offset is not known the number of items
+ * consumed by the batches is the number of items of the incoming data to skip, see {@link IntInput#skip(long)}.
+ * The manifest is the properties file rewritten atomically after each batch:
+ * <pre>
+ *  input, inputSize, inputModified, job - the incoming data and the settings the batches are valid for
+ *  run.N.file, run.N.items, run.N.size, run.N.min, run.N.max, run.N.checksum - the N-th batch
+ *  run.N.offset - the byte offset of the incoming data after the N-th batch, if it is known
+ *  pending.N.file - the file of the N-th batch being written, it is deleted when the manifest is opened again
+ * </pre>
+ * The checksum of the batch is computed by its writer, the batches are forced to the storage device before they
+ * are recorded.
+ */
+public class JobManifest {
+
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 16;
+    private static final Pattern RUN_FILE = Pattern.compile("run\\.(\\d+)\\.file");
+    private static final Pattern PENDING_FILE = Pattern.compile("pending\\.(\\d+)\\.file");
+
+    private final Path file;
+    private final Properties job;
+    private final List<Run> runs = new ArrayList<>();
+    private final Map<Integer, Path> pendingRuns = new TreeMap<>();
+
+    /**
+     * The completed sorted batch.
+     */
+    public static class Run {
+
+        private final int number;
+        private final Path file;
+        private final long items;
+        private final long size;
+        private final int min;
+        private final int max;
+        private final long checksum;
+        private final long offset;
+
+        /**
+         * @param items - number of consumed items of the incoming data.
+         * @param size - number of written items, less than consumed ones if the duplicates are collapsed.
+         * @param offset - byte offset of the incoming data after the batch, or -1 if it is not known.
+         */
+        Run(int number, Path file, long items, long size, int min, int max, long checksum, long offset) {
+            this.number = number;
+            this.file = file;
+            this.items = items;
+            this.size = size;
+            this.min = min;
+            this.max = max;
+            this.checksum = checksum;
+            this.offset = offset;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return true if the file is in place with the recorded size and checksum.
+         */
+        boolean isValid() {
+            try {
+                return Files.isRegularFile(file) && Files.size(file) == size * Integer.BYTES
+                        && checksum == checksumOf(file);
+            } catch (IOException | UncheckedIOException e) {
+                return false;
+            }
+        }
+    }
+
+    private JobManifest(Path file, Properties job) {
+        this.file = file;
+        this.job = job;
+    }
+
+    /**
+     * Loads the manifest of the same incoming data and job, the batches recorded after the first missing or
+     * damaged one are deleted, as well as the batches which were being written when the job stopped.
+     * The manifest of other data or other job is discarded along with its batches.
+     * @param input - the file of the incoming data, its size and modification time are recorded.
+     * @param job - the settings which change the content of the batches, like the format of the incoming data.
+     */
+    public static JobManifest open(Path file, Path input, String job) {
+        Properties properties = new Properties();
+        try {
+            properties.setProperty("input", input.toAbsolutePath().toString());
+            properties.setProperty("inputSize", Long.toString(Files.size(input)));
+            properties.setProperty("inputModified", Long.toString(Files.getLastModifiedTime(input).toMillis()));
+            properties.setProperty("job", job);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        JobManifest manifest = new JobManifest(file, properties);
+        Properties recorded = load(file);
+        pendingFilesOf(recorded).forEach(JobManifest::delete);
+        boolean valid = properties.stringPropertyNames().stream()
+                .allMatch(name -> Objects.equals(properties.getProperty(name), recorded.getProperty(name)));
+        for (Run run : runsOf(recorded)) {
+            valid = valid && manifest.runs.size() == run.number && run.isValid();
+            if (valid) {
+                manifest.runs.add(run);
+            } else {
+                delete(run.file);
+            }
+        }
+        manifest.write();
+        return manifest;
+    }
+
+    /**
+     * @return the valid batches in the order of the incoming data.
+     */
+    public synchronized List<Run> getRuns() {
+        return Collections.unmodifiableList(new ArrayList<>(runs));
+    }
+
+    /**
+     * @return number of the first items of the incoming data consumed by the consecutive batches.
+     */
+    public synchronized long getConsumedItems() {
+        long items = 0;
+        for (int i = 0; i < runs.size() && runs.get(i).number == i; i++) {
+            items += runs.get(i).items;
+        }
+        return items;
+    }
+
+    /**
+     * @return byte offset of the incoming data after the consecutive batches, or -1 if it is not known
+     * for the last of them.
+     */
+    public synchronized long getConsumedOffset() {
+        long offset = 0;
+        for (int i = 0; i < runs.size() && runs.get(i).number == i; i++) {
+            offset = runs.get(i).offset;
+        }
+        return offset;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Records the file of the batch before it is written, so the file is not left behind if the job stops
+     * before the batch is recorded by {@link #addRun}.
+     * @param number - the position of the batch in the incoming data.
+     */
+    public synchronized void addPendingRun(int number, Path batch) {
+        pendingRuns.put(number, batch);
+        write();
+    }
+
+    /**
+     * Forces the written batch to the storage device and records it.
+     * @param number - the position of the batch in the incoming data.
+     * @param items - number of consumed items of the incoming data.
+     * @param size - number of written items.
+     * @param checksum - the CRC32 of the bytes of the batch computed while it was written.
+     * @param offset - byte offset of the incoming data after the batch, or -1 if it is not known.
+     */
+    public void addRun(int number, Path batch, long items, long size, int min, int max, long checksum
+            , long offset) {
+        force(batch);
+        Run run = new Run(number, batch, items, size, min, max, checksum, offset);
+        synchronized (this) {
+            pendingRuns.remove(number);
+            runs.add(run);
+            runs.sort(Comparator.comparingInt(Run::getNumber));
+            write();
+        }
+    }
+
+    /**
+     * Deletes the manifest along with the files of the recorded batches when the job is completed.
+     */
+    public synchronized void complete() {
+        runs.forEach(run -> delete(run.file));
+        runs.clear();
+        pendingRuns.values().forEach(JobManifest::delete);
+        pendingRuns.clear();
+        delete(file);
+    }
+
+    static long checksumOf(Path batch) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(batch, StandardOpenOption.READ)) {
+            while (-1 != channel.read(buffer)) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return crc.getValue();
+    }
+
+    private static void force(Path batch) {
+        try (FileChannel channel = FileChannel.open(batch, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Properties load(Path file) {
+        Properties properties = new Properties();
+        if (!Files.isRegularFile(file)) {
+            return properties;
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            properties.load(stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the job manifest.", e);
+        }
+        return properties;
+    }
+
+    /**
+     * @return the recorded batches in the order of their numbers, the files of unreadable records are deleted.
+     */
+    private static List<Run> runsOf(Properties properties) {
+        List<Run> recorded = new ArrayList<>();
+        for (String name : properties.stringPropertyNames()) {
+            Matcher matcher = RUN_FILE.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String prefix = prefixOf(Integer.parseInt(matcher.group(1)));
+            try {
+                recorded.add(new Run(Integer.parseInt(matcher.group(1))
+                        , Paths.get(properties.getProperty(name))
+                        , Long.parseLong(properties.getProperty(prefix + "items"))
+                        , Long.parseLong(properties.getProperty(prefix + "size"))
+                        , Integer.parseInt(properties.getProperty(prefix + "min"))
+                        , Integer.parseInt(properties.getProperty(prefix + "max"))
+                        , Long.parseLong(properties.getProperty(prefix + "checksum"))
+                        , Long.parseLong(properties.getProperty(prefix + "offset", "-1"))));
+            } catch (NumberFormatException e) {
+                delete(Paths.get(properties.getProperty(name)));
+            }
+        }
+        recorded.sort(Comparator.comparingInt(Run::getNumber));
+        return recorded;
+    }
+
+    private static List<Path> pendingFilesOf(Properties properties) {
+        List<Path> pending = new ArrayList<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (PENDING_FILE.matcher(name).matches()) {
+                pending.add(Paths.get(properties.getProperty(name)));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * The manifest is written next to itself and moved over the previous one, so it is never seen half written.
+     */
+    private void write() {
+        Properties properties = new Properties();
+        properties.putAll(job);
+        for (Run run : runs) {
+            String prefix = prefixOf(run.number);
+            properties.setProperty(prefix + "file", run.file.toAbsolutePath().toString());
+            properties.setProperty(prefix + "items", Long.toString(run.items));
+            properties.setProperty(prefix + "size", Long.toString(run.size));
+            properties.setProperty(prefix + "min", Integer.toString(run.min));
+            properties.setProperty(prefix + "max", Integer.toString(run.max));
+            properties.setProperty(prefix + "checksum", Long.toString(run.checksum));
+            if (run.offset >= 0) {
+                properties.setProperty(prefix + "offset", Long.toString(run.offset));
+            }
+        }
+        pendingRuns.forEach((number, batch) -> properties
+                .setProperty("pending." + number + ".file", batch.toAbsolutePath().toString()));
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(written)) {
+                properties.store(stream, "sorted batches of the job");
+            }
+            force(written);
+            Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the job manifest.", e);
+        }
+    }
+
+    private static String prefixOf(int number) {
+        return "run." + number + ".";
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.babich.sort;
+
+/**
+ * The number of bytes of the heap available for sorting.
+ * While sorting the whole budget is shared by the batches in memory,
+ * while merging it is shared by the read buffers of the merged batches.
+ * <pre>
+ *  sorting:  (sortThreads + 1) * batchSize * 4 + max(1, sortThreads) * batchSize * extraBytesPerItem bytes
+ *  merging:  mergeThreads * maxFanIn * readBufferSize bytes
+ * </pre>
+ */
+public class MemoryBudget {
+
+    /**
+     * part of the maximum heap size used by the automatic budget, the rest is left for the JVM and the application.
+     */
+    static final double AUTO_HEAP_SHARE = 0.6;
+
+    static final int MIN_BATCH_SIZE = 1 << 16;
+    static final int MAX_SORT_THREADS = 4;
+
+    static final int MIN_READ_BUFFER_SIZE = 1 << 16;
+    static final int MAX_READ_BUFFER_SIZE = 1 << 20;
+    static final int MAX_FAN_IN = 256;
+
+    private final long bytes;
+
+    private MemoryBudget(long bytes) {
+        if (bytes < (long) MIN_BATCH_SIZE * Integer.BYTES) {
+            throw new IllegalArgumentException("memory budget must be at least "
+                    + (MIN_BATCH_SIZE * Integer.BYTES) + " bytes.");
+        }
+        this.bytes = bytes;
+    }
+
+    public static MemoryBudget ofBytes(long bytes) {
+        return new MemoryBudget(bytes);
+    }
+
+    /**
+     * @return budget as the share of the maximum heap size of the JVM.
+     */
+    public static MemoryBudget ofRuntime() {
+        return new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * AUTO_HEAP_SHARE));
+    }
+
+    /**
+     * @param value - number of bytes with optional suffix k, m or g, or {@code auto} for {@link #ofRuntime()}.
+     */
+    public static MemoryBudget parse(String value) {
+        String size = value.trim().toLowerCase();
+        if ("auto".equals(size)) {
+            return ofRuntime();
+        }
+        if (size.isEmpty()) {
+            throw new IllegalArgumentException("Memory budget cannot be empty.");
+        }
+
+        int unit = "kmg".indexOf(size.charAt(size.length() - 1)) + 1;
+        if (unit > 0) {
+            size = size.substring(0, size.length() - 1);
+        }
+        long multiplier = 1L << (10 * unit);
+        try {
+            return ofBytes(Long.parseLong(size) * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid memory budget {%s}.", value));
+        }
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Each sorting thread keeps its own batch, the threads are used only if every batch is big enough.
+     * @param availableThreads - the maximum number of sorting threads, zero means sorting on the caller thread.
+     */
+    public int sortThreads(int availableThreads) {
+        int threads = Math.min(availableThreads, MAX_SORT_THREADS);
+        while (threads > 0 && batchSize(threads) < MIN_BATCH_SIZE) {
+            threads--;
+        }
+        return threads;
+    }
+
+    /**
+     * @return number of items of each batch when all batches fit in the budget.
+     */
+    public int batchSize(int sortThreads) {
+        return batchSize(sortThreads, 0);
+    }
+
+    /**
+     * @param extraBytesPerItem - bytes of the buffer of the sorting for each item, see {@link RunSorter}.
+     * @return number of items of each batch when all batches and buffers of the sorting fit in the budget.
+     */
+    public int batchSize(int sortThreads, int extraBytesPerItem) {
+        long bytesPerItem = (sortThreads + 1L) * Integer.BYTES + Math.max(1L, sortThreads) * extraBytesPerItem;
+        return (int) Math.min(Integer.MAX_VALUE - 8, bytes / bytesPerItem);
+    }
+
+    /**
+     * @param bytesPerRecord - bytes of memory of each record sorted in memory, see {@link RecordSorter}.
+     * @return number of records of the batch when the batch and the buffers of its sorting fit in the budget.
+     */
+    public int recordBatchSize(int bytesPerRecord) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, bytes / bytesPerRecord);
+    }
+
+    /**
+     * @param blockBytes - bytes of the block read from each merged batch of records, see {@link RecordMerger}.
+     * @return the maximum number of batches of records merged at once.
+     */
+    public int recordMaxFanIn(int blockBytes) {
+        return (int) Math.max(2, Math.min(MAX_FAN_IN, bytes / blockBytes));
+    }
+
+    /**
+     * @return the maximum number of batches merged at once, so each of them has a read buffer of the minimal size.
+     */
+    public int maxFanIn(int mergeThreads) {
+        return (int) Math.max(2, Math.min(MAX_FAN_IN, bytes / ((long) mergeThreads * MIN_READ_BUFFER_SIZE)));
+    }
+
+    /**
+     * @return bytes of the read buffer of each merged batch.
+     */
+    public int readBufferSize(int mergeThreads, int maxFanIn) {
+        return (int) Math.min(MAX_READ_BUFFER_SIZE, bytes / ((long) mergeThreads * maxFanIn));
+    }
+
+    @Override
+    public String toString() {
+        return bytes + " bytes";
+    }
+}
@@ -1,11 +1,29 @@
 package org.babich.sort;
 
+import com.google.common.base.Throwables;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.IntConsumer;
 
 /**
  * Merging sorted data from batches into the result consumer.
@@ -14,7 +32,174 @@ import java.util.function.Consumer;
  */
 public interface Merger {
 
-    void doMergeIn(Consumer<Integer> consumer);
+    void doMergeIn(IntConsumer consumer);
+
+    /**
+     * Boxing adapter for the {@link #doMergeIn(IntConsumer)}, it has its own name, so a lambda given to
+     * {@code doMergeIn} is never ambiguous.
+     */
+    default void doMergeInBoxed(Consumer<Integer> consumer) {
+        doMergeIn(consumer::accept);
+    }
+
+    /**
+     * Merging sorted data into the consumer of each distinct value and the number of its occurrences.
+     */
+    default void doMergeCountsIn(CountConsumer consumer) {
+        CountingConsumer counting = new CountingConsumer(consumer);
+        doMergeIn(counting);
+        counting.finish();
+    }
+
+    /**
+     * @return number of passes over the data, the last pass is the merging into the result.
+     */
+    default int passes() {
+        return 1;
+    }
+
+    /**
+     * @return number of bytes written into the intermediate batches before the last pass.
+     */
+    default long rewrittenBytes() {
+        return 0;
+    }
+
+    /**
+     * @return number of batches merged at once by the last pass.
+     */
+    default int fanIn() {
+        return 1;
+    }
+
+    /**
+     * Merging sorted data into the line separated text file.
+     * @return number of elements put in the file.
+     */
+    default long doMergeInto(Path output) {
+        return doMergeInto(output, DataFormat.TEXT);
+    }
+
+    /**
+     * Merging sorted data into the file of the format.
+     * @return number of elements put in the file.
+     */
+    default long doMergeInto(Path output, DataFormat format) {
+        long[] count = new long[]{0};
+        try (IntOutput writer = format.createWriter(output)) {
+            doMergeIn(writer.andThen(value -> count[0]++));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write data to output file", e);
+        }
+        return count[0];
+    }
+
+    /**
+     * Merging sorted data into the file of the format, each distinct value is put once.
+     * @return number of values put in the file.
+     */
+    default long doMergeDistinctInto(Path output, DataFormat format) {
+        long[] count = new long[]{0};
+        try (IntOutput writer = format.createWriter(output)) {
+            doMergeCountsIn((value, occurrences) -> {
+                writer.accept(value);
+                count[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write data to output file", e);
+        }
+        return count[0];
+    }
+
+    /**
+     * The consumer of a distinct value and the number of its occurrences.
+     */
+    @FunctionalInterface
+    interface CountConsumer {
+        void accept(int value, long count);
+    }
+
+    /**
+     * The consumer which needs no more values after some of them, like the page of the first items.
+     * The merging loops check it after each value and stop as soon as it is done.
+     */
+    interface LimitedConsumer extends IntConsumer {
+
+        boolean isDone();
+
+        /**
+         * @return the consumer as the limited one, or {@code null} if it takes all values.
+         */
+        static LimitedConsumer limitedOf(IntConsumer consumer) {
+            return consumer instanceof LimitedConsumer ? (LimitedConsumer) consumer : null;
+        }
+
+        /**
+         * @return true if the consumer is limited and needs no more values.
+         */
+        static boolean isDone(LimitedConsumer limited) {
+            return null != limited && limited.isDone();
+        }
+    }
+
+    /**
+     * Collapses the equal values following each other into the value and the number of its occurrences,
+     * the last value is given to the consumer by {@link #finish()}.
+     */
+    class CountingConsumer implements IntConsumer {
+
+        private final CountConsumer consumer;
+        private int value;
+        private long count;
+
+        public CountingConsumer(CountConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(int value) {
+            if (count > 0 && this.value == value) {
+                count++;
+                return;
+            }
+            finish();
+            this.value = value;
+            this.count = 1;
+        }
+
+        public void finish() {
+            if (count > 0) {
+                consumer.accept(value, count);
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Available implementations of the merger.
+     */
+    enum Strategy {
+
+        /**
+         * linear search of the minimum value among the heads of the batches, Q(n * k).
+         */
+        LINEAR(MultiWayMerger::new),
+
+        /**
+         * tournament tree of losers over the heads of the batches, Q(n * log(k)).
+         */
+        LOSER_TREE(LoserTreeMerger::new);
+
+        private final Function<List<ParticleReader>, Merger> factory;
+
+        Strategy(Function<List<ParticleReader>, Merger> factory) {
+            this.factory = factory;
+        }
+
+        public Merger create(List<ParticleReader> particleReaders) {
+            return factory.apply(particleReaders);
+        }
+    }
 
 
     class MultiWayMerger implements Merger {
@@ -26,7 +211,12 @@ public interface Merger {
         }
 
         @Override
-        public void doMergeIn(Consumer<Integer> consumer) {
+        public int fanIn() {
+            return particles.size();
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
             //noinspection UnstableApiUsage
             try (Closer closer = particles.stream().collect(Closer::create, Closer::register, Closer::register)) {
                 merge(initialBuffer(), consumer);
@@ -39,9 +229,10 @@ public interface Merger {
             return particles.stream().mapToInt(ParticleReader::readInt).toArray();
         }
 
-        void merge(int[] bufferedParticleValues, Consumer<Integer> resultConsumer) {
+        void merge(int[] bufferedParticleValues, IntConsumer resultConsumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(resultConsumer);
             int minValueIndex;
-            for (; bufferedParticleValues.length > 0
+            for (; bufferedParticleValues.length > 0 && !LimitedConsumer.isDone(limited)
                     ; bufferedParticleValues = readParticle(bufferedParticleValues, minValueIndex)) {
 
                 minValueIndex = findMinValueIndexOf(bufferedParticleValues);
@@ -92,4 +283,976 @@ public interface Merger {
 
     }
 
+
+    /**
+     * Merging based on the tree of losers (tournament tree).
+     * Each internal node of the tree keeps the index of the batch that lost the match in this node,
+     * the winner of the whole tournament is kept in the root {@code tree[0]}.
+     * Replacing the winner with the next value of its batch replays only the matches on the path
+     * from the leaf to the root, so each element costs Q(log(k)) comparisons.
+     * An exhausted batch is marked as such and always loses, so the tree is never rebuilt.
+     * The items of each batch are taken from the readers by blocks of {@link #BLOCK_SIZE}.
+     */
+    class LoserTreeMerger implements Merger {
+
+        static final int BLOCK_SIZE = 1024;
+
+        private final List<ParticleReader> particles;
+        private final int[] heads;
+        private final boolean[] exhausted;
+        private final int[] tree;
+
+        private final int[][] blocks;
+        private final int[] positions;
+        private final int[] limits;
+
+        public LoserTreeMerger(List<ParticleReader> particleReaders) {
+            this.particles = new ArrayList<>(particleReaders);
+            this.heads = new int[particles.size()];
+            this.exhausted = new boolean[particles.size()];
+            this.tree = new int[particles.size()];
+            this.blocks = new int[particles.size()][BLOCK_SIZE];
+            this.positions = new int[particles.size()];
+            this.limits = new int[particles.size()];
+        }
+
+        @Override
+        public int fanIn() {
+            return particles.size();
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            //noinspection UnstableApiUsage
+            try (Closer closer = particles.stream().collect(Closer::create, Closer::register, Closer::register)) {
+                if (particles.isEmpty()) {
+                    return;
+                }
+                initialHeads();
+                buildTree();
+                merge(consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read a sorted batch.", e);
+            }
+        }
+
+        void initialHeads() {
+            for (int i = 0; i < particles.size(); i++) {
+                readParticle(i);
+            }
+        }
+
+        void merge(IntConsumer resultConsumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(resultConsumer);
+            for (int winner = tree[0]; !exhausted[winner] && !LimitedConsumer.isDone(limited); winner = tree[0]) {
+                resultConsumer.accept(heads[winner]);
+                readParticle(winner);
+                replay(winner);
+            }
+        }
+
+        void readParticle(int index) {
+            if (positions[index] == limits[index]) {
+                limits[index] = particles.get(index).readInts(blocks[index]);
+                positions[index] = 0;
+                if (0 == limits[index]) {
+                    exhausted[index] = true;
+                    return;
+                }
+            }
+            heads[index] = blocks[index][positions[index]++];
+        }
+
+        /**
+         * The leaves of the tree are virtual nodes {@code k..2k-1}, the internal nodes are {@code 1..k-1}.
+         */
+        void buildTree() {
+            int k = heads.length;
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for (int node = k - 1; node > 0; node--) {
+                int left = winners[2 * node];
+                int right = winners[2 * node + 1];
+                if (less(left, right)) {
+                    winners[node] = left;
+                    tree[node] = right;
+                } else {
+                    winners[node] = right;
+                    tree[node] = left;
+                }
+            }
+            tree[0] = k > 1 ? winners[1] : 0;
+        }
+
+        void replay(int index) {
+            int winner = index;
+            for (int node = (heads.length + index) >> 1; node > 0; node >>= 1) {
+                if (less(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        boolean less(int left, int right) {
+            if (exhausted[left]) {
+                return false;
+            }
+            if (exhausted[right]) {
+                return true;
+            }
+            return heads[left] < heads[right] || (heads[left] == heads[right] && left < right);
+        }
+    }
+
+    /**
+     * Merging disjoint key ranges of the sorted batches in parallel.
+     * Splitter values are chosen from the samples of the batches, then the bounds of each key range are found
+     * in every batch by the binary search. Each range is merged by its own worker with its own readers of the batches
+     * and written into its own precomputed position of the output file.
+     * Equal values always fall into the same range, so the result is the same as of a single merger.
+     */
+    class PartitionedMerger implements Merger {
+
+        /**
+         * number of samples taken from each batch per a key range.
+         */
+        static final int SAMPLES_PER_PARTITION = 16;
+
+        /**
+         * the values from which the lines of the values get longer or shorter by a digit, see {@link #lengthOf}.
+         */
+        static final int[] LENGTH_BOUNDS = {-999_999_999, -99_999_999, -9_999_999, -999_999, -99_999, -9_999, -999
+                , -99, -9, 0, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+        private final List<ParticleWriter> particles;
+        private final int partitions;
+        private final Function<List<ParticleReader>, Merger> mergers;
+        private final Consumer<ParticleWriter> onMerged;
+
+        /**
+         * number of the key ranges of each batch not read to the end yet.
+         */
+        private AtomicInteger[] pendingRanges;
+
+        public PartitionedMerger(List<ParticleWriter> particles, int partitions, Strategy strategy) {
+            this(particles, partitions, strategy::create);
+        }
+
+        /**
+         * @param mergers - creates the merger of each key range.
+         */
+        public PartitionedMerger(List<ParticleWriter> particles, int partitions
+                , Function<List<ParticleReader>, Merger> mergers) {
+            this(particles, partitions, mergers, particle -> {
+            });
+        }
+
+        /**
+         * @param onMerged - gets each batch as soon as all its key ranges are read to the end.
+         */
+        public PartitionedMerger(List<ParticleWriter> particles, int partitions
+                , Function<List<ParticleReader>, Merger> mergers, Consumer<ParticleWriter> onMerged) {
+            if (partitions <= 0) {
+                throw new IllegalArgumentException("partitions must be greater than zero.");
+            }
+            this.particles = new ArrayList<>(particles);
+            this.partitions = partitions;
+            this.mergers = mergers;
+            this.onMerged = onMerged;
+        }
+
+        @Override
+        public int fanIn() {
+            return particles.size();
+        }
+
+        /**
+         * Merging key ranges one after another into the consumer.
+         */
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(consumer);
+            long[][] bounds = partitionBounds();
+            for (int partition = 0; partition < bounds.length - 1 && !LimitedConsumer.isDone(limited); partition++) {
+                mergerOf(bounds[partition], bounds[partition + 1]).doMergeIn(consumer);
+            }
+        }
+
+        @Override
+        public long doMergeInto(Path output, DataFormat format) {
+            long[][] bounds = partitionBounds();
+            int ranges = bounds.length - 1;
+
+            try {
+                Files.write(output, new byte[0]);
+                ExecutorService executor = newExecutor(ranges);
+                try {
+                    long[][] lengthBounds = format.isFixedWidth() ? null : lengthBounds();
+                    long[] positions = new long[ranges];
+                    for (int range = 1; range < ranges; range++) {
+                        positions[range] = positions[range - 1]
+                                + lengthOf(format, lengthBounds, bounds[range - 1], bounds[range]);
+                    }
+
+                    long[] counts = awaitAll(submitAll(executor, ranges
+                            , range -> mergeInto(output, format, positions[range], bounds[range], bounds[range + 1])));
+                    return Arrays.stream(counts).sum();
+                } finally {
+                    executor.shutdownNow();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write data to output file", e);
+            }
+        }
+
+        /**
+         * The length of each key range is not known before the equal values of its batches are collapsed,
+         * so the first range is written into the output and the rest of them into their own files next to it,
+         * which are appended to the output one after another.
+         */
+        @Override
+        public long doMergeDistinctInto(Path output, DataFormat format) {
+            long[][] bounds = partitionBounds();
+            int ranges = bounds.length - 1;
+            List<Path> files = new ArrayList<>();
+            for (int range = 0; range < ranges; range++) {
+                files.add(0 == range ? output : output.resolveSibling(output.getFileName() + ".range" + range));
+            }
+
+            ExecutorService executor = newExecutor(ranges);
+            try {
+                long[] counts = awaitAll(submitAll(executor, ranges
+                        , range -> mergeDistinctInto(files.get(range), format, bounds[range], bounds[range + 1])));
+                try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE
+                        , StandardOpenOption.APPEND)) {
+                    for (Path file : files.subList(1, ranges)) {
+                        try (FileChannel range = FileChannel.open(file, StandardOpenOption.READ)) {
+                            long size = range.size();
+                            for (long position = 0; position < size; ) {
+                                position += range.transferTo(position, size - position, channel);
+                            }
+                        }
+                        Files.delete(file);
+                    }
+                }
+                return Arrays.stream(counts).sum();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write data to output file", e);
+            } finally {
+                executor.shutdownNow();
+                for (Path file : files.subList(1, ranges)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+
+        private long mergeDistinctInto(Path output, DataFormat format, long[] from, long[] to) throws IOException {
+            long[] count = new long[]{0};
+            try (IntOutput writer = format.createWriter(output)) {
+                mergerOf(from, to).doMergeCountsIn((value, occurrences) -> {
+                    writer.accept(value);
+                    count[0]++;
+                });
+            }
+            return count[0];
+        }
+
+        private static ExecutorService newExecutor(int ranges) {
+            return Executors.newFixedThreadPool(Math.max(1, ranges)
+                    , new ThreadFactoryBuilder().setNameFormat("merger-%d").setDaemon(true).build());
+        }
+
+        private long mergeInto(Path output, DataFormat format, long position, long[] from, long[] to)
+                throws IOException {
+            long[] count = new long[]{0};
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE);
+                 IntOutput writer = format.createWriter(channel.position(position))) {
+                mergerOf(from, to).doMergeIn(writer.andThen(value -> count[0]++));
+            }
+            return count[0];
+        }
+
+        /**
+         * @return for each batch the index of the first element which is not less than each of {@link #LENGTH_BOUNDS}.
+         */
+        private long[][] lengthBounds() {
+            long[][] lengthBounds = new long[particles.size()][];
+            for (int i = 0; i < particles.size(); i++) {
+                ParticleWriter particle = particles.get(i);
+                try (ParticleWriter.RandomReader reader = particle.randomReader()) {
+                    lengthBounds[i] = Arrays.stream(LENGTH_BOUNDS)
+                            .mapToLong(bound -> lowerBound(reader, particle.size(), bound))
+                            .toArray();
+                }
+            }
+            return lengthBounds;
+        }
+
+        /**
+         * The values of the same number of digits follow each other in the sorted batch, so the bytes of the key range
+         * are counted from the bounds of the values of each length without reading the values.
+         * @param lengthBounds - the bounds of the values of each length, {@code null} for the fixed width format.
+         * @return number of bytes of the key range in the file.
+         */
+        private long lengthOf(DataFormat format, long[][] lengthBounds, long[] from, long[] to) {
+            long length = 0;
+            for (int i = 0; i < particles.size(); i++) {
+                if (null == lengthBounds) {
+                    length += (to[i] - from[i]) * format.lengthOf(0);
+                    continue;
+                }
+                long start = 0;
+                int valueLength = format.lengthOf(Integer.MIN_VALUE);
+                for (int bound = 0; bound <= LENGTH_BOUNDS.length; bound++) {
+                    long end = bound < LENGTH_BOUNDS.length ? lengthBounds[i][bound] : particles.get(i).size();
+                    length += Math.max(0, Math.min(end, to[i]) - Math.max(start, from[i])) * valueLength;
+                    if (bound < LENGTH_BOUNDS.length) {
+                        start = end;
+                        valueLength = format.lengthOf(LENGTH_BOUNDS[bound]);
+                    }
+                }
+            }
+            return length;
+        }
+
+        private Merger mergerOf(long[] from, long[] to) {
+            List<ParticleReader> readers = new ArrayList<>();
+            for (int i = 0; i < particles.size(); i++) {
+                if (from[i] < to[i]) {
+                    ParticleWriter particle = particles.get(i);
+                    AtomicInteger pending = pendingRanges[i];
+                    readers.add(new ParticleReader.OnExhaustedParticleReader(particle.asParticleReader(from[i], to[i])
+                            , () -> {
+                        if (0 == pending.decrementAndGet()) {
+                            onMerged.accept(particle);
+                        }
+                    }));
+                }
+            }
+            return mergers.apply(readers);
+        }
+
+        /**
+         * @return for each bound between the key ranges the index of the first element of each batch in the range,
+         * the first bound is the beginning of the batches and the last one is the end of the batches.
+         */
+        long[][] partitionBounds() {
+            List<ParticleWriter.RandomReader> readers = new ArrayList<>();
+            long[][] bounds;
+            try {
+                particles.forEach(particle -> readers.add(particle.randomReader()));
+                int[] splitters = splitters(readers);
+                bounds = new long[splitters.length + 2][];
+                bounds[0] = new long[particles.size()];
+                bounds[bounds.length - 1] = particles.stream().mapToLong(ParticleWriter::size).toArray();
+                for (int i = 0; i < splitters.length; i++) {
+                    bounds[i + 1] = new long[particles.size()];
+                    for (int j = 0; j < particles.size(); j++) {
+                        bounds[i + 1][j] = lowerBound(readers.get(j), particles.get(j).size(), splitters[i]);
+                    }
+                }
+            } finally {
+                readers.forEach(ParticleWriter.RandomReader::close);
+            }
+            pendingRanges = new AtomicInteger[particles.size()];
+            for (int i = 0; i < particles.size(); i++) {
+                int ranges = 0;
+                for (int range = 0; range < bounds.length - 1; range++) {
+                    ranges += bounds[range][i] < bounds[range + 1][i] ? 1 : 0;
+                }
+                pendingRanges[i] = new AtomicInteger(ranges);
+            }
+            return bounds;
+        }
+
+        /**
+         * Each sample stands for an equal share of its batch, so the weighted quantiles of the samples
+         * split all elements into ranges of about the same size.
+         * @param readers - the readers of the batches at any positions in the order of the batches.
+         */
+        int[] splitters(List<ParticleWriter.RandomReader> readers) {
+            long total = particles.stream().mapToLong(ParticleWriter::size).sum();
+            if (partitions < 2 || 0 == total) {
+                return new int[0];
+            }
+
+            int samplesPerParticle = partitions * SAMPLES_PER_PARTITION;
+            List<long[]> samples = new ArrayList<>();
+            for (int particle = 0; particle < particles.size(); particle++) {
+                long size = particles.get(particle).size();
+                int amount = (int) Math.min(size, samplesPerParticle);
+                for (int i = 0; i < amount; i++) {
+                    samples.add(new long[]{readers.get(particle).valueAt(i * size / amount), size / amount});
+                }
+            }
+            samples.sort((l, r) -> Long.compare(l[0], r[0]));
+
+            int[] splitters = new int[partitions - 1];
+            int found = 0;
+            long weight = 0;
+            for (long[] sample : samples) {
+                weight += sample[1];
+                if (found < splitters.length && weight >= (found + 1) * total / partitions) {
+                    int splitter = (int) sample[0];
+                    if (0 == found || splitters[found - 1] < splitter) {
+                        splitters[found++] = splitter;
+                    }
+                }
+            }
+            return Arrays.copyOf(splitters, found);
+        }
+
+        /**
+         * @param size - number of elements of the batch.
+         * @return index of the first element of the sorted batch which is not less than the value.
+         */
+        static long lowerBound(ParticleWriter.RandomReader reader, long size, int value) {
+            long low = 0;
+            long high = size;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (reader.valueAt(middle) < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        interface RangeTask {
+            long call(int range) throws IOException;
+        }
+
+        private static List<Future<Long>> submitAll(ExecutorService executor, int ranges, RangeTask task) {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int range = 0; range < ranges; range++) {
+                int current = range;
+                futures.add(executor.submit(() -> task.call(current)));
+            }
+            return futures;
+        }
+
+        private static long[] awaitAll(List<Future<Long>> futures) throws IOException {
+            long[] results = new long[futures.size()];
+            try {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while merging.", e);
+            } catch (ExecutionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+                throw new IllegalStateException("Cannot merge a key range.", e.getCause());
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Merging with the limited number of simultaneously opened batches.
+     * While there are more batches than the limit, the smallest batches are merged into a new intermediate batch
+     * (like building the Huffman tree), so the biggest batches are rewritten the least number of times.
+     * The first intermediate merge takes only as many batches as needed for the last merge to be complete.
+     */
+    class CascadingMerger implements Merger {
+
+        private final PriorityQueue<Particle> particles;
+        private final int maxFanIn;
+        private final Function<List<ParticleReader>, Merger> mergers;
+        private final Supplier<ParticleWriter> intermediateParticles;
+        private final Function<List<ParticleWriter>, Merger> lastMerger;
+        private final Consumer<ParticleWriter> onMerged;
+
+        private int passes;
+        private long rewrittenBytes;
+        private int lastFanIn = -1;
+
+        /**
+         * @param intermediateParticles - creates writers of intermediate batches.
+         * @param lastMerger - merger of the batches remaining after the intermediate passes.
+         */
+        public CascadingMerger(List<ParticleWriter> particles, int maxFanIn, Strategy strategy
+                , Supplier<ParticleWriter> intermediateParticles, Function<List<ParticleWriter>, Merger> lastMerger) {
+            this(particles, maxFanIn, (Function<List<ParticleReader>, Merger>) strategy::create, intermediateParticles
+                    , lastMerger);
+        }
+
+        /**
+         * @param mergers - creates the merger of each intermediate pass.
+         */
+        public CascadingMerger(List<ParticleWriter> particles, int maxFanIn
+                , Function<List<ParticleReader>, Merger> mergers, Supplier<ParticleWriter> intermediateParticles
+                , Function<List<ParticleWriter>, Merger> lastMerger) {
+            this(particles, maxFanIn, mergers, intermediateParticles, lastMerger, ParticleWriter::delete);
+        }
+
+        /**
+         * @param onMerged - gets each batch merged into an intermediate batch instead of deleting it.
+         */
+        public CascadingMerger(List<ParticleWriter> particles, int maxFanIn
+                , Function<List<ParticleReader>, Merger> mergers, Supplier<ParticleWriter> intermediateParticles
+                , Function<List<ParticleWriter>, Merger> lastMerger, Consumer<ParticleWriter> onMerged) {
+            if (maxFanIn < 2) {
+                throw new IllegalArgumentException("maxFanIn must be at least two.");
+            }
+            this.particles = new PriorityQueue<>(Comparator.comparingLong((Particle particle) -> particle.writer.size()));
+            particles.forEach(writer -> this.particles.add(new Particle(writer, 0)));
+            this.maxFanIn = maxFanIn;
+            this.mergers = mergers;
+            this.intermediateParticles = intermediateParticles;
+            this.lastMerger = lastMerger;
+            this.onMerged = onMerged;
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            mergeIntermediateParticles().doMergeIn(consumer);
+        }
+
+        @Override
+        public long doMergeInto(Path output, DataFormat format) {
+            return mergeIntermediateParticles().doMergeInto(output, format);
+        }
+
+        @Override
+        public long doMergeDistinctInto(Path output, DataFormat format) {
+            return mergeIntermediateParticles().doMergeDistinctInto(output, format);
+        }
+
+        @Override
+        public int passes() {
+            return passes;
+        }
+
+        @Override
+        public long rewrittenBytes() {
+            return rewrittenBytes;
+        }
+
+        @Override
+        public int fanIn() {
+            return lastFanIn >= 0 ? lastFanIn : Math.min(maxFanIn, particles.size());
+        }
+
+        /**
+         * @return number of batches of the first intermediate merge, so each next merge takes {@code maxFanIn}
+         * batches and the last one takes exactly {@code maxFanIn} of them.
+         */
+        static int firstFanIn(int batches, int maxFanIn) {
+            return (batches - 2) % (maxFanIn - 1) + 2;
+        }
+
+        private Merger mergeIntermediateParticles() {
+            int fanIn = firstFanIn(particles.size(), maxFanIn);
+            while (particles.size() > maxFanIn) {
+                mergeSmallest(fanIn);
+                fanIn = maxFanIn;
+            }
+
+            passes = particles.stream().mapToInt(particle -> particle.level).max().orElse(0) + 1;
+
+            List<ParticleWriter> writers = new ArrayList<>();
+            particles.forEach(particle -> writers.add(particle.writer));
+            particles.clear();
+            lastFanIn = writers.size();
+            return lastMerger.apply(writers);
+        }
+
+        /**
+         * The merged batches are given to the callback which deletes them by default,
+         * so the external memory holds each item at most twice.
+         */
+        private void mergeSmallest(int fanIn) {
+            List<ParticleWriter> merged = new ArrayList<>();
+            List<ParticleReader> readers = new ArrayList<>();
+            int level = 0;
+            for (int i = 0; i < fanIn; i++) {
+                Particle particle = particles.poll();
+                merged.add(particle.writer);
+                readers.add(particle.writer.asParticleReader());
+                level = Math.max(level, particle.level);
+            }
+
+            ParticleWriter writer = intermediateParticles.get();
+            mergers.apply(readers).doMergeIn(writer::writeInt);
+            writer.close();
+            merged.forEach(onMerged);
+
+            rewrittenBytes += writer.bytesWritten();
+            particles.add(new Particle(writer, level + 1));
+        }
+
+        /**
+         * The batch and the number of merges it passed.
+         */
+        private static class Particle {
+            final ParticleWriter writer;
+            final int level;
+
+            Particle(ParticleWriter writer, int level) {
+                this.writer = writer;
+                this.level = level;
+            }
+        }
+    }
+
+    /**
+     * Merging of the batches read in advance by the background thread, see {@link Prefetcher}.
+     */
+    class PrefetchingMerger implements Merger {
+
+        private final List<ParticleReader> particles;
+        private final Strategy strategy;
+        private final int blockSize;
+        private final int depth;
+        private final Consumer<long[]> stallListener;
+
+        private long[] stallNanos = new long[0];
+
+        /**
+         * @param blockSize - number of items read from a batch at once.
+         * @param depth - number of blocks of each batch read in advance.
+         * @param stallListener - gets the nanoseconds the merge waited for each batch when the merge is completed.
+         */
+        public PrefetchingMerger(List<ParticleReader> particleReaders, Strategy strategy, int blockSize, int depth
+                , Consumer<long[]> stallListener) {
+            this.particles = new ArrayList<>(particleReaders);
+            this.strategy = strategy;
+            this.blockSize = blockSize;
+            this.depth = depth;
+            this.stallListener = stallListener;
+        }
+
+        @Override
+        public int fanIn() {
+            return particles.size();
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            try (Prefetcher prefetcher = new Prefetcher(particles, blockSize, depth)) {
+                try {
+                    strategy.create(prefetcher.readers()).doMergeIn(consumer);
+                } finally {
+                    stallNanos = prefetcher.stallNanos();
+                    stallListener.accept(stallNanos);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return nanoseconds the merge waited for the blocks of each batch in the order of the readers.
+         */
+        public long[] getStallNanos() {
+            return stallNanos.clone();
+        }
+    }
+
+    /**
+     * Runs the action when the merging is completed or has failed, like deleting the merged batches.
+     */
+    class OnCompletionMerger implements Merger {
+
+        private final Merger merger;
+        private final Runnable onCompletion;
+
+        public OnCompletionMerger(Merger merger, Runnable onCompletion) {
+            this.merger = merger;
+            this.onCompletion = onCompletion;
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            try {
+                merger.doMergeIn(consumer);
+            } finally {
+                onCompletion.run();
+            }
+        }
+
+        @Override
+        public long doMergeInto(Path output, DataFormat format) {
+            try {
+                return merger.doMergeInto(output, format);
+            } finally {
+                onCompletion.run();
+            }
+        }
+
+        @Override
+        public void doMergeCountsIn(CountConsumer consumer) {
+            try {
+                merger.doMergeCountsIn(consumer);
+            } finally {
+                onCompletion.run();
+            }
+        }
+
+        @Override
+        public long doMergeDistinctInto(Path output, DataFormat format) {
+            try {
+                return merger.doMergeDistinctInto(output, format);
+            } finally {
+                onCompletion.run();
+            }
+        }
+
+        @Override
+        public int passes() {
+            return merger.passes();
+        }
+
+        @Override
+        public int fanIn() {
+            return merger.fanIn();
+        }
+
+        @Override
+        public long rewrittenBytes() {
+            return merger.rewrittenBytes();
+        }
+    }
+
+    /**
+     * Merging of the batches following each other, like the batches of the sorted data.
+     * The batches are read one after another without comparing their items, Q(n).
+     */
+    class ConcatenatingMerger implements Merger {
+
+        static final int BLOCK_SIZE = 1024;
+
+        private final List<ParticleReader> particles;
+
+        public ConcatenatingMerger(List<ParticleReader> particleReaders) {
+            this.particles = new ArrayList<>(particleReaders);
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(consumer);
+            int[] block = new int[BLOCK_SIZE];
+            //noinspection UnstableApiUsage
+            try (Closer closer = particles.stream().collect(Closer::create, Closer::register, Closer::register)) {
+                for (ParticleReader particle : particles) {
+                    for (int count; !LimitedConsumer.isDone(limited) && (count = particle.readInts(block)) > 0; ) {
+                        for (int i = 0; i < count && !LimitedConsumer.isDone(limited); i++) {
+                            consumer.accept(block[i]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * The result of the counting sort, the counted keys are given in ascending order
+     * each repeated as many times as it occurred, there are no batches to merge, Q(n + k log(k)).
+     */
+    class CountingMerger implements Merger {
+
+        private final IntHistogram histogram;
+
+        public CountingMerger(IntHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * The limited consumer stops the walk over the keys, the keys after the page are not sorted.
+         */
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(consumer);
+            if (null == limited) {
+                histogram.forEachSorted((value, count) -> {
+                    for (long i = 0; i < count; i++) {
+                        consumer.accept(value);
+                    }
+                });
+                return;
+            }
+            histogram.forEachSorted((value, count) -> {
+                for (long i = 0; i < count && !limited.isDone(); i++) {
+                    consumer.accept(value);
+                }
+            }, limited::isDone);
+        }
+
+        @Override
+        public void doMergeCountsIn(CountConsumer consumer) {
+            histogram.forEachSorted(consumer);
+        }
+    }
+
+    /**
+     * Merging with the repeated values collapsed, the result has each value once
+     * and with {@link Duplicates#COUNTS} the lines of the file have the number of occurrences after the value.
+     * Equal values of different batches are adjacent in the merged data, so they are collapsed on the fly.
+     */
+    class CollapsingMerger implements Merger {
+
+        private final Merger merger;
+        private final Duplicates duplicates;
+
+        public CollapsingMerger(Merger merger, Duplicates duplicates) {
+            this.merger = merger;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * The limited consumer is checked by the merging of the batches, the collapsed value is given to it
+         * when the next value comes, so the merging stops one distinct value after the consumer is done.
+         */
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            LimitedConsumer limited = LimitedConsumer.limitedOf(consumer);
+            if (null == limited) {
+                merger.doMergeCountsIn((value, count) -> consumer.accept(value));
+                return;
+            }
+            CountingConsumer counting = new CountingConsumer((value, count) -> consumer.accept(value));
+            merger.doMergeIn(new LimitedConsumer() {
+                @Override
+                public void accept(int value) {
+                    counting.accept(value);
+                }
+
+                @Override
+                public boolean isDone() {
+                    return limited.isDone();
+                }
+            });
+            counting.finish();
+        }
+
+        @Override
+        public void doMergeCountsIn(CountConsumer consumer) {
+            merger.doMergeCountsIn(consumer);
+        }
+
+        /**
+         * @return number of values put in the file.
+         * @throws IllegalArgumentException if the counts are written in the binary format.
+         */
+        @Override
+        public long doMergeInto(Path output, DataFormat format) {
+            if (Duplicates.COUNTS != duplicates) {
+                return merger.doMergeDistinctInto(output, format);
+            }
+            if (DataFormat.TEXT != format) {
+                throw new IllegalArgumentException("The counts of values can be written only as text.");
+            }
+            long[] lines = new long[]{0};
+            try (IntTextWriter writer = IntTextWriter.newWriter().withFile(output).build()) {
+                merger.doMergeCountsIn((value, count) -> {
+                    writer.acceptCount(value, count);
+                    lines[0]++;
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write data to output file", e);
+            }
+            return lines[0];
+        }
+
+        @Override
+        public long doMergeDistinctInto(Path output, DataFormat format) {
+            return merger.doMergeDistinctInto(output, format);
+        }
+
+        @Override
+        public int passes() {
+            return merger.passes();
+        }
+
+        @Override
+        public int fanIn() {
+            return merger.fanIn();
+        }
+
+        @Override
+        public long rewrittenBytes() {
+            return merger.rewrittenBytes();
+        }
+    }
+
+    /**
+     * Gives the consumer only the page of the merged data: skips the offset items and puts the limit items after them.
+     * The merging stops as soon as the page is put, see {@link LimitedConsumer}. With the inverted values
+     * each value is put as {@code ~value}, so the items inverted before the sorting come in descending order.
+     */
+    class LimitingMerger implements Merger {
+
+        private final Merger merger;
+        private final long offset;
+        private final long limit;
+        private final boolean inverted;
+
+        public LimitingMerger(Merger merger, long offset, long limit) {
+            this(merger, offset, limit, false);
+        }
+
+        /**
+         * @param inverted - the merged values are inverted by {@code ~value} before they are put.
+         */
+        public LimitingMerger(Merger merger, long offset, long limit, boolean inverted) {
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("offset and limit cannot be negative.");
+            }
+            this.merger = merger;
+            this.offset = offset;
+            this.limit = limit;
+            this.inverted = inverted;
+        }
+
+        @Override
+        public void doMergeIn(IntConsumer consumer) {
+            long end = offset + limit;
+            int mask = inverted ? -1 : 0;
+            merger.doMergeIn(new LimitedConsumer() {
+                private long index;
+
+                @Override
+                public void accept(int value) {
+                    long current = index++;
+                    if (current >= offset && current < end) {
+                        consumer.accept(value ^ mask);
+                    }
+                }
+
+                @Override
+                public boolean isDone() {
+                    return index >= end;
+                }
+            });
+        }
+
+        @Override
+        public int passes() {
+            return merger.passes();
+        }
+
+        @Override
+        public int fanIn() {
+            return merger.fanIn();
+        }
+
+        @Override
+        public long rewrittenBytes() {
+            return merger.rewrittenBytes();
+        }
+    }
 }
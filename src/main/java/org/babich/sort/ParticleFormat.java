@@ -0,0 +1,51 @@
+package org.babich.sort;
+
+import java.io.File;
+import java.io.OutputStream;
+
+/**
+ * The formats of sorted batches in external memory.
+ */
+public enum ParticleFormat {
+
+    /**
+     * big-endian 4 bytes of each item.
+     */
+    RAW {
+        @Override
+        public ParticleWriter createWriter(File file, OutputStream outputStream, int readBufferSize
+                , boolean mappedReads) {
+            return ParticleWriter.FileBackedParticleWriter.newParticleWriter()
+                    .withFile(file)
+                    .withOutputStream(outputStream)
+                    .withReadBufferSize(readBufferSize)
+                    .withMappedReads(mappedReads)
+                    .build();
+        }
+    },
+
+    /**
+     * blocks of items with the differences between neighbours written as varints,
+     * the sorted data with small gaps takes one or two bytes per item.
+     */
+    DELTA_VARINT {
+        @Override
+        public ParticleWriter createWriter(File file, OutputStream outputStream, int readBufferSize
+                , boolean mappedReads) {
+            return ParticleWriter.CompressedParticleWriter.newParticleWriter()
+                    .withFile(file)
+                    .withOutputStream(outputStream)
+                    .withReadBufferSize(readBufferSize)
+                    .build();
+        }
+    };
+
+    /**
+     * @param file - the file of the particle to read it after writing.
+     * @param outputStream - the stream writing the file, or {@code null} to open the file.
+     * @param readBufferSize - bytes of the buffer of the reader of the written particle.
+     * @param mappedReads - the written particle is read by memory-mapped blocks if the format supports it.
+     */
+    public abstract ParticleWriter createWriter(File file, OutputStream outputStream, int readBufferSize
+            , boolean mappedReads);
+}
@@ -1,33 +1,61 @@
 package org.babich.sort;
 
 import java.io.*;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The reader of a batch of sorted data
  *
  * @author Vadim Babich
  */
-public interface ParticleReader extends Closeable, Iterator<Integer> {
+public interface ParticleReader extends Closeable, PrimitiveIterator.OfInt {
 
     boolean hasNext();
 
     @Override
-    default Integer next() {
+    default int nextInt() {
         return readInt();
     }
 
     int readInt();
 
+    /**
+     * Reads the next items in bulk.
+     * @return number of items put at the beginning of the array, zero when there are no more items.
+     */
+    default int readInts(int[] destination) {
+        int count = 0;
+        while (count < destination.length && hasNext()) {
+            destination[count++] = readInt();
+        }
+        return count;
+    }
+
+    int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * bytes of a block read from the file at once by {@link ChannelParticleReader}.
+     */
+    int DEFAULT_BLOCK_SIZE = 1 << 16;
+
     class FileBackedParticleReader implements ParticleReader {
 
         private final DataInputStream dataInputStream;
-        int size;
-        int remaining;
+        private final LongAdder bytesRead;
+        long size;
+        long remaining;
 
-        private FileBackedParticleReader(InputStream dataInputStream, int size) {
+        private FileBackedParticleReader(InputStream dataInputStream, long size, LongAdder bytesRead) {
             this.size = size;
             this.remaining = size;
+            this.bytesRead = bytesRead;
             this.dataInputStream = new DataInputStream(dataInputStream);
         }
 
@@ -49,6 +77,9 @@ public interface ParticleReader extends Closeable, Iterator<Integer> {
 
         @Override
         public void close() throws IOException {
+            if (null != bytesRead) {
+                bytesRead.add((size - remaining) * Integer.BYTES);
+            }
             try {
                 dataInputStream.close();
             } catch (Exception ignore) {
@@ -57,8 +88,11 @@ public interface ParticleReader extends Closeable, Iterator<Integer> {
 
         static class FileBackedParticleReaderBuilder {
             private File file;
-            private int size = -1;
+            private long offset = 0;
+            private long size = -1;
+            private int bufferSize = DEFAULT_BUFFER_SIZE;
             private InputStream inputStream;
+            private LongAdder bytesRead;
 
             public FileBackedParticleReaderBuilder withFile(File file) {
                 this.file = file;
@@ -70,14 +104,43 @@ public interface ParticleReader extends Closeable, Iterator<Integer> {
                 return this;
             }
 
-            public FileBackedParticleReaderBuilder withSize(int size) {
+            public FileBackedParticleReaderBuilder withSize(long size) {
                 this.size = size;
                 return this;
             }
 
-            private FileBackedParticleReader create(File file, int size){
+            /**
+             * @param bufferSize - bytes of the buffer of reading from the file.
+             */
+            public FileBackedParticleReaderBuilder withBufferSize(int bufferSize) {
+                this.bufferSize = bufferSize;
+                return this;
+            }
+
+            /**
+             * @param bytesRead - counter of bytes read from the file, it is updated when the reader is closed.
+             */
+            public FileBackedParticleReaderBuilder withReadCounter(LongAdder bytesRead) {
+                this.bytesRead = bytesRead;
+                return this;
+            }
+
+            /**
+             * @param offset - index of the first element to read from the file.
+             */
+            public FileBackedParticleReaderBuilder withOffset(long offset) {
+                this.offset = offset;
+                return this;
+            }
+
+            private FileBackedParticleReader create(File file, long size){
                 try {
-                    return new FileBackedParticleReader(new BufferedInputStream(new FileInputStream(file)), size);
+                    FileInputStream fileInputStream = new FileInputStream(file);
+                    if (offset > 0) {
+                        fileInputStream.getChannel().position(offset * Integer.BYTES);
+                    }
+                    return new FileBackedParticleReader(new BufferedInputStream(fileInputStream, bufferSize), size
+                            , bytesRead);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
@@ -92,7 +155,7 @@ public interface ParticleReader extends Closeable, Iterator<Integer> {
                 }
 
                 if (null != inputStream) {
-                    return new FileBackedParticleReader(inputStream, size);
+                    return new FileBackedParticleReader(inputStream, size, bytesRead);
                 }
 
                 throw new IllegalStateException("Reader cannot be created without an input stream.");
@@ -101,4 +164,477 @@ public interface ParticleReader extends Closeable, Iterator<Integer> {
         }
     }
 
+    /**
+     * Reads the particle of {@link ParticleWriter.CompressedParticleWriter} decoding a block at a time.
+     */
+    class CompressedParticleReader implements ParticleReader {
+
+        private final DataInputStream dataInputStream;
+        private final LongAdder bytesRead;
+        private final int[] values = new int[ParticleWriter.CompressedParticleWriter.BLOCK_SIZE];
+        private final byte[] encoded = new byte[ParticleWriter.CompressedParticleWriter.MAX_BLOCK_BYTES];
+        private int position;
+        private int limit;
+        private int skip;
+        private long remaining;
+        private long remainingInFile;
+        private long bytes;
+
+        /**
+         * @param remainingInFile - number of items in the file from the beginning of the first read block.
+         * @param skip - number of items of the first block before the first read item.
+         * @param size - number of read items.
+         */
+        CompressedParticleReader(InputStream inputStream, long remainingInFile, int skip, long size
+                , LongAdder bytesRead) {
+            this.dataInputStream = new DataInputStream(inputStream);
+            this.remainingInFile = remainingInFile;
+            this.skip = skip;
+            this.remaining = size;
+            this.bytesRead = bytesRead;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return 0 != remaining;
+        }
+
+        @Override
+        public int readInt() {
+            if (position == limit) {
+                readBlock();
+            }
+            remaining--;
+            return values[position++];
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            int count = 0;
+            while (count < destination.length && 0 != remaining) {
+                if (position == limit) {
+                    readBlock();
+                }
+                int length = (int) Math.min(Math.min(limit - position, destination.length - count), remaining);
+                System.arraycopy(values, position, destination, count, length);
+                position += length;
+                count += length;
+                remaining -= length;
+            }
+            return count;
+        }
+
+        private void readBlock() {
+            try {
+                int length = dataInputStream.readInt();
+                int first = dataInputStream.readInt();
+                dataInputStream.readFully(encoded, 0, length);
+                bytes += ParticleWriter.CompressedParticleWriter.HEADER_SIZE + length;
+
+                limit = (int) Math.min(values.length, remainingInFile);
+                decode(encoded, first, values, limit);
+                remainingInFile -= limit;
+                position = skip;
+                skip = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        static void decode(byte[] encoded, int first, int[] values, int count) {
+            int value = first;
+            values[0] = value;
+            int position = 0;
+            for (int i = 1; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte next;
+                do {
+                    next = encoded[position++];
+                    delta |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                value += delta;
+                values[i] = value;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            bytesRead.add(bytes);
+            bytes = 0;
+            try {
+                dataInputStream.close();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    /**
+     * Reads big-endian items of a file by blocks into a direct or a memory-mapped buffer
+     * and decodes each block in bulk. The blocks after the first one are aligned in the file by the block size.
+     */
+    class ChannelParticleReader implements ParticleReader {
+
+        private static final IntBuffer EMPTY = IntBuffer.allocate(0);
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int blockSize;
+        private final LongAdder bytesRead;
+        private IntBuffer items = EMPTY;
+        private long position;
+        private long remaining;
+        private long bytes;
+
+        private ChannelParticleReader(FileChannel channel, long position, long size, int blockSize, boolean mapped
+                , LongAdder bytesRead) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = size;
+            this.blockSize = blockSize;
+            this.bytesRead = bytesRead;
+            this.buffer = mapped ? null
+                    : ByteBuffer.allocateDirect((int) Math.min(blockSize, size * Integer.BYTES));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return 0 != remaining;
+        }
+
+        @Override
+        public int readInt() {
+            if (!items.hasRemaining()) {
+                readBlock();
+            }
+            remaining--;
+            return items.get();
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            int count = 0;
+            while (count < destination.length && 0 != remaining) {
+                if (!items.hasRemaining()) {
+                    readBlock();
+                }
+                int length = (int) Math.min(Math.min(items.remaining(), destination.length - count), remaining);
+                items.get(destination, count, length);
+                count += length;
+                remaining -= length;
+            }
+            return count;
+        }
+
+        private void readBlock() {
+            long length = Math.min(remaining * Integer.BYTES, blockSize - position % blockSize);
+            try {
+                ByteBuffer block;
+                if (null == buffer) {
+                    block = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                } else {
+                    buffer.clear().limit((int) length);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new EOFException("Unexpected end of the particle file.");
+                        }
+                    }
+                    buffer.flip();
+                    block = buffer;
+                }
+                items = block.asIntBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += length;
+            bytes += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (null != bytesRead) {
+                bytesRead.add(bytes);
+            }
+            bytes = 0;
+            items = EMPTY;
+            channel.close();
+        }
+
+        public static ChannelParticleReaderBuilder newReader() {
+            return new ChannelParticleReaderBuilder();
+        }
+
+        public static class ChannelParticleReaderBuilder {
+
+            private File file;
+            private long offset = 0;
+            private long size = -1;
+            private int blockSize = DEFAULT_BLOCK_SIZE;
+            private boolean mapped = false;
+            private LongAdder bytesRead;
+
+            public ChannelParticleReaderBuilder withFile(File file) {
+                this.file = file;
+                return this;
+            }
+
+            /**
+             * @param offset - index of the first element to read from the file.
+             */
+            public ChannelParticleReaderBuilder withOffset(long offset) {
+                this.offset = offset;
+                return this;
+            }
+
+            public ChannelParticleReaderBuilder withSize(long size) {
+                this.size = size;
+                return this;
+            }
+
+            /**
+             * @param blockSize - bytes read from the file at once, rounded down to a whole number of items.
+             */
+            public ChannelParticleReaderBuilder withBlockSize(int blockSize) {
+                this.blockSize = blockSize;
+                return this;
+            }
+
+            /**
+             * @param mapped - maps each block of the file into memory instead of reading it into a direct buffer.
+             */
+            public ChannelParticleReaderBuilder withMapped(boolean mapped) {
+                this.mapped = mapped;
+                return this;
+            }
+
+            /**
+             * @param bytesRead - counter of bytes read from the file, it is updated when the reader is closed.
+             */
+            public ChannelParticleReaderBuilder withReadCounter(LongAdder bytesRead) {
+                this.bytesRead = bytesRead;
+                return this;
+            }
+
+            public ChannelParticleReader build() {
+                if (-1 == size) {
+                    throw new IllegalArgumentException("Size must be initialized.");
+                }
+                if (null == file) {
+                    throw new IllegalStateException("Reader cannot be created without a file.");
+                }
+                int alignedBlockSize = blockSize - blockSize % Integer.BYTES;
+                if (alignedBlockSize <= 0) {
+                    throw new IllegalArgumentException("Block size must be at least " + Integer.BYTES + " bytes.");
+                }
+                try {
+                    return new ChannelParticleReader(FileChannel.open(file.toPath(), StandardOpenOption.READ)
+                            , offset * Integer.BYTES, size, alignedBlockSize, mapped, bytesRead);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a range of items of an array.
+     */
+    class InMemoryParticleReader implements ParticleReader {
+
+        private final int[] items;
+        private final int to;
+        private int position;
+
+        public InMemoryParticleReader(int[] items, int from, int to) {
+            this.items = items;
+            this.position = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < to;
+        }
+
+        @Override
+        public int readInt() {
+            if (position == to) {
+                throw new NoSuchElementException();
+            }
+            return items[position++];
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            int count = Math.min(destination.length, to - position);
+            System.arraycopy(items, position, destination, 0, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Reading of the particle written as pairs of the value and the number of its repetitions,
+     * each value is repeated as many times as it was written.
+     */
+    class RunLengthParticleReader implements ParticleReader {
+
+        private final ParticleReader pairs;
+        private int value;
+        private int remaining;
+
+        public RunLengthParticleReader(ParticleReader pairs) {
+            this.pairs = pairs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 || pairs.hasNext();
+        }
+
+        @Override
+        public int readInt() {
+            if (0 == remaining) {
+                nextPair();
+            }
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            int count = 0;
+            while (count < destination.length && hasNext()) {
+                if (0 == remaining) {
+                    nextPair();
+                }
+                int length = Math.min(remaining, destination.length - count);
+                Arrays.fill(destination, count, count + length, value);
+                remaining -= length;
+                count += length;
+            }
+            return count;
+        }
+
+        private void nextPair() {
+            value = pairs.readInt();
+            remaining = pairs.readInt();
+        }
+
+        @Override
+        public void close() throws IOException {
+            pairs.close();
+        }
+    }
+
+    /**
+     * Reading of the particle up to the first item greater than the maximum value,
+     * the items after it are not read.
+     */
+    class BoundedParticleReader implements ParticleReader {
+
+        private final ParticleReader reader;
+        private final int maxValue;
+        private int next;
+        private boolean peeked;
+
+        public BoundedParticleReader(ParticleReader reader, int maxValue) {
+            this.reader = reader;
+            this.maxValue = maxValue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!peeked && reader.hasNext()) {
+                next = reader.readInt();
+                peeked = true;
+            }
+            return peeked && next <= maxValue;
+        }
+
+        @Override
+        public int readInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            peeked = false;
+            return next;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reading of the particle which is closed and handed to the hook as soon as all its items are read,
+     * like deleting the merged batch before the end of the merge. It is closed only once.
+     */
+    class OnExhaustedParticleReader implements ParticleReader {
+
+        private final ParticleReader reader;
+        private final Runnable onExhausted;
+        private boolean closed;
+
+        public OnExhaustedParticleReader(ParticleReader reader, Runnable onExhausted) {
+            this.reader = reader;
+            this.onExhausted = onExhausted;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+            exhausted();
+            return false;
+        }
+
+        @Override
+        public int readInt() {
+            if (closed) {
+                throw new NoSuchElementException();
+            }
+            return reader.readInt();
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            if (closed) {
+                return 0;
+            }
+            int count = reader.readInts(destination);
+            if (0 == count && destination.length > 0) {
+                exhausted();
+            }
+            return count;
+        }
+
+        private void exhausted() {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            onExhausted.run();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            reader.close();
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package org.babich.sort;
 
+import org.babich.sort.ParticleReader.ChannelParticleReader;
+import org.babich.sort.ParticleReader.CompressedParticleReader;
 import org.babich.sort.ParticleReader.FileBackedParticleReader.FileBackedParticleReaderBuilder;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * the write a batch of sorted data to a temporary file.
@@ -11,26 +15,122 @@ import java.nio.file.Files;
  *
  * @author Vadim Babich
  */
-public interface ParticleWriter {
+public interface ParticleWriter extends Closeable {
 
     void writeInt(int value);
 
+    /**
+     * Completes writing, the particle can be read after that.
+     */
+    @Override
+    void close();
+
     ParticleReader asParticleReader();
 
+    /**
+     * @return number of written elements.
+     */
+    long size();
+
+    /**
+     * @return number of bytes written in external memory.
+     */
+    default long bytesWritten() {
+        return size() * Integer.BYTES;
+    }
+
+    /**
+     * @return number of bytes read from external memory by the readers of the particle.
+     */
+    default long bytesRead() {
+        return 0;
+    }
+
+    /**
+     * Deletes the written elements from external memory, the particle cannot be read after that.
+     */
+    default void delete() {
+        close();
+    }
+
+    /**
+     * Reads the part of written elements.
+     * @param fromIndex - index of the first element, inclusive.
+     * @param toIndex - index of the last element, exclusive.
+     */
+    default ParticleReader asParticleReader(long fromIndex, long toIndex) {
+        throw new UnsupportedOperationException("Particle does not support reading of a part of elements.");
+    }
+
+    /**
+     * @return the written element at the position.
+     */
+    default int valueAt(long index) {
+        throw new UnsupportedOperationException("Particle does not support random access.");
+    }
+
+    /**
+     * @return the reader of the written elements at any positions, like for the binary search,
+     * the file of the particle is kept open until the reader is closed.
+     */
+    default RandomReader randomReader() {
+        return new RandomReader() {
+            @Override
+            public int valueAt(long index) {
+                return ParticleWriter.this.valueAt(index);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * The written elements read at any positions.
+     */
+    interface RandomReader extends Closeable {
+
+        int valueAt(long index);
+
+        @Override
+        void close();
+    }
+
     class FileBackedParticleWriter implements ParticleWriter, Closeable {
 
         private final DataOutputStream dataOutputStream;
         private final File file;
-        private int size;
+        private final int readBufferSize;
+        private final boolean mappedReads;
+        private final LongAdder bytesRead = new LongAdder();
+        private long size;
 
-        private FileBackedParticleWriter(OutputStream outputStream, File file) {
+        private FileBackedParticleWriter(OutputStream outputStream, File file, int readBufferSize
+                , boolean mappedReads) {
             this.size = 0;
             this.file = file;
+            this.readBufferSize = readBufferSize;
+            this.mappedReads = mappedReads;
             this.dataOutputStream = new DataOutputStream(outputStream);
         }
 
+        /**
+         * The particle of the file written before, it is only read.
+         */
+        private FileBackedParticleWriter(File file, long size, int readBufferSize, boolean mappedReads) {
+            this.size = size;
+            this.file = file;
+            this.readBufferSize = readBufferSize;
+            this.mappedReads = mappedReads;
+            this.dataOutputStream = null;
+        }
+
         @Override
         public void writeInt(int value) {
+            if (null == dataOutputStream) {
+                throw new IllegalStateException("The particle is already written.");
+            }
             try {
                 dataOutputStream.writeInt(value);
                 size++;
@@ -39,17 +139,109 @@ public interface ParticleWriter {
             }
         }
 
+        /**
+         * The particle backed by a file is read by blocks through the file channel.
+         */
         @Override
         public ParticleReader asParticleReader() {
+            if (null != file) {
+                return asParticleReader(0, size);
+            }
             close();
             return new FileBackedParticleReaderBuilder()
                     .withSize(size)
+                    .withBufferSize(readBufferSize)
+                    .withReadCounter(bytesRead)
+                    .build();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long bytesRead() {
+            return bytesRead.sum();
+        }
+
+        @Override
+        public ParticleReader asParticleReader(long fromIndex, long toIndex) {
+            checkFile();
+            close();
+            return ChannelParticleReader.newReader()
+                    .withOffset(fromIndex)
+                    .withSize(toIndex - fromIndex)
+                    .withBlockSize(readBufferSize)
+                    .withMapped(mappedReads)
+                    .withReadCounter(bytesRead)
                     .withFile(file)
                     .build();
         }
 
+        @Override
+        public int valueAt(long index) {
+            try (RandomReader reader = randomReader()) {
+                return reader.valueAt(index);
+            }
+        }
+
+        @Override
+        public RandomReader randomReader() {
+            checkFile();
+            close();
+            RandomAccessFile randomAccessFile;
+            try {
+                randomAccessFile = new RandomAccessFile(file, "r");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new RandomReader() {
+                @Override
+                public int valueAt(long index) {
+                    try {
+                        randomAccessFile.seek(index * Integer.BYTES);
+                        bytesRead.add(Integer.BYTES);
+                        return randomAccessFile.readInt();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        randomAccessFile.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            };
+        }
+
+        private void checkFile() {
+            if (null == file) {
+                throw new UnsupportedOperationException("Particle is not backed by a file.");
+            }
+        }
+
+        @Override
+        public void delete() {
+            close();
+            if (null == file) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         @Override
         public void close() {
+            if (null == dataOutputStream) {
+                return;
+            }
             try {
                 dataOutputStream.close();
             } catch (Exception ignore) {
@@ -64,6 +256,9 @@ public interface ParticleWriter {
 
             private File file;
             private OutputStream outputStream;
+            private int readBufferSize = ParticleReader.DEFAULT_BLOCK_SIZE;
+            private boolean mappedReads = false;
+            private long writtenSize = -1;
 
             public FileBackedParticleStorageBuilder withFile(File file) {
                 this.file = file;
@@ -75,30 +270,526 @@ public interface ParticleWriter {
                 return this;
             }
 
+            /**
+             * @param readBufferSize - bytes of the buffer of the reader of the written particle.
+             */
+            public FileBackedParticleStorageBuilder withReadBufferSize(int readBufferSize) {
+                this.readBufferSize = readBufferSize;
+                return this;
+            }
+
+            /**
+             * @param mappedReads - the written particle is read by memory-mapped blocks instead of a direct buffer.
+             */
+            public FileBackedParticleStorageBuilder withMappedReads(boolean mappedReads) {
+                this.mappedReads = mappedReads;
+                return this;
+            }
+
+            /**
+             * @param writtenSize - number of items the file is already written with, the particle is only read.
+             */
+            public FileBackedParticleStorageBuilder withWrittenSize(long writtenSize) {
+                this.writtenSize = writtenSize;
+                return this;
+            }
+
             private FileBackedParticleWriter create(File file){
                 try {
-                    return new FileBackedParticleWriter(new BufferedOutputStream(new FileOutputStream(file)), file);
+                    return new FileBackedParticleWriter(new BufferedOutputStream(new FileOutputStream(file)), file
+                            , readBufferSize, mappedReads);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
             }
 
+            /**
+             * The given output stream writes the given file, if any.
+             */
             public FileBackedParticleWriter build() {
+                if (writtenSize >= 0) {
+                    if (null == file) {
+                        throw new IllegalStateException("The written particle cannot be read without a file.");
+                    }
+                    return new FileBackedParticleWriter(file, writtenSize, readBufferSize, mappedReads);
+                }
+                if (null != outputStream) {
+                    return new FileBackedParticleWriter(outputStream, file, readBufferSize, mappedReads);
+                }
+
                 if (null != file) {
                     return create(file);
                 }
 
-                if (null != outputStream) {
-                    return new FileBackedParticleWriter(outputStream, file);
+                try {
+                    return create(Files.createTempFile("sorter", "").toFile());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Writes items by blocks of {@link #BLOCK_SIZE}, each block looks like:
+     * <pre>
+     *  4 bytes - length of the encoded differences
+     *  4 bytes - the first item
+     *  varints - differences between each item and the previous one
+     * </pre>
+     * The differences are taken with the overflow of int, so the format works for any order of items,
+     * but only the sorted items give the small differences. The offsets of blocks are kept in memory
+     * for reading a part of items.
+     */
+    class CompressedParticleWriter implements ParticleWriter {
+
+        static final int BLOCK_SIZE = 1024;
+        static final int HEADER_SIZE = 2 * Integer.BYTES;
+        static final int MAX_BLOCK_BYTES = HEADER_SIZE + (BLOCK_SIZE - 1) * 5;
+
+        private final OutputStream outputStream;
+        private final File file;
+        private final int readBufferSize;
+        private final LongAdder bytesRead = new LongAdder();
+
+        private final int[] block = new int[BLOCK_SIZE];
+        private final byte[] encoded = new byte[MAX_BLOCK_BYTES];
+        private int blockCount;
+        private long[] blockOffsets = new long[16];
+        private int blocks;
+        private long size;
+        private long bytesWritten;
+        private boolean closed;
+
+        private CompressedParticleWriter(OutputStream outputStream, File file, int readBufferSize) {
+            this.outputStream = outputStream;
+            this.file = file;
+            this.readBufferSize = readBufferSize;
+        }
+
+        @Override
+        public void writeInt(int value) {
+            block[blockCount++] = value;
+            size++;
+            if (BLOCK_SIZE == blockCount) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() {
+            if (0 == blockCount) {
+                return;
+            }
+            if (blocks == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, 2 * blocks);
+            }
+            blockOffsets[blocks++] = bytesWritten;
+
+            int length = encode(block, blockCount, encoded);
+            try {
+                outputStream.write(encoded, 0, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bytesWritten += length;
+            blockCount = 0;
+        }
+
+        static int encode(int[] block, int count, byte[] encoded) {
+            int position = HEADER_SIZE;
+            for (int i = 1; i < count; i++) {
+                int delta = block[i] - block[i - 1];
+                while ((delta & ~0x7F) != 0) {
+                    encoded[position++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                encoded[position++] = (byte) delta;
+            }
+            putInt(encoded, 0, position - HEADER_SIZE);
+            putInt(encoded, Integer.BYTES, block[0]);
+            return position;
+        }
+
+        private static void putInt(byte[] bytes, int index, int value) {
+            bytes[index] = (byte) (value >>> 24);
+            bytes[index + 1] = (byte) (value >>> 16);
+            bytes[index + 2] = (byte) (value >>> 8);
+            bytes[index + 3] = (byte) value;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeBlock();
+                outputStream.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ParticleReader asParticleReader() {
+            return asParticleReader(0, size);
+        }
+
+        @Override
+        public ParticleReader asParticleReader(long fromIndex, long toIndex) {
+            checkFile();
+            close();
+            int firstBlock = (int) (fromIndex / BLOCK_SIZE);
+            try {
+                FileInputStream fileInputStream = new FileInputStream(file);
+                if (firstBlock < blocks) {
+                    fileInputStream.getChannel().position(blockOffsets[firstBlock]);
+                }
+                return new CompressedParticleReader(new BufferedInputStream(fileInputStream, readBufferSize)
+                        , size - (long) firstBlock * BLOCK_SIZE, (int) (fromIndex % BLOCK_SIZE)
+                        , toIndex - fromIndex, bytesRead);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int valueAt(long index) {
+            try (RandomReader reader = randomReader()) {
+                return reader.valueAt(index);
+            }
+        }
+
+        /**
+         * The last decoded block is kept, so the close positions of the binary search are read once.
+         */
+        @Override
+        public RandomReader randomReader() {
+            checkFile();
+            close();
+            RandomAccessFile randomAccessFile;
+            try {
+                randomAccessFile = new RandomAccessFile(file, "r");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new RandomReader() {
+                private final int[] values = new int[BLOCK_SIZE];
+                private int decodedBlock = -1;
+
+                @Override
+                public int valueAt(long index) {
+                    int blockIndex = (int) (index / BLOCK_SIZE);
+                    if (blockIndex != decodedBlock) {
+                        decode(blockIndex);
+                    }
+                    return values[(int) (index % BLOCK_SIZE)];
+                }
+
+                private void decode(int blockIndex) {
+                    try {
+                        randomAccessFile.seek(blockOffsets[blockIndex]);
+                        int length = randomAccessFile.readInt();
+                        int first = randomAccessFile.readInt();
+                        byte[] bytes = new byte[length];
+                        randomAccessFile.readFully(bytes);
+                        bytesRead.add(HEADER_SIZE + length);
+
+                        int count = (int) Math.min(BLOCK_SIZE, size - (long) blockIndex * BLOCK_SIZE);
+                        CompressedParticleReader.decode(bytes, first, values, count);
+                        decodedBlock = blockIndex;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        randomAccessFile.close();
+                    } catch (IOException ignore) {
+                    }
                 }
+            };
+        }
+
+        private void checkFile() {
+            if (null == file) {
+                throw new UnsupportedOperationException("Particle is not backed by a file.");
+            }
+        }
+
+        @Override
+        public void delete() {
+            close();
+            if (null == file) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long bytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public long bytesRead() {
+            return bytesRead.sum();
+        }
+
+        public static CompressedParticleWriterBuilder newParticleWriter() {
+            return new CompressedParticleWriterBuilder();
+        }
+
+        public static class CompressedParticleWriterBuilder {
+
+            private File file;
+            private OutputStream outputStream;
+            private int readBufferSize = ParticleReader.DEFAULT_BLOCK_SIZE;
+
+            public CompressedParticleWriterBuilder withFile(File file) {
+                this.file = file;
+                return this;
+            }
 
+            /**
+             * @param outputStream - the stream writing the file of the particle.
+             */
+            public CompressedParticleWriterBuilder withOutputStream(OutputStream outputStream) {
+                this.outputStream = outputStream;
+                return this;
+            }
+
+            /**
+             * @param readBufferSize - bytes of the buffer of the reader of the written particle.
+             */
+            public CompressedParticleWriterBuilder withReadBufferSize(int readBufferSize) {
+                this.readBufferSize = readBufferSize;
+                return this;
+            }
+
+            public CompressedParticleWriter build() {
                 try {
-                    return create(Files.createTempFile("sorter", "").toFile());
+                    if (null != outputStream) {
+                        return new CompressedParticleWriter(outputStream, file, readBufferSize);
+                    }
+                    File target = null != file ? file : Files.createTempFile("sorter", "").toFile();
+                    return new CompressedParticleWriter(new BufferedOutputStream(new FileOutputStream(target))
+                            , target, readBufferSize);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
             }
+        }
+    }
+
+    /**
+     * The sorted batch kept in memory, it is merged with the batches in external memory without writing it.
+     */
+    class InMemoryParticleWriter implements ParticleWriter {
+
+        private int[] items;
+        private int size;
+
+        /**
+         * @param items - the array is used as is, its first {@code size} items are the particle.
+         */
+        public InMemoryParticleWriter(int[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @Override
+        public void writeInt(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, Math.max(16, 2 * size));
+            }
+            items[size++] = value;
+        }
+
+        @Override
+        public void close() {
+        }
 
+        @Override
+        public ParticleReader asParticleReader() {
+            return asParticleReader(0, size);
+        }
+
+        @Override
+        public ParticleReader asParticleReader(long fromIndex, long toIndex) {
+            return new ParticleReader.InMemoryParticleReader(items, (int) fromIndex, (int) toIndex);
+        }
+
+        @Override
+        public int valueAt(long index) {
+            return items[(int) index];
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long bytesWritten() {
+            return 0;
+        }
+
+        /**
+         * Releases the items.
+         */
+        @Override
+        public void delete() {
+            items = new int[0];
+            size = 0;
+        }
+    }
+
+    /**
+     * The particle without repeated values, the value equal to the previous one is not written.
+     */
+    class DistinctParticleWriter implements ParticleWriter {
+
+        private final ParticleWriter particle;
+        private boolean hasPrevious;
+        private int previous;
+
+        public DistinctParticleWriter(ParticleWriter particle) {
+            this.particle = particle;
+        }
+
+        @Override
+        public void writeInt(int value) {
+            if (hasPrevious && previous == value) {
+                return;
+            }
+            particle.writeInt(value);
+            previous = value;
+            hasPrevious = true;
+        }
+
+        @Override
+        public void close() {
+            particle.close();
+        }
+
+        @Override
+        public ParticleReader asParticleReader() {
+            return particle.asParticleReader();
+        }
+
+        @Override
+        public ParticleReader asParticleReader(long fromIndex, long toIndex) {
+            return particle.asParticleReader(fromIndex, toIndex);
+        }
+
+        @Override
+        public int valueAt(long index) {
+            return particle.valueAt(index);
+        }
+
+        @Override
+        public RandomReader randomReader() {
+            return particle.randomReader();
+        }
+
+        @Override
+        public long size() {
+            return particle.size();
+        }
+
+        @Override
+        public long bytesWritten() {
+            return particle.bytesWritten();
+        }
+
+        @Override
+        public long bytesRead() {
+            return particle.bytesRead();
+        }
+
+        @Override
+        public void delete() {
+            particle.delete();
+        }
+    }
+
+    /**
+     * The particle of the repeated values written as pairs of the value and the number of its repetitions,
+     * the reader repeats each value as many times as it was written.
+     * The positions of the pairs do not match the indexes of the elements, so the particle is read only as a whole.
+     */
+    class RunLengthParticleWriter implements ParticleWriter {
+
+        private final ParticleWriter pairs;
+        private int value;
+        private int count;
+        private long size;
+
+        public RunLengthParticleWriter(ParticleWriter pairs) {
+            this.pairs = pairs;
+        }
+
+        @Override
+        public void writeInt(int value) {
+            if (count > 0 && (this.value != value || Integer.MAX_VALUE == count)) {
+                writePair();
+            }
+            this.value = value;
+            count++;
+            size++;
+        }
+
+        private void writePair() {
+            pairs.writeInt(value);
+            pairs.writeInt(count);
+            count = 0;
+        }
+
+        @Override
+        public void close() {
+            if (count > 0) {
+                writePair();
+            }
+            pairs.close();
+        }
+
+        @Override
+        public ParticleReader asParticleReader() {
+            return new ParticleReader.RunLengthParticleReader(pairs.asParticleReader());
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long bytesWritten() {
+            return pairs.bytesWritten();
+        }
+
+        @Override
+        public long bytesRead() {
+            return pairs.bytesRead();
+        }
+
+        @Override
+        public void delete() {
+            pairs.delete();
         }
     }
 }
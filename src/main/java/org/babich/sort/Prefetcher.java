@@ -0,0 +1,230 @@
+package org.babich.sort;
+
+import com.google.common.base.Throwables;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Read-ahead of the merged batches by the background thread.
+ * Each batch keeps up to {@code depth} blocks read in advance, so the merge takes the next block from memory
+ * while the thread reads the following one. The thread reads the next block of the batch whose last read item
+ * is the smallest, because the merge exhausts the read items of this batch first (forecasting by Knuth).
+ * The time the merge waits for the blocks of each batch is counted as its stall time.
+ */
+class Prefetcher implements Closeable {
+
+    static final int DEFAULT_DEPTH = 2;
+
+    private final List<Run> runs = new ArrayList<>();
+    private final Thread thread;
+
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * @param blockSize - number of items read from a batch at once.
+     * @param depth - number of blocks of each batch read in advance.
+     */
+    Prefetcher(List<ParticleReader> sources, int blockSize, int depth) {
+        if (blockSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("blockSize and depth must be greater than zero.");
+        }
+        sources.forEach(source -> runs.add(new Run(source, blockSize, depth)));
+        this.thread = new Thread(this::prefetch, "prefetcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return readers of the blocks read in advance in the order of the sources.
+     */
+    List<ParticleReader> readers() {
+        return new ArrayList<>(runs);
+    }
+
+    /**
+     * @return nanoseconds the merge waited for the blocks of each batch.
+     */
+    long[] stallNanos() {
+        return runs.stream().mapToLong(run -> run.stallNanos).toArray();
+    }
+
+    private void prefetch() {
+        try {
+            for (Run run = nextRun(); null != run; run = nextRun()) {
+                int count = run.source.readInts(run.fetched);
+                synchronized (this) {
+                    run.completeFetch(count);
+                    notifyAll();
+                }
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized Run nextRun() throws InterruptedException {
+        while (!closed) {
+            Run next = null;
+            for (Run run : runs) {
+                if (run.canFetch() && (null == next || run.lastFetched < next.lastFetched)) {
+                    next = run;
+                }
+            }
+            if (null != next) {
+                next.startFetch();
+                return next;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Stops reading in advance and closes the sources.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Run run : runs) {
+            run.source.close();
+        }
+    }
+
+    private class Run implements ParticleReader {
+
+        final ParticleReader source;
+
+        private final Queue<int[]> free = new ArrayDeque<>();
+        private final Queue<int[]> ready = new ArrayDeque<>();
+        private final Queue<Integer> readyCounts = new ArrayDeque<>();
+
+        /**
+         * the last item read in advance, the batch without read items goes first.
+         */
+        long lastFetched = Long.MIN_VALUE;
+        int[] fetched;
+        boolean fetching;
+        boolean finished;
+        long stallNanos;
+
+        private int[] current;
+        private int position;
+        private int limit;
+
+        Run(ParticleReader source, int blockSize, int depth) {
+            this.source = source;
+            for (int i = 0; i <= depth; i++) {
+                free.add(new int[blockSize]);
+            }
+        }
+
+        boolean canFetch() {
+            return !finished && !fetching && !free.isEmpty();
+        }
+
+        void startFetch() {
+            fetching = true;
+            fetched = free.poll();
+        }
+
+        void completeFetch(int count) {
+            fetching = false;
+            if (0 == count) {
+                finished = true;
+                free.add(fetched);
+            } else {
+                ready.add(fetched);
+                readyCounts.add(count);
+                lastFetched = fetched[count - 1];
+            }
+            fetched = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < limit || nextBlock();
+        }
+
+        @Override
+        public int readInt() {
+            if (position == limit && !nextBlock()) {
+                throw new NoSuchElementException();
+            }
+            return current[position++];
+        }
+
+        @Override
+        public int readInts(int[] destination) {
+            int count = 0;
+            while (count < destination.length && hasNext()) {
+                int length = Math.min(limit - position, destination.length - count);
+                System.arraycopy(current, position, destination, count, length);
+                position += length;
+                count += length;
+            }
+            return count;
+        }
+
+        private boolean nextBlock() {
+            synchronized (Prefetcher.this) {
+                if (null != current) {
+                    free.add(current);
+                    current = null;
+                    Prefetcher.this.notifyAll();
+                }
+                if (ready.isEmpty() && !finished && null == failure) {
+                    long start = System.nanoTime();
+                    do {
+                        awaitPrefetcher();
+                    } while (ready.isEmpty() && !finished && null == failure);
+                    stallNanos += System.nanoTime() - start;
+                }
+                if (null != failure) {
+                    Throwables.throwIfUnchecked(failure);
+                    throw new IllegalStateException("Cannot read a merged batch in advance.", failure);
+                }
+                if (ready.isEmpty()) {
+                    return false;
+                }
+                current = ready.poll();
+                limit = readyCounts.poll();
+                position = 0;
+                return true;
+            }
+        }
+
+        private void awaitPrefetcher() {
+            try {
+                Prefetcher.this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a merged batch.", e);
+            }
+        }
+
+        /**
+         * The source is closed by the prefetcher.
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.babich.sort;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Prints the progress of the current phase of the sorting job and the estimated time left every period.
+ * The bytes done and the total bytes of the phase are given by the caller, like the position of the reader
+ * of the incoming data, so the progress is approximate.
+ */
+public class ProgressReporter implements SortListener, Closeable {
+
+    private static final long MB = 1 << 20;
+
+    private final PrintStream out;
+    private final ScheduledExecutorService executor;
+    private volatile Progress progress;
+
+    /**
+     * The tracked phase.
+     */
+    private static class Progress {
+        final SortMetrics.Phase phase;
+        final LongSupplier done;
+        final long total;
+        final long startNanos = System.nanoTime();
+
+        Progress(SortMetrics.Phase phase, LongSupplier done, long total) {
+            this.phase = phase;
+            this.done = done;
+            this.total = total;
+        }
+    }
+
+    public ProgressReporter(PrintStream out, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be greater than zero.");
+        }
+        this.out = out;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("progress-%d").setDaemon(true).build());
+        executor.scheduleAtFixedRate(this::report, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param done - bytes of the phase done so far, it is called by the reporting thread.
+     * @param total - bytes of the whole phase.
+     */
+    public void track(SortMetrics.Phase phase, LongSupplier done, long total) {
+        progress = new Progress(phase, done, total);
+    }
+
+    @Override
+    public void onPhaseCompleted(SortMetrics.Phase phase, long nanos) {
+        Progress tracked = progress;
+        if (null != tracked && tracked.phase == phase) {
+            progress = null;
+        }
+        out.println(phase + " completed in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+    }
+
+    private void report() {
+        Progress tracked = progress;
+        if (null == tracked) {
+            return;
+        }
+        long done = Math.max(0, Math.min(tracked.total, tracked.done.getAsLong()));
+        long nanos = System.nanoTime() - tracked.startNanos;
+        double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long percent = 0 == tracked.total ? 100 : 100 * done / tracked.total;
+        String eta = 0 == done ? "unknown" : Math.round(seconds * (tracked.total - done) / done) + " s";
+        Runtime runtime = Runtime.getRuntime();
+        out.printf("%s: %d%% (%d of %d MB), %.1f MB/s, ETA %s, heap used %d MB%n", tracked.phase, percent
+                , done / MB, tracked.total / MB, 0 == nanos ? 0.0 : done / seconds / MB, eta
+                , (runtime.totalMemory() - runtime.freeMemory()) / MB);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,63 @@
+package org.babich.sort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The samples of the sorted batches, each sample is the value of the batch and its rank, the number of items
+ * of the batch not greater than the value. The items of all batches not greater than a value are at least
+ * the sum of the greatest ranks of the samples of each batch not greater than it, so the samples give the value
+ * which at least the first items of the sorted order do not exceed, even if each batch holds only a few of them.
+ * Only the samples not greater than the last found value are kept.
+ */
+class RankSamples {
+
+    static final int SAMPLES_PER_BATCH = 64;
+
+    private final long items;
+    private final List<int[]> samples = new ArrayList<>();
+    private int batches;
+
+    /**
+     * @param items - number of the first items of the sorted order.
+     */
+    RankSamples(long items) {
+        this.items = items;
+    }
+
+    /**
+     * Takes the samples of the sorted batch evenly and the item at the position of the first items if the batch
+     * holds them all.
+     * @return the least sampled value which at least the first items do not exceed,
+     * or {@link Integer#MAX_VALUE} if the samples hold fewer items.
+     */
+    synchronized int add(int[] sorted, int count) {
+        int batch = batches++;
+        for (int i = 1; i <= SAMPLES_PER_BATCH; i++) {
+            int rank = (int) ((long) i * count / SAMPLES_PER_BATCH);
+            if (items < rank && items > (long) (i - 1) * count / SAMPLES_PER_BATCH) {
+                samples.add(new int[]{sorted[(int) items - 1], batch, (int) items});
+            }
+            if (rank > 0) {
+                samples.add(new int[]{sorted[rank - 1], batch, rank});
+            }
+        }
+        samples.sort(Comparator.comparingInt(sample -> sample[0]));
+
+        Map<Integer, Integer> ranks = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            int[] sample = samples.get(i);
+            Integer previous = ranks.put(sample[1], sample[2]);
+            total += sample[2] - (null == previous ? 0 : previous);
+            if (total >= items) {
+                samples.subList(i + 1, samples.size()).clear();
+                return sample[0];
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,65 @@
+package org.babich.sort;
+
+/**
+ * The layout of fixed-width binary records ordered by the signed 64-bit big-endian key at the key offset,
+ * the rest of the record is the payload moved along with its key.
+ * The layout of {@link #ofLongs()} has no payload, each record is the key itself.
+ */
+public class RecordLayout {
+
+    private final int recordSize;
+    private final int keyOffset;
+
+    private RecordLayout(int recordSize, int keyOffset) {
+        if (keyOffset < 0 || recordSize < keyOffset + Long.BYTES) {
+            throw new IllegalArgumentException(String
+                    .format("Invalid key offset {%d} of the record of %d bytes.", keyOffset, recordSize));
+        }
+        this.recordSize = recordSize;
+        this.keyOffset = keyOffset;
+    }
+
+    public static RecordLayout ofLongs() {
+        return new RecordLayout(Long.BYTES, 0);
+    }
+
+    /**
+     * @param recordSize - bytes of each record.
+     * @param keyOffset - position of the 8 bytes of the key in the record.
+     */
+    public static RecordLayout of(int recordSize, int keyOffset) {
+        return new RecordLayout(recordSize, keyOffset);
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public int getKeyOffset() {
+        return keyOffset;
+    }
+
+    /**
+     * @return true if the record is the key without payload.
+     */
+    public boolean isKeyOnly() {
+        return Long.BYTES == recordSize;
+    }
+
+    /**
+     * @param offset - position of the record in the bytes.
+     */
+    public long keyOf(byte[] records, int offset) {
+        int position = offset + keyOffset;
+        long key = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            key = (key << 8) | (records[position + i] & 0xFF);
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "record of " + recordSize + " bytes with the key at " + keyOffset;
+    }
+}
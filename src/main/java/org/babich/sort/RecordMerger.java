@@ -0,0 +1,298 @@
+package org.babich.sort;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Merging of the sorted batches of records by the loser tree over the primitive keys of the heads of the batches,
+ * see {@link Merger.LoserTreeMerger}. The records of each batch are read by blocks of {@link #BLOCK_RECORDS}
+ * and given to the consumer right from the block. While more than {@code maxFanIn} batches remain, the smallest
+ * of them are merged into the intermediate file, like the {@link Merger.CascadingMerger} does, so at most
+ * {@code maxFanIn} blocks are held at once. The files of the batches are deleted when the merging is completed
+ * or has failed.
+ */
+public class RecordMerger {
+
+    static final int BLOCK_RECORDS = 1024;
+
+    private final RecordLayout layout;
+    private final List<File> files;
+    private final int maxFanIn;
+    private final SpillStorage spillStorage;
+    private final int runsCount;
+
+    private int intermediateMerges;
+
+    /**
+     * The consumer of the record at the position of the bytes, the bytes are reused after the call.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(byte[] records, int offset);
+    }
+
+    /**
+     * @param spillStorage - the directories of the intermediate files.
+     */
+    RecordMerger(RecordLayout layout, List<File> files, int maxFanIn, SpillStorage spillStorage) {
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("maxFanIn must be at least two.");
+        }
+        this.layout = layout;
+        this.files = new ArrayList<>(files);
+        this.maxFanIn = maxFanIn;
+        this.spillStorage = spillStorage;
+        this.runsCount = files.size();
+    }
+
+    public void doMergeIn(RecordConsumer consumer) {
+        try {
+            mergeIntermediateRuns();
+            mergeFiles(new ArrayList<>(files), consumer);
+        } finally {
+            files.forEach(File::delete);
+        }
+    }
+
+    /**
+     * Merging of the keys of the records.
+     */
+    public void doMergeIn(LongConsumer consumer) {
+        doMergeIn((records, offset) -> consumer.accept(layout.keyOf(records, offset)));
+    }
+
+    /**
+     * Merging of the records into the binary file of the same layout.
+     * @return number of records put in the file.
+     */
+    public long doMergeInto(Path output) {
+        long[] count = new long[]{0};
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output)
+                , BLOCK_RECORDS * layout.getRecordSize())) {
+            RecordConsumer writer = writerOf(stream);
+            doMergeIn((records, offset) -> {
+                writer.accept(records, offset);
+                count[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write data to output file", e);
+        }
+        return count[0];
+    }
+
+    /**
+     * @return number of merged batches.
+     */
+    public int getRunsCount() {
+        return runsCount;
+    }
+
+    /**
+     * @return number of intermediate files written before the last merge.
+     */
+    public int getIntermediateMerges() {
+        return intermediateMerges;
+    }
+
+    public int getMaxFanIn() {
+        return maxFanIn;
+    }
+
+    /**
+     * The first merge takes as many batches as it is needed for the next merges to take {@code maxFanIn} batches,
+     * the merged batches are deleted as soon as their intermediate file is written.
+     */
+    private void mergeIntermediateRuns() {
+        PriorityQueue<File> smallest = new PriorityQueue<>(Comparator.comparingLong(File::length));
+        smallest.addAll(files);
+        int fanIn = Merger.CascadingMerger.firstFanIn(smallest.size(), maxFanIn);
+        while (smallest.size() > maxFanIn) {
+            List<File> merged = new ArrayList<>();
+            long bytes = 0;
+            for (int i = 0; i < fanIn; i++) {
+                File file = smallest.poll();
+                merged.add(file);
+                bytes += file.length();
+            }
+
+            File intermediate = spillStorage.newFile(bytes);
+            files.add(intermediate);
+            try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(intermediate)
+                    , BLOCK_RECORDS * layout.getRecordSize())) {
+                mergeFiles(merged, writerOf(stream));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write an intermediate batch.", e);
+            }
+            merged.forEach(File::delete);
+            files.removeAll(merged);
+
+            smallest.add(intermediate);
+            intermediateMerges++;
+            fanIn = maxFanIn;
+        }
+    }
+
+    private void mergeFiles(List<File> merged, RecordConsumer consumer) {
+        List<Run> runs = new ArrayList<>();
+        try {
+            for (File file : merged) {
+                runs.add(new Run(runs.size(), new FileInputStream(file), layout));
+            }
+            merge(runs, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read a sorted batch.", e);
+        } finally {
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    private RecordConsumer writerOf(OutputStream stream) {
+        return (records, offset) -> {
+            try {
+                stream.write(records, offset, layout.getRecordSize());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write data to output file", e);
+            }
+        };
+    }
+
+    /**
+     * The leaves of the tree are virtual nodes {@code k..2k-1}, the internal nodes are {@code 1..k-1},
+     * each internal node keeps the batch that lost the match in it and the root {@code tree[0]} keeps the winner.
+     */
+    private static void merge(List<Run> runs, RecordConsumer consumer) throws IOException {
+        int k = runs.size();
+        if (0 == k) {
+            return;
+        }
+        Run[] heads = runs.toArray(new Run[0]);
+        for (Run run : heads) {
+            run.next();
+        }
+
+        int[] tree = new int[k];
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            if (heads[left].less(heads[right])) {
+                winners[node] = left;
+                tree[node] = right;
+            } else {
+                winners[node] = right;
+                tree[node] = left;
+            }
+        }
+        tree[0] = k > 1 ? winners[1] : 0;
+
+        for (int winner = tree[0]; !heads[winner].exhausted; winner = tree[0]) {
+            Run run = heads[winner];
+            consumer.accept(run.block, run.position);
+            run.next();
+            for (int node = (k + winner) >> 1; node > 0; node >>= 1) {
+                if (heads[tree[node]].less(heads[winner])) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+    }
+
+    /**
+     * Reads the block of records, the block is not full only at the end of the stream.
+     * @return number of read bytes.
+     * @throws IOException if the stream ends with an incomplete record.
+     */
+    static int fill(InputStream input, byte[] block, int recordSize) throws IOException {
+        int filled = 0;
+        for (int read; filled < block.length && (read = input.read(block, filled, block.length - filled)) > 0; ) {
+            filled += read;
+        }
+        if (0 != filled % recordSize) {
+            throw new EOFException("The data ends with an incomplete record.");
+        }
+        return filled;
+    }
+
+    /**
+     * The sorted batch read by blocks, the head record is at the position of the block.
+     */
+    private static class Run implements Closeable {
+
+        private final int index;
+        private final InputStream input;
+        private final RecordLayout layout;
+        private final byte[] block;
+        private int position;
+        private int limit;
+
+        long key;
+        boolean exhausted;
+
+        /**
+         * @param index - the position of the batch in the merge, the batch with the lower one goes first
+         *              among the equal keys.
+         */
+        Run(int index, InputStream input, RecordLayout layout) {
+            this.index = index;
+            this.input = input;
+            this.layout = layout;
+            this.block = new byte[BLOCK_RECORDS * layout.getRecordSize()];
+            this.position = -layout.getRecordSize();
+        }
+
+        void next() throws IOException {
+            position += layout.getRecordSize();
+            if (position >= limit) {
+                limit = fill(input, block, layout.getRecordSize());
+                position = 0;
+                if (0 == limit) {
+                    exhausted = true;
+                    return;
+                }
+            }
+            key = layout.keyOf(block, position);
+        }
+
+        /**
+         * An exhausted batch always loses, the equal keys are ordered by the index of the batch,
+         * like {@link Merger.LoserTreeMerger} does.
+         */
+        boolean less(Run other) {
+            if (exhausted) {
+                return false;
+            }
+            return other.exhausted || key < other.key || (key == other.key && index < other.index);
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
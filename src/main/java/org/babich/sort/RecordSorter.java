@@ -0,0 +1,333 @@
+package org.babich.sort;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Sorting of 64-bit keys or fixed-width binary records by their keys, see {@link RecordLayout}.
+ * Like the {@link Sorter} the records are split into sorted batches written in external memory
+ * and merged by {@link RecordMerger}. The keys are kept in the primitive array next to the records,
+ * the keys are sorted in place and the records with payload are sorted by the radix sorting of the keys
+ * along with the indexes of the records, so no record is boxed. The records of the batch are kept in one array,
+ * so the batch cannot hold more than {@link #MAX_ARRAY_SIZE} bytes of them.
+ */
+public class RecordSorter implements LongConsumer {
+
+    static final int RADIX = RunSorter.RadixSorter.RADIX;
+    static final int PASSES = Long.BYTES;
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int INITIAL_BATCH_CAPACITY = 1 << 13;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final RecordLayout layout;
+    private final int batchSize;
+    private final SpillStorage spillStorage;
+    private final int maxFanIn;
+    private final int recordSize;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private long[] keys;
+    private byte[] records;
+    private int count;
+
+    private long[] keyBuffer = new long[0];
+    private int[] indexes = new int[0];
+    private int[] indexBuffer = new int[0];
+
+    private RecordSorter(RecordSorterBuilder builder) {
+        if (builder.batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than zero.");
+        }
+        if (builder.maxFanIn < 2) {
+            throw new IllegalArgumentException("maxFanIn must be at least two.");
+        }
+        if (builder.batchSize > maxBatchSize(builder.layout)) {
+            throw new IllegalArgumentException(String.format("batchSize of %d records of %d bytes exceeds"
+                    + " the maximum array size, it must not exceed %d records.", builder.batchSize
+                    , builder.layout.getRecordSize(), maxBatchSize(builder.layout)));
+        }
+        this.layout = builder.layout;
+        this.batchSize = builder.batchSize;
+        this.spillStorage = null != builder.spillStorage ? builder.spillStorage : SpillStorage.ofTempDirectory();
+        this.maxFanIn = builder.maxFanIn;
+        this.recordSize = layout.getRecordSize();
+        this.keys = new long[Math.min(batchSize, INITIAL_BATCH_CAPACITY)];
+        this.records = layout.isKeyOnly() ? null : new byte[recordsBytes(keys.length)];
+    }
+
+    /**
+     * @return the maximum number of records of the batch, so the records fit in one array.
+     */
+    static int maxBatchSize(RecordLayout layout) {
+        return layout.isKeyOnly() ? MAX_ARRAY_SIZE : MAX_ARRAY_SIZE / layout.getRecordSize();
+    }
+
+    /**
+     * @return bytes of memory of each record of the batch: the record, its key and the buffers of the sorting.
+     */
+    static int bytesPerRecord(RecordLayout layout) {
+        return layout.isKeyOnly()
+                ? 2 * Long.BYTES
+                : layout.getRecordSize() + 2 * Long.BYTES + 2 * Integer.BYTES;
+    }
+
+    /**
+     * Accepts the key of the layout without payload.
+     */
+    @Override
+    public void accept(long key) {
+        if (!layout.isKeyOnly()) {
+            throw new IllegalStateException("The record with payload must be accepted with its bytes.");
+        }
+        if (count == keys.length) {
+            nextBatch();
+        }
+        keys[count++] = key;
+    }
+
+    /**
+     * Accepts the copy of the record.
+     * @param offset - position of the record in the bytes.
+     */
+    public void accept(byte[] record, int offset) {
+        if (layout.isKeyOnly()) {
+            accept(layout.keyOf(record, offset));
+            return;
+        }
+        if (count == keys.length) {
+            nextBatch();
+        }
+        System.arraycopy(record, offset, records, count * recordSize, recordSize);
+        keys[count++] = layout.keyOf(record, offset);
+    }
+
+    /**
+     * Reads the binary file of the records of the layout.
+     * @return number of read records.
+     */
+    public long readFrom(Path input) {
+        byte[] block = new byte[RecordMerger.BLOCK_RECORDS * recordSize];
+        long read = 0;
+        try (InputStream stream = Files.newInputStream(input)) {
+            for (int filled = RecordMerger.fill(stream, block, recordSize); filled > 0
+                    ; filled = RecordMerger.fill(stream, block, recordSize)) {
+                for (int offset = 0; offset < filled; offset += recordSize) {
+                    accept(block, offset);
+                }
+                read += filled / recordSize;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data from input file", e);
+        }
+        return read;
+    }
+
+    /**
+     * Writes the last batch, the merger deletes the files of the batches when the merging is completed.
+     */
+    public RecordMerger finish() {
+        try {
+            if (count > 0) {
+                spill();
+            }
+        } catch (RuntimeException e) {
+            runs.forEach(File::delete);
+            throw e;
+        } finally {
+            keys = new long[0];
+            records = null;
+            keyBuffer = new long[0];
+            indexes = new int[0];
+            indexBuffer = new int[0];
+        }
+        return new RecordMerger(layout, runs, maxFanIn, spillStorage);
+    }
+
+    public RecordLayout getLayout() {
+        return layout;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxFanIn() {
+        return maxFanIn;
+    }
+
+    /**
+     * @return number of sorted batches written in external memory.
+     */
+    public int getSortedRunsCount() {
+        return runs.size();
+    }
+
+    private void nextBatch() {
+        if (keys.length < batchSize) {
+            keys = Arrays.copyOf(keys, (int) Math.min(batchSize, 2L * keys.length));
+            if (null != records) {
+                records = Arrays.copyOf(records, recordsBytes(keys.length));
+            }
+            return;
+        }
+        spill();
+    }
+
+    /**
+     * The batch size is checked by {@link #maxBatchSize(RecordLayout)}, so the bytes fit in one array.
+     */
+    private int recordsBytes(int count) {
+        return Math.toIntExact((long) count * recordSize);
+    }
+
+    private void spill() {
+        File file = spillStorage.newFile((long) count * recordSize);
+        runs.add(file);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), WRITE_BUFFER_SIZE))) {
+            if (layout.isKeyOnly()) {
+                Arrays.sort(keys, 0, count);
+                for (int i = 0; i < count; i++) {
+                    output.writeLong(keys[i]);
+                }
+            } else {
+                sortIndexes();
+                for (int i = 0; i < count; i++) {
+                    output.write(records, indexes[i] * recordSize, recordSize);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write a sorted batch.", e);
+        }
+        count = 0;
+    }
+
+    /**
+     * The least significant digit radix sorting of the keys moves the indexes of the records along with them,
+     * the passes where all keys have the same digit are skipped.
+     */
+    private void sortIndexes() {
+        if (indexes.length < count) {
+            indexes = new int[count];
+            indexBuffer = new int[count];
+            keyBuffer = new long[count];
+        }
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+
+        long[] sourceKeys = keys;
+        int[] sourceIndexes = indexes;
+        long[] targetKeys = keyBuffer;
+        int[] targetIndexes = indexBuffer;
+        int[] counts = new int[RADIX];
+        for (int pass = 0; pass < PASSES; pass++) {
+            int shift = pass * Byte.SIZE;
+            int flip = PASSES - 1 == pass ? 0x80 : 0;
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[(int) ((sourceKeys[i] >>> shift) & 0xFF) ^ flip]++;
+            }
+            if (RunSorter.RadixSorter.isTrivial(counts, count)) {
+                continue;
+            }
+
+            RunSorter.RadixSorter.toOffsets(counts, 0);
+            for (int i = 0; i < count; i++) {
+                int target = counts[(int) ((sourceKeys[i] >>> shift) & 0xFF) ^ flip]++;
+                targetKeys[target] = sourceKeys[i];
+                targetIndexes[target] = sourceIndexes[i];
+            }
+
+            long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+            int[] swapIndexes = sourceIndexes;
+            sourceIndexes = targetIndexes;
+            targetIndexes = swapIndexes;
+        }
+
+        keys = sourceKeys;
+        keyBuffer = targetKeys;
+        indexes = sourceIndexes;
+        indexBuffer = targetIndexes;
+    }
+
+    public static RecordSorterBuilder newRecordSorter() {
+        return new RecordSorterBuilder();
+    }
+
+    public static class RecordSorterBuilder {
+
+        private RecordLayout layout = RecordLayout.ofLongs();
+        private int batchSize = -1;
+        private SpillStorage spillStorage;
+        private int maxFanIn = 64;
+        private MemoryBudget memoryBudget;
+
+        public RecordSorterBuilder withLayout(RecordLayout layout) {
+            this.layout = layout;
+            return this;
+        }
+
+        /**
+         * @param batchSize - the number of records sorted in memory.
+         */
+        public RecordSorterBuilder withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param spillStorage - the directories of the files of the sorted batches, by default the temporary directory.
+         */
+        public RecordSorterBuilder withSpillStorage(SpillStorage spillStorage) {
+            this.spillStorage = spillStorage;
+            return this;
+        }
+
+        /**
+         * @param maxFanIn - the maximum number of batches merged at once, the smallest batches are merged
+         *                 into intermediate files while more batches remain, default 64.
+         */
+        public RecordSorterBuilder withMaxFanIn(int maxFanIn) {
+            this.maxFanIn = maxFanIn;
+            return this;
+        }
+
+        /**
+         * @param memoryBudget - the batch size and the maximum number of batches merged at once are worked out
+         *                     from the budget, so the batch with the buffers of its sorting and the blocks
+         *                     of the merge do not exceed it.
+         */
+        public RecordSorterBuilder withMemoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public RecordSorter build() {
+            if (null == layout) {
+                throw new IllegalArgumentException("layout must be initialized.");
+            }
+            if (null != memoryBudget) {
+                batchSize = Math.min(maxBatchSize(layout), memoryBudget.recordBatchSize(bytesPerRecord(layout)));
+                maxFanIn = memoryBudget.recordMaxFanIn(RecordMerger.BLOCK_RECORDS * layout.getRecordSize());
+            }
+            return new RecordSorter(this);
+        }
+    }
+}
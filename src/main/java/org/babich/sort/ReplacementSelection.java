@@ -0,0 +1,121 @@
+package org.babich.sort;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Generation of sorted batches by the replacement selection.
+ * The buffer keeps the heap of items of the current batch at the beginning, the items which are less
+ * than the last written item are put at the end of the buffer and wait for the next batch.
+ * When the heap is empty the next batch begins with the waiting items.
+ * On random data batches are about twice as long as the buffer, the sorted data gives the only batch.
+ */
+class ReplacementSelection implements IntConsumer {
+
+    private final int[] heap;
+    private final Supplier<ParticleWriter> particles;
+
+    private int heapSize;
+    private boolean filled;
+    private ParticleWriter particleWriter;
+
+    ReplacementSelection(int capacity, Supplier<ParticleWriter> particles) {
+        this.heap = new int[capacity];
+        this.particles = particles;
+        this.heapSize = 0;
+        this.filled = false;
+    }
+
+    @Override
+    public void accept(int value) {
+        if (!filled) {
+            heap[heapSize++] = value;
+            if (heapSize == heap.length) {
+                filled = true;
+                heapify();
+            }
+            return;
+        }
+
+        int min = heap[0];
+        currentParticle().writeInt(min);
+
+        if (value >= min) {
+            heap[0] = value;
+        } else {
+            heapSize--;
+            heap[0] = heap[heapSize];
+            heap[heapSize] = value;
+        }
+        siftDown(0);
+
+        if (0 == heapSize) {
+            completeParticle();
+            heapSize = heap.length;
+            heapify();
+        }
+    }
+
+    /**
+     * Writes the rest of the heap into the current batch and the waiting items into the next one.
+     */
+    void finish() {
+        Arrays.sort(heap, 0, heapSize);
+        writeAll(0, heapSize);
+        completeParticle();
+
+        if (filled) {
+            Arrays.sort(heap, heapSize, heap.length);
+            writeAll(heapSize, heap.length);
+            completeParticle();
+        }
+
+        heapSize = 0;
+        filled = false;
+    }
+
+    private void writeAll(int from, int to) {
+        for (int i = from; i < to; i++) {
+            currentParticle().writeInt(heap[i]);
+        }
+    }
+
+    private ParticleWriter currentParticle() {
+        if (null == particleWriter) {
+            particleWriter = particles.get();
+        }
+        return particleWriter;
+    }
+
+    private void completeParticle() {
+        if (null != particleWriter) {
+            particleWriter.close();
+            particleWriter = null;
+        }
+    }
+
+    private void heapify() {
+        for (int i = (heapSize >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int index) {
+        int value = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && heap[right] < heap[child]) {
+                child = right;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
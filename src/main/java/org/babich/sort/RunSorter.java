@@ -0,0 +1,307 @@
+package org.babich.sort;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * In memory sorting of a batch before it is written in external memory.
+ */
+public interface RunSorter {
+
+    void sort(int[] items, int from, int to);
+
+    /**
+     * @return bytes of additional memory for each sorted item.
+     */
+    int extraBytesPerItem();
+
+    /**
+     * Available implementations of the sorting.
+     */
+    enum Algorithm {
+
+        /**
+         * the radix sorting for big batches when there is memory for its buffer, otherwise {@link #JDK}.
+         */
+        AUTO(0, JdkSorter::new),
+
+        /**
+         * dual-pivot quicksort of {@link Arrays#sort(int[], int, int)}.
+         */
+        JDK(0, JdkSorter::new),
+
+        /**
+         * parallel merge sort of {@link Arrays#parallelSort(int[], int, int)}.
+         */
+        PARALLEL_JDK(Integer.BYTES, ParallelJdkSorter::new),
+
+        /**
+         * byte by byte least significant digit radix sorting, Q(4n).
+         */
+        RADIX(Integer.BYTES, RadixSorter::new),
+
+        /**
+         * radix sorting with the histograms and the distribution of items computed by parts in parallel.
+         */
+        PARALLEL_RADIX(Integer.BYTES, ParallelRadixSorter::new);
+
+        /**
+         * for small batches the quicksort is faster than four passes over the items.
+         */
+        static final int MIN_RADIX_SIZE = 1 << 16;
+
+        static final int MIN_PARALLEL_SIZE = 1 << 20;
+
+        private final int extraBytesPerItem;
+        private final Supplier<RunSorter> factory;
+
+        Algorithm(int extraBytesPerItem, Supplier<RunSorter> factory) {
+            this.extraBytesPerItem = extraBytesPerItem;
+            this.factory = factory;
+        }
+
+        public RunSorter create() {
+            return factory.get();
+        }
+
+        public int extraBytesPerItem() {
+            return extraBytesPerItem;
+        }
+
+        /**
+         * Chooses the implementation for {@link #AUTO}, other algorithms are returned as is.
+         * @param sortThreads - number of batches sorted at once, each of them needs its own buffer.
+         * @param availableBytes - memory available for the buffers of the sorting.
+         */
+        public Algorithm resolve(int batchSize, int sortThreads, long availableBytes) {
+            if (AUTO != this) {
+                return this;
+            }
+            int sortedAtOnce = Math.max(1, sortThreads);
+            if (batchSize < MIN_RADIX_SIZE
+                    || (long) sortedAtOnce * batchSize * RADIX.extraBytesPerItem > availableBytes) {
+                return JDK;
+            }
+            if (batchSize >= MIN_PARALLEL_SIZE && Runtime.getRuntime().availableProcessors() > sortedAtOnce + 1) {
+                return PARALLEL_RADIX;
+            }
+            return RADIX;
+        }
+    }
+
+    class JdkSorter implements RunSorter {
+
+        @Override
+        public void sort(int[] items, int from, int to) {
+            Arrays.sort(items, from, to);
+        }
+
+        @Override
+        public int extraBytesPerItem() {
+            return 0;
+        }
+    }
+
+    class ParallelJdkSorter implements RunSorter {
+
+        @Override
+        public void sort(int[] items, int from, int to) {
+            Arrays.parallelSort(items, from, to);
+        }
+
+        @Override
+        public int extraBytesPerItem() {
+            return Integer.BYTES;
+        }
+    }
+
+    /**
+     * Items are distributed by each byte from the lowest one into the buffer and back.
+     * The highest byte is taken with the flipped sign bit, so negative numbers go first.
+     * A pass is skipped when all items have the same byte, which is common for narrow ranges of values.
+     */
+    class RadixSorter implements RunSorter {
+
+        static final int RADIX = 256;
+        static final int PASSES = Integer.BYTES;
+
+        int[] buffer = new int[0];
+
+        @Override
+        public void sort(int[] items, int from, int to) {
+            int size = to - from;
+            if (size < Algorithm.MIN_RADIX_SIZE) {
+                Arrays.sort(items, from, to);
+                return;
+            }
+            if (isSorted(items, from, to)) {
+                return;
+            }
+            int[] target = buffer(size);
+
+            int[] source = items;
+            int sourceFrom = from;
+            int targetFrom = 0;
+            int[] counts = new int[RADIX];
+            for (int pass = 0; pass < PASSES; pass++) {
+                int shift = pass * Byte.SIZE;
+                int flip = PASSES - 1 == pass ? 0x80 : 0;
+
+                Arrays.fill(counts, 0);
+                for (int i = sourceFrom; i < sourceFrom + size; i++) {
+                    counts[((source[i] >>> shift) & 0xFF) ^ flip]++;
+                }
+                if (isTrivial(counts, size)) {
+                    continue;
+                }
+
+                toOffsets(counts, targetFrom);
+                for (int i = sourceFrom; i < sourceFrom + size; i++) {
+                    int value = source[i];
+                    target[counts[((value >>> shift) & 0xFF) ^ flip]++] = value;
+                }
+
+                int[] swap = source;
+                source = target;
+                target = swap;
+                int swapFrom = sourceFrom;
+                sourceFrom = targetFrom;
+                targetFrom = swapFrom;
+            }
+
+            if (source != items) {
+                System.arraycopy(source, sourceFrom, items, from, size);
+            }
+        }
+
+        /**
+         * unlike the quicksort the radix sorting does not take advantage of the sorted data, so it is checked first.
+         */
+        static boolean isSorted(int[] items, int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                if (items[i - 1] > items[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Turns the counts of the digits into the positions of the first items with each digit.
+         * @param from - position of the first item.
+         */
+        static void toOffsets(int[] counts, int from) {
+            int offset = from;
+            for (int digit = 0; digit < counts.length; digit++) {
+                int count = counts[digit];
+                counts[digit] = offset;
+                offset += count;
+            }
+        }
+
+        static boolean isTrivial(int[] counts, int size) {
+            for (int count : counts) {
+                if (0 != count) {
+                    return count == size;
+                }
+            }
+            return true;
+        }
+
+        int[] buffer(int size) {
+            if (buffer.length < size) {
+                buffer = new int[size];
+            }
+            return buffer;
+        }
+
+        @Override
+        public int extraBytesPerItem() {
+            return Integer.BYTES;
+        }
+    }
+
+    /**
+     * Each part of the items has its own histogram, the parts are distributed in parallel
+     * into disjoint positions of the buffer computed from all histograms, so the sorting stays stable.
+     */
+    class ParallelRadixSorter extends RadixSorter {
+
+        private final int parts;
+
+        public ParallelRadixSorter() {
+            this(Runtime.getRuntime().availableProcessors());
+        }
+
+        ParallelRadixSorter(int parts) {
+            this.parts = Math.max(1, parts);
+        }
+
+        @Override
+        public void sort(int[] items, int from, int to) {
+            int size = to - from;
+            if (size < Algorithm.MIN_PARALLEL_SIZE || 1 == parts) {
+                super.sort(items, from, to);
+                return;
+            }
+            if (isSorted(items, from, to)) {
+                return;
+            }
+            int[] buffer = buffer(size);
+            int partSize = (size + parts - 1) / parts;
+
+            int[][] arrays = new int[][]{items, buffer};
+            int[] starts = new int[]{from, 0};
+            int current = 0;
+            int[][] counts = new int[parts][RADIX];
+            for (int pass = 0; pass < PASSES; pass++) {
+                int shift = pass * Byte.SIZE;
+                int flip = PASSES - 1 == pass ? 0x80 : 0;
+                int[] source = arrays[current];
+                int[] target = arrays[1 - current];
+                int sourceFrom = starts[current];
+                int targetFrom = starts[1 - current];
+
+                IntStream.range(0, parts).parallel().forEach(part -> {
+                    int[] partCounts = counts[part];
+                    Arrays.fill(partCounts, 0);
+                    int end = Math.min(size, (part + 1) * partSize) + sourceFrom;
+                    for (int i = sourceFrom + part * partSize; i < end; i++) {
+                        partCounts[((source[i] >>> shift) & 0xFF) ^ flip]++;
+                    }
+                });
+
+                int offset = targetFrom;
+                boolean trivial = false;
+                for (int digit = 0; digit < RADIX; digit++) {
+                    int digitCount = 0;
+                    for (int part = 0; part < parts; part++) {
+                        int count = counts[part][digit];
+                        counts[part][digit] = offset;
+                        offset += count;
+                        digitCount += count;
+                    }
+                    trivial |= digitCount == size;
+                }
+                if (trivial) {
+                    continue;
+                }
+
+                IntStream.range(0, parts).parallel().forEach(part -> {
+                    int[] positions = counts[part];
+                    int end = Math.min(size, (part + 1) * partSize) + sourceFrom;
+                    for (int i = sourceFrom + part * partSize; i < end; i++) {
+                        int value = source[i];
+                        target[positions[((value >>> shift) & 0xFF) ^ flip]++] = value;
+                    }
+                });
+                current = 1 - current;
+            }
+
+            if (0 != current) {
+                System.arraycopy(buffer, 0, items, from, size);
+            }
+        }
+    }
+}
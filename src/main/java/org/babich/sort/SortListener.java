@@ -0,0 +1,20 @@
+package org.babich.sort;
+
+/**
+ * The events of the sorting job, see {@link SortMetrics}. The written batches are given by the sorting threads.
+ */
+public interface SortListener {
+
+    default void onPhaseStarted(SortMetrics.Phase phase) {
+    }
+
+    default void onPhaseCompleted(SortMetrics.Phase phase, long nanos) {
+    }
+
+    /**
+     * @param items - number of items of the sorted batch.
+     * @param bytes - number of bytes of the batch written in external memory.
+     */
+    default void onRunWritten(int number, long items, long bytes) {
+    }
+}
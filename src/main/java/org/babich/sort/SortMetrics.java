@@ -0,0 +1,260 @@
+package org.babich.sort;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * The metrics of a sorting job: the wall time of each phase, the incoming data and its parse rate,
+ * the sorted batches and their sizes, the bytes of the temporary files, the merge, the time the merge waited
+ * for the batches read in advance, the garbage collection and the heap high-water mark.
+ * The phases are timed by the caller, the rest is taken from the {@link Sorter} and the {@link Merger}
+ * by {@link #recordSorter(Sorter)} and {@link #recordMerger(Merger, long)}. The metrics listen to the sorter,
+ * see {@link Sorter.SorterBuilder#withListener(SortListener)}, and pass its events on to the added listeners.
+ * The summary is given by {@link #toJson()}.
+ */
+public class SortMetrics implements SortListener {
+
+    public enum Phase {
+
+        /**
+         * reading of the incoming data, the full batches are sorted and written meanwhile.
+         */
+        READING,
+
+        /**
+         * sorting and writing of the last batches.
+         */
+        FINISHING,
+
+        /**
+         * merging of the sorted batches into the result.
+         */
+        MERGING
+    }
+
+    private final List<SortListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final LongAdder runsWritten = new LongAdder();
+    private final LongAdder runBytesWritten = new LongAdder();
+
+    private final long gcCountAtStart;
+    private final long gcMillisAtStart;
+
+    private Phase phase;
+    private long phaseStartNanos;
+
+    private long inputItems;
+    private long inputBytes;
+    private long outputItems;
+
+    private int runs;
+    private long minRunItems;
+    private long maxRunItems;
+    private long runItems;
+    private long bytesWritten;
+    private long bytesRead;
+    private long stallNanos;
+
+    private int fanIn;
+    private int passes;
+    private long rewrittenBytes;
+
+    /**
+     * The heap high-water mark is counted from here.
+     */
+    public SortMetrics() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> MemoryType.HEAP == pool.getType())
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+        this.gcCountAtStart = gcCount();
+        this.gcMillisAtStart = gcMillis();
+    }
+
+    public SortMetrics addListener(SortListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Completes the current phase, if any, and starts the next one.
+     */
+    public synchronized void startPhase(Phase phase) {
+        completePhase();
+        this.phase = phase;
+        this.phaseStartNanos = System.nanoTime();
+        listeners.forEach(listener -> listener.onPhaseStarted(phase));
+    }
+
+    public synchronized void completePhase() {
+        if (null == phase) {
+            return;
+        }
+        Phase completed = phase;
+        long nanos = System.nanoTime() - phaseStartNanos;
+        phaseNanos.merge(completed, nanos, Long::sum);
+        phase = null;
+        listeners.forEach(listener -> listener.onPhaseCompleted(completed, nanos));
+    }
+
+    /**
+     * @return the current phase, {@code null} when no phase is going on.
+     */
+    public synchronized Phase getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void onRunWritten(int number, long items, long bytes) {
+        runsWritten.increment();
+        runBytesWritten.add(bytes);
+        listeners.forEach(listener -> listener.onRunWritten(number, items, bytes));
+    }
+
+    /**
+     * @param bytes - number of bytes of the incoming data.
+     */
+    public synchronized void recordInput(long items, long bytes) {
+        this.inputItems = items;
+        this.inputBytes = bytes;
+    }
+
+    /**
+     * Takes the sorted batches and the bytes of the temporary files, it is called when the merging is completed,
+     * so the bytes read by the merge are taken, the sizes of the batches are the ones taken by
+     * {@link Sorter#finish()}.
+     */
+    public synchronized void recordSorter(Sorter sorter) {
+        long[] sizes = sorter.getSortedParticleSizes();
+        runs = sizes.length;
+        minRunItems = 0 == sizes.length ? 0 : Long.MAX_VALUE;
+        maxRunItems = 0;
+        runItems = 0;
+        for (long size : sizes) {
+            minRunItems = Math.min(minRunItems, size);
+            maxRunItems = Math.max(maxRunItems, size);
+            runItems += size;
+        }
+        bytesWritten = sorter.getBytesWritten();
+        bytesRead = sorter.getBytesRead();
+        stallNanos = sorter.getPrefetchStallNanos();
+    }
+
+    /**
+     * @param outputItems - number of items put in the result.
+     */
+    public synchronized void recordMerger(Merger merger, long outputItems) {
+        this.fanIn = merger.fanIn();
+        this.passes = merger.passes();
+        this.rewrittenBytes = merger.rewrittenBytes();
+        this.outputItems = outputItems;
+    }
+
+    /**
+     * @return nanoseconds of the completed phase, zero if it has not been completed.
+     */
+    public synchronized long getPhaseNanos(Phase phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * @return number of batches written in external memory so far.
+     */
+    public long getRunsWritten() {
+        return runsWritten.sum();
+    }
+
+    /**
+     * @return number of bytes of the batches written in external memory so far.
+     */
+    public long getRunBytesWritten() {
+        return runBytesWritten.sum();
+    }
+
+    /**
+     * @return items of the incoming data parsed per second of the reading.
+     */
+    public synchronized double getParseRate() {
+        long nanos = getPhaseNanos(Phase.READING);
+        return 0 == nanos ? 0 : inputItems * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * @return number of garbage collections since the metrics were created.
+     */
+    public long getGcCount() {
+        return gcCount() - gcCountAtStart;
+    }
+
+    /**
+     * @return milliseconds of the garbage collections since the metrics were created.
+     */
+    public long getGcMillis() {
+        return gcMillis() - gcMillisAtStart;
+    }
+
+    /**
+     * @return bytes of the heap used at the peak, the sum of the peaks of the heap memory pools.
+     */
+    public long getHeapHighWater() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> MemoryType.HEAP == pool.getType())
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    /**
+     * @return the single line JSON summary of the metrics.
+     */
+    public synchronized String toJson() {
+        String phases = phaseNanos.entrySet().stream()
+                .map(entry -> field(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(entry.getValue())))
+                .collect(Collectors.joining(","));
+        long readingNanos = getPhaseNanos(Phase.READING);
+        return "{"
+                + "\"phasesMillis\":{" + phases + "},"
+                + field("totalMillis", TimeUnit.NANOSECONDS.toMillis(phaseNanos.values().stream()
+                .mapToLong(Long::longValue).sum())) + ","
+                + "\"input\":{" + field("items", inputItems) + "," + field("bytes", inputBytes) + ","
+                + field("itemsPerSecond", Math.round(getParseRate())) + ","
+                + field("bytesPerSecond", 0 == readingNanos ? 0
+                : Math.round(inputBytes * (double) TimeUnit.SECONDS.toNanos(1) / readingNanos)) + "},"
+                + "\"runs\":{" + field("count", runs) + "," + field("minItems", minRunItems) + ","
+                + field("maxItems", maxRunItems) + "," + field("averageItems", 0 == runs ? 0 : runItems / runs)
+                + "},"
+                + "\"spill\":{" + field("bytesWritten", bytesWritten) + "," + field("bytesRead", bytesRead) + "},"
+                + "\"merge\":{" + field("fanIn", fanIn) + "," + field("passes", passes) + ","
+                + field("rewrittenBytes", rewrittenBytes) + ","
+                + field("stallMillis", TimeUnit.NANOSECONDS.toMillis(stallNanos)) + ","
+                + field("outputItems", outputItems) + "},"
+                + "\"gc\":{" + field("collections", getGcCount()) + "," + field("millis", getGcMillis()) + "},"
+                + field("heapHighWaterBytes", getHeapHighWater())
+                + "}";
+    }
+
+    private static String field(String name, long value) {
+        return "\"" + name + "\":" + value;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .filter(count -> count > 0)
+                .sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(millis -> millis > 0)
+                .sum();
+    }
+}
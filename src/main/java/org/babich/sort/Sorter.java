@@ -1,12 +1,33 @@
 package org.babich.sort;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * Non sorted stream split to k - sorted batches and persist them in external memory (hard disk).
@@ -14,63 +35,934 @@ import java.util.stream.IntStream;
  *
  * @author Vadim Babich
  */
-public class Sorter implements Consumer<Integer> {
+public class Sorter implements IntConsumer, Consumer<Integer> {
+
+    /**
+     * The ways of splitting the incoming data into sorted batches.
+     */
+    public enum RunStrategy {
+
+        /**
+         * batches of batchSize items sorted in memory.
+         */
+        BATCH,
+
+        /**
+         * the heap of batchSize items gives batches about twice as long on random data
+         * and the only batch on the sorted data, the batches are written by the caller thread.
+         */
+        REPLACEMENT_SELECTION
+    }
+
+    /**
+     * The ways of using the counting sort, which counts the occurrences of each value in the hash table
+     * instead of sorting and merging the batches. The table takes the memory of the batches,
+     * when it is full the counted values are written as a sorted batch and the sorting goes on by batches.
+     */
+    public enum Counting {
+
+        /**
+         * the incoming data is split into sorted batches.
+         */
+        OFF,
+
+        /**
+         * the counting goes on after the first {@link #SAMPLE_SIZE} items
+         * if each value of them occurs {@link #MIN_REPEATS} times on average.
+         */
+        AUTO,
+
+        /**
+         * the values are counted until the table is full.
+         */
+        ON;
+
+        static final int SAMPLE_SIZE = 1 << 16;
+        static final int MIN_REPEATS = 8;
+    }
+
+    /**
+     * the first batch grows up to the batchSize, so a sorter which gets only a few items stays small.
+     */
+    private static final int INITIAL_BATCH_CAPACITY = 1 << 13;
 
     private final int batchSize;
+    private final Merger.Strategy mergeStrategy;
+    private final int mergeThreads;
+    private final int maxFanIn;
+    private final int readBufferSize;
+    private final RunSorter.Algorithm runSorter;
+    private final ParticleFormat particleFormat;
+    private final boolean mappedReads;
+    private final boolean prefetch;
+    private final Duplicates duplicates;
+    private final Counting counting;
+
+    /**
+     * the occurrences of the counted values, {@code null} if the values are split into batches.
+     */
+    private IntHistogram histogram;
+
+    /**
+     * number of counted items after which the counting is checked, see {@link Counting#AUTO}.
+     */
+    private final long countingSample;
+    private final LongAdder prefetchStallNanos = new LongAdder();
     private int batchNumber;
     private int batchCount;
 
-    private final Map<Integer, ParticleWriter> particles = new HashMap<>();
+    private final Map<Integer, ParticleWriter> particles = new ConcurrentSkipListMap<>();
+
+    /**
+     * all particles written in external memory including the intermediate ones of the merge.
+     */
+    private final Queue<ParticleWriter> spilledParticles = new ConcurrentLinkedQueue<>();
 
     private int[] batch;
 
+    /**
+     * Full batches are sorted and written by the workers while the caller fills the next batch.
+     * The number of batches in memory is limited, the caller waits for a free batch when all of them are busy.
+     */
+    private final ExecutorService executor;
+    private final BlockingQueue<int[]> freeBatches;
+    private final int maxBatches;
+    private int allocatedBatches;
+    private final List<Future<?>> pendingBatches = new ArrayList<>();
+
+    /**
+     * Sorters are reused by the batches, each batch being sorted at the moment takes its own sorter with its buffer.
+     */
+    private final Queue<RunSorter> runSorters = new ConcurrentLinkedQueue<>();
+
+    private final ReplacementSelection replacementSelection;
+
+    /**
+     * writes sorted batches on the background thread, {@code null} if they are written by the sorting threads.
+     */
+    private final AsyncSpillWriter spillWriter;
+
+    private final SpillStorage spillStorage;
+    private final long expectedParticleBytes;
+
+    /**
+     * the last not full batch is merged from memory instead of writing it.
+     */
+    private final boolean inMemoryLastBatch;
+
+    /**
+     * records the written batches, {@code null} if the sorting is not checkpointed.
+     */
+    private final JobManifest manifest;
+
+    /**
+     * the batches recorded in the manifest are kept when the merging fails, see {@link JobManifest#complete()}.
+     */
+    private final Set<ParticleWriter> checkpointedParticles = ConcurrentHashMap.newKeySet();
+    private int resumedParticles;
+
+    /**
+     * gives the byte offset of the incoming item, the offset after each batch is recorded in the manifest.
+     */
+    private final LongSupplier inputOffset;
+    private final Map<Integer, Long> particleOffsets = new ConcurrentHashMap<>();
+
+    /**
+     * gets each written batch, the batches of the replacement selection are given when the next one is started.
+     */
+    private final SortListener listener;
+    private int replacementRunNumber;
+    private ParticleWriter replacementRun;
+
+    /**
+     * the sizes of the sorted batches taken when the sorting is finished, the merge may release the batches.
+     */
+    private long[] sortedParticleSizes;
+
+    /**
+     * the items greater than the value are not needed in the result, see {@link #prune(int)}.
+     */
+    private volatile int maxValue = Integer.MAX_VALUE;
+
+    /**
+     * number of the first items of the sorted order needed in the result, see {@link #pruneFirst(long)}.
+     */
+    private volatile long firstItems = Long.MAX_VALUE;
+    private volatile RankSamples rankSamples;
+    private final Map<Integer, Integer> particleMinimums = new ConcurrentHashMap<>();
+    private final LongAdder prunedParticles = new LongAdder();
+
+    /**
+     * The order of all accepted items, the batches of the sorted or reverse sorted data
+     * are neither sorted nor merged, they are read one after another.
+     */
+    private boolean ascending = true;
+    private boolean descending = true;
+    private boolean hasPrevious = false;
+    private int previous;
+
     Sorter(int batchSize) {
-        if (batchSize <= 0) {
+        this(newSorter().withBatchSize(batchSize));
+    }
+
+    private Sorter(SorterBuilder builder) {
+        if (builder.batchSize <= 0) {
             throw new IllegalArgumentException("batchSize must be greater than zero.");
         }
+        if (builder.sortThreads < 0) {
+            throw new IllegalArgumentException("sortThreads cannot be negative.");
+        }
+        if (builder.mergeThreads <= 0) {
+            throw new IllegalArgumentException("mergeThreads must be greater than zero.");
+        }
+        if (builder.maxFanIn < 2) {
+            throw new IllegalArgumentException("maxFanIn must be at least two.");
+        }
+        if (builder.readBufferSize <= 0) {
+            throw new IllegalArgumentException("readBufferSize must be greater than zero.");
+        }
+        if (Duplicates.COUNTS == builder.duplicates && builder.mergeThreads > 1) {
+            throw new IllegalArgumentException("The counts of duplicates cannot be merged by several mergeThreads.");
+        }
+        if (null != builder.manifest && (RunStrategy.BATCH != builder.runStrategy
+                || ParticleFormat.RAW != builder.particleFormat || Counting.OFF != builder.counting
+                || Duplicates.COUNTS == builder.duplicates || builder.asyncSpill)) {
+            throw new IllegalArgumentException("Only the batches of the RAW format written by the sorting threads" +
+                    " without counting can be checkpointed.");
+        }
 
-        this.batchSize = batchSize;
-        this.batch = new int[batchSize];
-
+        this.batchSize = builder.batchSize;
+        this.mergeStrategy = builder.mergeStrategy;
+        this.mergeThreads = builder.mergeThreads;
+        this.maxFanIn = builder.maxFanIn;
+        this.readBufferSize = builder.readBufferSize;
+        this.runSorter = builder.runSorter;
+        this.particleFormat = builder.particleFormat;
+        this.mappedReads = builder.mappedReads;
+        this.prefetch = builder.prefetch;
+        this.duplicates = builder.duplicates;
+        this.counting = builder.counting;
+        this.histogram = Counting.OFF == counting ? null : new IntHistogram(IntHistogram
+                .maxKeys((builder.sortThreads + 1L) * batchSize * Integer.BYTES));
+        this.countingSample = Counting.AUTO == counting ? Math.min(batchSize, Counting.SAMPLE_SIZE) : -1;
         this.batchNumber = 0;
         this.batchCount = 0;
+        this.inMemoryLastBatch = builder.inMemoryLastBatch;
+        this.manifest = builder.manifest;
+        this.inputOffset = builder.inputOffset;
+        this.listener = null != builder.listener ? builder.listener : new SortListener() {
+        };
+        this.spillStorage = null != builder.spillStorage ? builder.spillStorage : SpillStorage.ofTempDirectory();
+        this.expectedParticleBytes = (RunStrategy.REPLACEMENT_SELECTION == builder.runStrategy ? 2L : 1L)
+                * batchSize * Integer.BYTES;
+        this.spillWriter = builder.asyncSpill ? new AsyncSpillWriter(AsyncSpillWriter.DEFAULT_BUFFER_SIZE
+                , Math.max(AsyncSpillWriter.DEFAULT_BUFFERS, builder.sortThreads + 2), builder.forceSpill) : null;
+
+        if (RunStrategy.REPLACEMENT_SELECTION == builder.runStrategy) {
+            this.replacementSelection = new ReplacementSelection(batchSize, this::createSortedParticle);
+            this.ascending = false;
+            this.descending = false;
+            this.batch = new int[0];
+            this.maxBatches = 0;
+            this.freeBatches = new ArrayBlockingQueue<>(1);
+            this.executor = null;
+            return;
+        }
+
+        this.replacementSelection = null;
+        if (null != manifest) {
+            resume();
+        }
+        this.batch = new int[Math.min(batchSize, INITIAL_BATCH_CAPACITY)];
+        this.maxBatches = builder.sortThreads + 1;
+        this.allocatedBatches = 1;
+        this.freeBatches = new ArrayBlockingQueue<>(maxBatches);
+        this.executor = 0 == builder.sortThreads ? null : Executors.newFixedThreadPool(builder.sortThreads
+                , new ThreadFactoryBuilder().setNameFormat("sorter-%d").setDaemon(true).build());
     }
 
+    /**
+     * The batches recorded in the manifest go first, the incoming data goes on after their items.
+     */
+    private void resume() {
+        for (JobManifest.Run run : manifest.getRuns()) {
+            ParticleWriter particle = ParticleWriter.FileBackedParticleWriter.newParticleWriter()
+                    .withFile(run.getFile().toFile())
+                    .withWrittenSize(run.getSize())
+                    .withReadBufferSize(readBufferSize)
+                    .withMappedReads(mappedReads)
+                    .build();
+            particles.put(batchNumber++, particle);
+            spilledParticles.add(particle);
+            checkpointedParticles.add(particle);
+        }
+        resumedParticles = batchNumber;
+        if (batchNumber > 0) {
+            ascending = false;
+            descending = false;
+        }
+    }
+
+    /**
+     * Boxing adapter for the {@link #accept(int)}.
+     */
     @Override
     public void accept(Integer value) {
-        if (batchCount == batchSize) {
-            sort(batch);
+        accept(value.intValue());
+    }
+
+    @Override
+    public void accept(int value) {
+        if (ascending || descending) {
+            trackOrder(value);
+        }
+        if (null != histogram && count(value)) {
+            return;
+        }
+        if (null != replacementSelection) {
+            replacementSelection.accept(value);
+            return;
+        }
+        if (batchCount == batch.length) {
+            nextBatch();
         }
         batch[batchCount++] = value;
     }
 
+    /**
+     * Accepts the items in bulk, they are copied into the batch at once.
+     */
+    public void accept(int[] items, int from, int to) {
+        if (null != histogram || null != replacementSelection) {
+            for (int i = from; i < to; i++) {
+                accept(items[i]);
+            }
+            return;
+        }
+        for (int i = from; i < to; ) {
+            if (batchCount == batch.length) {
+                nextBatch();
+            }
+            int length = Math.min(to - i, batch.length - batchCount);
+            for (int j = i; j < i + length && (ascending || descending); j++) {
+                trackOrder(items[j]);
+            }
+            System.arraycopy(items, i, batch, batchCount, length);
+            batchCount += length;
+            i += length;
+        }
+    }
+
+    /**
+     * @return false if the value is not counted, the counting is over.
+     */
+    private boolean count(int value) {
+        if (!histogram.add(value)) {
+            spillHistogram();
+            return false;
+        }
+        if (countingSample == histogram.total() && histogram.size() * Counting.MIN_REPEATS > countingSample) {
+            spillHistogram();
+        }
+        return true;
+    }
+
+    /**
+     * The counted values are written as the sorted batch, the rest of the items are split into batches.
+     */
+    private void spillHistogram() {
+        IntHistogram counted = histogram;
+        histogram = null;
+        int number = batchNumber++;
+        ParticleWriter particleWriter = spill(number, false);
+        counted.forEachSorted((value, count) -> {
+            for (long i = 0; i < count; i++) {
+                particleWriter.writeInt(value);
+            }
+        });
+        particleWriter.close();
+        particles.put(number, particleWriter);
+        listener.onRunWritten(number, counted.total(), particleWriter.bytesWritten());
+    }
+
+    private void trackOrder(int value) {
+        if (hasPrevious) {
+            ascending &= previous <= value;
+            descending &= previous >= value;
+        }
+        previous = value;
+        hasPrevious = true;
+    }
+
     public Merger finish() {
-        sort(batch);
-        return createMerger();
+        try {
+            if (null != histogram && !particles.isEmpty()) {
+                spillHistogram();
+            }
+            if (null != replacementSelection) {
+                replacementSelection.finish();
+                completeReplacementRun();
+            }
+            awaitPendingBatches();
+            if (batchCount > 0 && (inMemoryLastBatch || particles.isEmpty())) {
+                keepLastBatch();
+            } else if (batchCount > 0 && null == executor) {
+                takeInputOffset();
+                sort(batch, batchCount, batchNumber++, ascending, descending);
+            } else if (batchCount > 0) {
+                takeInputOffset();
+                submitBatch();
+            }
+            awaitPendingBatches();
+            awaitSpilledBatches();
+        } catch (RuntimeException e) {
+            deleteSpilledParticles();
+            throw e;
+        } finally {
+            release();
+        }
+        sortedParticleSizes = getSortedParticleSizes();
+        Merger merger = null != histogram ? new Merger.CountingMerger(histogram) : createMerger();
+        if (Duplicates.KEEP != duplicates) {
+            merger = new Merger.CollapsingMerger(merger, duplicates);
+        }
+        return new Merger.OnCompletionMerger(merger, this::deleteSpilledParticles);
+    }
+
+    /**
+     * Only the items less than or equal to the value are needed in the result, like the first items
+     * of the sorted order. The greater items are cut off the batches sorted from now on, the batches
+     * which start after the value are not merged, and the merged batches are read up to the value.
+     * The value is expected to go down only, the greater one is ignored.
+     * @throws IllegalStateException if the batches are checkpointed.
+     */
+    public synchronized void prune(int maxValue) {
+        if (null != manifest) {
+            throw new IllegalStateException("The checkpointed batches cannot be pruned.");
+        }
+        if (maxValue < this.maxValue) {
+            this.maxValue = maxValue;
+        }
+    }
+
+    /**
+     * Only the first items of the sorted order are needed in the result. The samples of the sorted batches
+     * give the value which that many items do not exceed and the batches are pruned by it, see {@link #prune(int)}
+     * and {@link RankSamples}. If the duplicates are collapsed only the distinct items are counted, and only
+     * the batch holding that many distinct items prunes the batches by the last of them.
+     * @throws IllegalStateException if the batches are checkpointed.
+     */
+    public void pruneFirst(long items) {
+        if (null != manifest) {
+            throw new IllegalStateException("The checkpointed batches cannot be pruned.");
+        }
+        if (items <= 0) {
+            throw new IllegalArgumentException("items must be greater than zero.");
+        }
+        firstItems = items;
+        rankSamples = Duplicates.KEEP == duplicates ? new RankSamples(items) : null;
+    }
+
+    /**
+     * @return the value which the items of the result do not exceed, see {@link #prune(int)}.
+     */
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return number of batches which are not written or not merged as they start after the maximum value.
+     */
+    public long getPrunedParticlesCount() {
+        return prunedParticles.sum();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getSortThreads() {
+        return null == executor ? 0 : maxBatches - 1;
+    }
+
+    public int getMaxFanIn() {
+        return maxFanIn;
+    }
+
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    public RunSorter.Algorithm getRunSorter() {
+        return runSorter;
+    }
+
+    public ParticleFormat getParticleFormat() {
+        return particleFormat;
+    }
+
+    public Duplicates getDuplicates() {
+        return duplicates;
+    }
+
+    public Counting getCounting() {
+        return counting;
+    }
+
+    /**
+     * @return true if all items are counted by the counting sort, there are no batches.
+     */
+    public boolean isCounted() {
+        return null != histogram;
+    }
+
+    /**
+     * @return number of distinct values counted by the counting sort, zero if the sorting has gone on by batches.
+     */
+    public int getCountedValues() {
+        return null == histogram ? 0 : histogram.size();
+    }
+
+    /**
+     * @return number of bytes of all particles written in external memory.
+     */
+    public long getBytesWritten() {
+        return spilledParticles.stream().mapToLong(ParticleWriter::bytesWritten).sum();
+    }
+
+    /**
+     * @return number of bytes read from external memory by the closed readers of all particles.
+     */
+    public long getBytesRead() {
+        return spilledParticles.stream().mapToLong(ParticleWriter::bytesRead).sum();
+    }
+
+    /**
+     * @return nanoseconds the completed merges waited for the batches read in advance.
+     */
+    public long getPrefetchStallNanos() {
+        return prefetchStallNanos.sum();
+    }
+
+    public SpillStorage getSpillStorage() {
+        return spillStorage;
+    }
+
+    /**
+     * @return true if all accepted items are sorted in either order, so the batches are read without merging.
+     */
+    public boolean isInputSorted() {
+        return ascending || descending;
+    }
+
+    /**
+     * @return number of sorted batches taken from the manifest instead of sorting their items again.
+     */
+    public int getResumedParticlesCount() {
+        return resumedParticles;
+    }
+
+    /**
+     * @return numbers of items of the sorted batches in their order, including the last batch kept in memory.
+     */
+    public long[] getSortedParticleSizes() {
+        if (null != sortedParticleSizes) {
+            return sortedParticleSizes.clone();
+        }
+        return particles.values().stream().mapToLong(ParticleWriter::size).toArray();
+    }
+
+    /**
+     * @return number of sorted batches written in external memory.
+     */
+    public int getSortedParticlesCount() {
+        return particles.size();
+    }
+
+    /**
+     * Moves sorted batches and not sorted items of other sorter into this one.
+     */
+    Sorter combine(Sorter other) {
+        try {
+            if (null != other.histogram) {
+                other.spillHistogram();
+            }
+            if (null != other.replacementSelection) {
+                other.replacementSelection.finish();
+            }
+            other.awaitPendingBatches();
+            other.awaitSpilledBatches();
+            ascending = false;
+            descending = false;
+            other.particles.values().forEach(particle -> particles.put(batchNumber++, particle));
+            spilledParticles.addAll(other.spilledParticles);
+            for (int i = 0; i < other.batchCount; i++) {
+                accept(other.batch[i]);
+            }
+        } finally {
+            other.release();
+        }
+        return this;
     }
 
     private Merger createMerger() {
-        return new Merger.MultiWayMerger(particles.values().stream()
-                .map(ParticleWriter::asParticleReader)
+        List<ParticleWriter> sortedParticles = new ArrayList<>();
+        particles.forEach((number, particle) -> {
+            Integer min = particleMinimums.get(number);
+            if (null != min && min > maxValue) {
+                prunedParticles.increment();
+                return;
+            }
+            sortedParticles.add(particle);
+        });
+        if (isInputSorted()) {
+            if (!ascending) {
+                Collections.reverse(sortedParticles);
+            }
+            return new Merger.ConcatenatingMerger(bounded(sortedParticles.stream()
+                    .map(this::mergedReaderOf)
+                    .collect(Collectors.toList())));
+        }
+        if (sortedParticles.size() > maxFanIn) {
+            return new Merger.CascadingMerger(sortedParticles, maxFanIn, this::createReadersMerger
+                    , () -> spill(batchNumber++, false), this::createLastMerger, this::deleteMergedParticle);
+        }
+        return createLastMerger(sortedParticles);
+    }
+
+    private Merger createLastMerger(List<ParticleWriter> sortedParticles) {
+        if (mergeThreads > 1) {
+            return new Merger.PartitionedMerger(sortedParticles, mergeThreads, this::createReadersMerger
+                    , this::deleteMergedParticle);
+        }
+        return createReadersMerger(sortedParticles.stream()
+                .map(this::mergedReaderOf)
                 .collect(Collectors.toList()));
     }
 
-    private void sort(int[] batch) {
-        if (batchCount != batchSize) {
-            batch = Arrays.copyOfRange(batch, 0, batchCount);
+    /**
+     * @return the reader of the last merge which deletes the batch as soon as it is read to the end,
+     * the batches left by a failed merge are deleted on its completion, see {@link #deleteSpilledParticles()}.
+     */
+    private ParticleReader mergedReaderOf(ParticleWriter particle) {
+        return new ParticleReader.OnExhaustedParticleReader(particle.asParticleReader()
+                , () -> deleteMergedParticle(particle));
+    }
+
+    private void deleteMergedParticle(ParticleWriter particle) {
+        if (!checkpointedParticles.contains(particle)) {
+            spilledParticles.remove(particle);
+            particle.delete();
+        }
+    }
+
+    private Merger createReadersMerger(List<ParticleReader> sortedReaders) {
+        List<ParticleReader> readers = bounded(sortedReaders);
+        if (!prefetch) {
+            return mergeStrategy.create(readers);
+        }
+        return new Merger.PrefetchingMerger(readers, mergeStrategy, readBufferSize / Integer.BYTES
+                , Prefetcher.DEFAULT_DEPTH, stallNanos -> Arrays.stream(stallNanos).forEach(prefetchStallNanos::add));
+    }
+
+    /**
+     * @return the readers stopping before the items greater than the maximum value, see {@link #prune(int)}.
+     */
+    private List<ParticleReader> bounded(List<ParticleReader> readers) {
+        int bound = maxValue;
+        if (Integer.MAX_VALUE == bound) {
+            return readers;
+        }
+        return readers.stream()
+                .map(reader -> new ParticleReader.BoundedParticleReader(reader, bound))
+                .collect(Collectors.toList());
+    }
+
+    private void nextBatch() {
+        if (batch.length < batchSize) {
+            batch = Arrays.copyOf(batch, (int) Math.min(batchSize, 2L * batch.length));
+            return;
+        }
+
+        takeInputOffset();
+        if (null == executor) {
+            sort(batch, batchCount, batchNumber++, ascending, descending);
+            batchCount = 0;
+            return;
+        }
+
+        checkCompletedBatches();
+        submitBatch();
+
+        batch = acquireBatch();
+        batchCount = 0;
+    }
+
+    /**
+     * The batch is cut on the arrival of the next item or at the end of the incoming data,
+     * so the offset of the incoming item is the offset after the batch.
+     */
+    private void takeInputOffset() {
+        if (null != manifest && null != inputOffset) {
+            particleOffsets.put(batchNumber, inputOffset.getAsLong());
+        }
+    }
+
+    private void submitBatch() {
+        int[] fullBatch = batch;
+        int count = batchCount;
+        int number = batchNumber++;
+        boolean ascendingBatch = ascending;
+        boolean descendingBatch = descending;
+        pendingBatches.add(executor.submit(() -> {
+            try {
+                sort(fullBatch, count, number, ascendingBatch, descendingBatch);
+            } finally {
+                freeBatches.add(fullBatch);
+            }
+        }));
+    }
+
+    private int[] acquireBatch() {
+        int[] freeBatch = freeBatches.poll();
+        if (null != freeBatch) {
+            return freeBatch;
+        }
+        if (allocatedBatches < maxBatches) {
+            allocatedBatches++;
+            return new int[batchSize];
+        }
+        try {
+            return freeBatches.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free batch.", e);
         }
-        Arrays.sort(batch);
+    }
 
-        ParticleWriter particleWriter = particles.computeIfAbsent(batchNumber++, this::createParticleWriter);
+    /**
+     * Fails fast if one of the workers has failed.
+     */
+    private void checkCompletedBatches() {
+        for (Iterator<Future<?>> iterator = pendingBatches.iterator(); iterator.hasNext(); ) {
+            Future<?> pendingBatch = iterator.next();
+            if (pendingBatch.isDone()) {
+                getResultOf(pendingBatch);
+                iterator.remove();
+            }
+        }
+    }
 
-        IntStream.of(batch).forEach(particleWriter::writeInt);
+    private void awaitPendingBatches() {
+        try {
+            pendingBatches.forEach(this::getResultOf);
+        } finally {
+            pendingBatches.clear();
+        }
+    }
+
+    private void getResultOf(Future<?> pendingBatch) {
+        try {
+            pendingBatch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sorting batches.", e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Cannot sort a batch.", e.getCause());
+        }
+    }
 
-        this.batch = new int[batchSize];
+    /**
+     * The files of the sorted batches are deleted when the merging is completed or has failed,
+     * the files which cannot be deleted are left for the {@link SpillStorage#close()}.
+     */
+    private void deleteSpilledParticles() {
+        for (ParticleWriter particle : spilledParticles) {
+            if (checkpointedParticles.contains(particle)) {
+                continue;
+            }
+            try {
+                particle.delete();
+            } catch (UncheckedIOException ignore) {
+            }
+        }
+    }
+
+    private void awaitSpilledBatches() {
+        if (null != spillWriter) {
+            spillWriter.awaitWritten();
+        }
+    }
+
+    private void release() {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+        if (null != spillWriter) {
+            spillWriter.close();
+        }
+        freeBatches.clear();
+        runSorters.clear();
+        batch = new int[0];
         batchCount = 0;
     }
 
-    protected ParticleWriter createParticleWriter(int key){
-        return ParticleWriter.FileBackedParticleWriter.newParticleWriter().build();
+    /**
+     * @param ascending - all items accepted up to the end of the batch are sorted.
+     * @param descending - all items accepted up to the end of the batch are reverse sorted.
+     */
+    private void sort(int[] batch, int count, int number, boolean ascending, boolean descending) {
+        sortInMemory(batch, count, ascending, descending);
+        pruneByFirstItems(batch, count);
+        int bound = maxValue;
+        if (Integer.MAX_VALUE != bound) {
+            count = upperBound(batch, count, bound);
+            if (0 == count) {
+                prunedParticles.increment();
+                return;
+            }
+            particleMinimums.put(number, batch[0]);
+        }
+
+        File file = null != manifest ? spillStorage.newFile(expectedParticleBytes) : null;
+        CRC32 checksum = new CRC32();
+        if (null != file) {
+            manifest.addPendingRun(number, file.toPath());
+        }
+        ParticleWriter particleWriter = null != file ? spill(file, checksum) : spill(number, true);
+        for (int i = 0; i < count; i++) {
+            particleWriter.writeInt(batch[i]);
+        }
+        particleWriter.close();
+
+        if (null != file) {
+            manifest.addRun(number, file.toPath(), count, particleWriter.size(), batch[0], batch[count - 1]
+                    , checksum.getValue(), particleOffsets.getOrDefault(number, -1L));
+            checkpointedParticles.add(particleWriter);
+            spillStorage.release(file);
+        }
+        particles.put(number, particleWriter);
+        listener.onRunWritten(number, count, particleWriter.bytesWritten());
+    }
+
+    private void pruneByFirstItems(int[] sorted, int count) {
+        RankSamples samples = rankSamples;
+        if (null != samples) {
+            prune(samples.add(sorted, count));
+            return;
+        }
+        long items = firstItems;
+        if (items > count) {
+            return;
+        }
+        for (int i = 0, distinct = 0; i < count; i++) {
+            if ((0 == i || sorted[i] != sorted[i - 1]) && ++distinct == items) {
+                prune(sorted[i]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of the sorted items less than or equal to the value.
+     */
+    private static int upperBound(int[] sorted, int count, int value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void sortInMemory(int[] batch, int count, boolean ascending, boolean descending) {
+        if (ascending) {
+            return;
+        }
+        if (descending) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int item = batch[i];
+                batch[i] = batch[j];
+                batch[j] = item;
+            }
+            return;
+        }
+        RunSorter sorter = runSorters.poll();
+        if (null == sorter) {
+            sorter = runSorter.create();
+        }
+        sorter.sort(batch, 0, count);
+        runSorters.add(sorter);
+    }
+
+    /**
+     * The last batch is sorted and merged from memory.
+     */
+    private void keepLastBatch() {
+        sortInMemory(batch, batchCount, ascending, descending);
+        particles.put(batchNumber++, new ParticleWriter.InMemoryParticleWriter(batch, batchCount));
+        batch = new int[0];
+        batchCount = 0;
+    }
+
+    private ParticleWriter createSortedParticle() {
+        completeReplacementRun();
+        int number = batchNumber++;
+        ParticleWriter particleWriter = spill(number, true);
+        particles.put(number, particleWriter);
+        replacementRunNumber = number;
+        replacementRun = particleWriter;
+        return particleWriter;
+    }
+
+    private void completeReplacementRun() {
+        if (null != replacementRun) {
+            listener.onRunWritten(replacementRunNumber, replacementRun.size(), replacementRun.bytesWritten());
+            replacementRun = null;
+        }
+    }
+
+    private ParticleWriter spill(int key, boolean asynchronous) {
+        ParticleWriter particleWriter = duplicates.collapse(createParticleWriter(key, asynchronous));
+        spilledParticles.add(particleWriter);
+        return particleWriter;
+    }
+
+    /**
+     * The checkpointed batch is written in the file by the sorting thread.
+     * @param checksum - updated by the written bytes of the batch.
+     */
+    private ParticleWriter spill(File file, CRC32 checksum) {
+        OutputStream outputStream;
+        try {
+            outputStream = new BufferedOutputStream(new CheckedOutputStream(new FileOutputStream(file), checksum));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ParticleWriter particleWriter = duplicates.collapse(particleFormat
+                .createWriter(file, outputStream, readBufferSize, mappedReads));
+        spilledParticles.add(particleWriter);
+        return particleWriter;
+    }
+
+    /**
+     * @param asynchronous - the particle may be written by the background thread, it is read only after
+     *                     the sorting is finished. The intermediate particles of the merge are read at once.
+     */
+    protected ParticleWriter createParticleWriter(int key, boolean asynchronous) {
+        try {
+            File file = spillStorage.newFile(expectedParticleBytes);
+            OutputStream outputStream = asynchronous && null != spillWriter ? spillWriter.open(file) : null;
+            return particleFormat.createWriter(file, outputStream, readBufferSize, mappedReads);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -79,11 +971,295 @@ public class Sorter implements Consumer<Integer> {
      * @return
      */
     public static Collector<Integer, Sorter, Merger> getSortedParticleCollector(int particleSize) {
-        return Collector.of(() -> new Sorter(particleSize)
-                , Sorter::accept
-                , (l, r) -> l
-                , Sorter::finish
-                , Collector.Characteristics.UNORDERED);
+        return newSorter().withBatchSize(particleSize).collector();
+    }
+
+    /**
+     * Sorts the primitive data stream without boxing the elements.
+     * @param particleSize - the maximum size of a batch of items that can be sorted in memory.
+     * @return
+     */
+    public static Merger collectSortedParticles(IntStream stream, int particleSize) {
+        return newSorter().withBatchSize(particleSize).collect(stream);
+    }
+
+    public static SorterBuilder newSorter() {
+        return new SorterBuilder();
+    }
+
+    public static class SorterBuilder {
+
+        private int batchSize = -1;
+        private int sortThreads = 0;
+        private RunStrategy runStrategy = RunStrategy.BATCH;
+        private Merger.Strategy mergeStrategy = Merger.Strategy.LOSER_TREE;
+        private int mergeThreads = 1;
+        private int maxFanIn = 64;
+        private int readBufferSize = ParticleReader.DEFAULT_BLOCK_SIZE;
+        private MemoryBudget memoryBudget;
+        private RunSorter.Algorithm runSorter = RunSorter.Algorithm.AUTO;
+        private ParticleFormat particleFormat = ParticleFormat.RAW;
+        private boolean mappedReads = false;
+        private boolean prefetch = false;
+        private boolean asyncSpill = false;
+        private boolean forceSpill = false;
+        private SpillStorage spillStorage;
+        private boolean inMemoryLastBatch = true;
+        private Duplicates duplicates = Duplicates.KEEP;
+        private Counting counting = Counting.OFF;
+        private JobManifest manifest;
+        private LongSupplier inputOffset;
+        private SortListener listener;
+
+        public SorterBuilder withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param sortThreads - the number of threads sorting and writing full batches while the next batch is filled,
+         *                    each thread keeps one more batch in memory, zero means sorting on the caller thread.
+         */
+        public SorterBuilder withSortThreads(int sortThreads) {
+            this.sortThreads = sortThreads;
+            return this;
+        }
+
+        public SorterBuilder withRunStrategy(RunStrategy runStrategy) {
+            this.runStrategy = runStrategy;
+            return this;
+        }
+
+        public SorterBuilder withMergeStrategy(Merger.Strategy mergeStrategy) {
+            this.mergeStrategy = mergeStrategy;
+            return this;
+        }
+
+        /**
+         * @param mergeThreads - the number of disjoint key ranges of the batches merged in parallel,
+         *                     one means the single merger.
+         */
+        public SorterBuilder withMergeThreads(int mergeThreads) {
+            this.mergeThreads = mergeThreads;
+            return this;
+        }
+
+        /**
+         * @param maxFanIn - the maximum number of batches merged at once, the rest of batches are merged
+         *                 in intermediate passes.
+         */
+        public SorterBuilder withMaxFanIn(int maxFanIn) {
+            this.maxFanIn = maxFanIn;
+            return this;
+        }
+
+        /**
+         * @param readBufferSize - bytes of the read buffer of each merged batch.
+         */
+        public SorterBuilder withReadBufferSize(int readBufferSize) {
+            this.readBufferSize = readBufferSize;
+            return this;
+        }
+
+        /**
+         * @param runSorter - the sorting of batches in memory, {@link RunSorter.Algorithm#AUTO} chooses it
+         *                  by the batch size, the number of cores and the memory left for the buffers of the sorting.
+         */
+        public SorterBuilder withRunSorter(RunSorter.Algorithm runSorter) {
+            this.runSorter = runSorter;
+            return this;
+        }
+
+        /**
+         * @param particleFormat - the format of sorted batches in external memory.
+         */
+        public SorterBuilder withParticleFormat(ParticleFormat particleFormat) {
+            this.particleFormat = particleFormat;
+            return this;
+        }
+
+        /**
+         * @param mappedReads - sorted batches are read by memory-mapped blocks instead of direct buffers.
+         */
+        public SorterBuilder withMappedReads(boolean mappedReads) {
+            this.mappedReads = mappedReads;
+            return this;
+        }
+
+        /**
+         * @param prefetch - merged batches are read in advance by a background thread, each batch keeps
+         *                 {@link Prefetcher#DEFAULT_DEPTH} more blocks of the read buffer size in memory.
+         */
+        public SorterBuilder withPrefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * @param asyncSpill - sorted batches are written by a background thread through
+         *                   a limited number of buffers while the next batch is sorted.
+         */
+        public SorterBuilder withAsyncSpill(boolean asyncSpill) {
+            this.asyncSpill = asyncSpill;
+            return this;
+        }
+
+        /**
+         * @param forceSpill - each batch written by the background thread is forced to the storage device.
+         */
+        public SorterBuilder withForceSpill(boolean forceSpill) {
+            this.forceSpill = forceSpill;
+            return this;
+        }
+
+        /**
+         * @param spillStorage - the directories of the files of the sorted batches, by default the temporary directory.
+         */
+        public SorterBuilder withSpillStorage(SpillStorage spillStorage) {
+            this.spillStorage = spillStorage;
+            return this;
+        }
+
+        /**
+         * @param inMemoryLastBatch - the last not full batch is merged from memory instead of writing it,
+         *                          it is kept in memory along with the read buffers of the merge.
+         *                          The only batch is always kept in memory.
+         */
+        public SorterBuilder withInMemoryLastBatch(boolean inMemoryLastBatch) {
+            this.inMemoryLastBatch = inMemoryLastBatch;
+            return this;
+        }
+
+        /**
+         * @param duplicates - the repeated values are collapsed in the written batches and in the result of the merge,
+         *                   {@link Duplicates#COUNTS} can be merged only by the single merger.
+         */
+        public SorterBuilder withDuplicates(Duplicates duplicates) {
+            this.duplicates = duplicates;
+            return this;
+        }
+
+        /**
+         * @param counting - the counting sort is used while the occurrences of the values fit
+         *                 in the memory of the batches.
+         */
+        public SorterBuilder withCounting(Counting counting) {
+            this.counting = counting;
+            return this;
+        }
+
+        /**
+         * @param manifest - each written batch is recorded in the manifest and the batches recorded before
+         *                 are merged along with the new ones, the caller skips the items consumed by them,
+         *                 see {@link JobManifest#getConsumedItems()}. The recorded batches are kept when
+         *                 the merging fails, they are deleted by {@link JobManifest#complete()}.
+         */
+        public SorterBuilder withManifest(JobManifest manifest) {
+            this.manifest = manifest;
+            return this;
+        }
+
+        /**
+         * @param inputOffset - gives the byte offset of the incoming item, the offset after each batch is recorded
+         *                    in the manifest, so the caller seeks it instead of skipping the consumed items,
+         *                    see {@link IntInput#itemOffset()} and {@link JobManifest#getConsumedOffset()}.
+         */
+        public SorterBuilder withInputOffset(LongSupplier inputOffset) {
+            this.inputOffset = inputOffset;
+            return this;
+        }
+
+        /**
+         * @param listener - gets each sorted batch written in external memory, it is called by the sorting threads,
+         *                 see {@link SortMetrics}.
+         */
+        public SorterBuilder withListener(SortListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * The batch size, the number of sorting threads, the maximum fan-in and the read buffers of the merged batches
+         * are worked out from the budget, so the sorted batches in memory and the read buffers of the merge
+         * do not exceed it.
+         */
+        public SorterBuilder withMemoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public Sorter build() {
+            if (null != memoryBudget) {
+                applyMemoryBudget();
+            }
+            if (-1 == batchSize) {
+                throw new IllegalArgumentException("batchSize must be initialized.");
+            }
+            if (null == mergeStrategy) {
+                throw new IllegalArgumentException("mergeStrategy must be initialized.");
+            }
+            if (null == runStrategy) {
+                throw new IllegalArgumentException("runStrategy must be initialized.");
+            }
+            if (null == particleFormat) {
+                throw new IllegalArgumentException("particleFormat must be initialized.");
+            }
+            if (null == runSorter) {
+                throw new IllegalArgumentException("runSorter must be initialized.");
+            }
+            if (null == duplicates) {
+                throw new IllegalArgumentException("duplicates must be initialized.");
+            }
+            if (null == counting) {
+                throw new IllegalArgumentException("counting must be initialized.");
+            }
+            runSorter = runSorter.resolve(batchSize, sortThreads, sortingHeadroom());
+            return new Sorter(this);
+        }
+
+        private void applyMemoryBudget() {
+            sortThreads = RunStrategy.BATCH == runStrategy
+                    ? memoryBudget.sortThreads(Runtime.getRuntime().availableProcessors())
+                    : 0;
+            runSorter = runSorter.resolve(memoryBudget.batchSize(sortThreads
+                    , RunSorter.Algorithm.RADIX.extraBytesPerItem()), sortThreads, Long.MAX_VALUE);
+            batchSize = memoryBudget.batchSize(sortThreads, runSorter.extraBytesPerItem());
+            inMemoryLastBatch = false;
+            maxFanIn = memoryBudget.maxFanIn(mergeThreads);
+            readBufferSize = memoryBudget.readBufferSize(mergeThreads, maxFanIn);
+            if (prefetch) {
+                readBufferSize /= Prefetcher.DEFAULT_DEPTH + 2;
+            }
+        }
+
+        /**
+         * @return bytes of the share of the maximum heap size left after the batches.
+         */
+        private long sortingHeadroom() {
+            long batchesBytes = (sortThreads + 1L) * batchSize * Integer.BYTES;
+            return (long) (Runtime.getRuntime().maxMemory() * MemoryBudget.AUTO_HEAP_SHARE) - batchesBytes;
+        }
+
+        /**
+         * Using as collector for the non sorted data stream.
+         */
+        public Collector<Integer, Sorter, Merger> collector() {
+            return Collector.of(this::build
+                    , Sorter::accept
+                    , Sorter::combine
+                    , Sorter::finish
+                    , Collector.Characteristics.UNORDERED);
+        }
+
+        /**
+         * Using as collector for the non sorted primitive data stream.
+         */
+        public Merger collect(IntStream stream) {
+            return stream.collect(this::build
+                    , Sorter::accept
+                    , Sorter::combine)
+                    .finish();
+        }
     }
 
 }
@@ -0,0 +1,111 @@
+package org.babich.sort;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Directories of the files of sorted batches.
+ * The files are created in the directories one after another, so the batches are striped across the disks.
+ * A directory is skipped when it has not enough free space for the next batch.
+ * The sorter deletes its batches when they are merged, the rest of the files are deleted by {@link #close()}.
+ */
+public class SpillStorage implements Closeable {
+
+    static final String FILE_PREFIX = "sorter";
+
+    private final List<Path> directories;
+    private final AtomicInteger nextDirectory = new AtomicInteger();
+    private final Set<Path> files = ConcurrentHashMap.newKeySet();
+
+    private SpillStorage(List<Path> directories) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("At least one spill directory must be given.");
+        }
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory) || !Files.isWritable(directory)) {
+                throw new IllegalArgumentException(String
+                        .format("Invalid spill directory {%s}, it must be a writable directory.", directory));
+            }
+        }
+        this.directories = Collections.unmodifiableList(new ArrayList<>(directories));
+    }
+
+    public static SpillStorage of(List<Path> directories) {
+        return new SpillStorage(directories);
+    }
+
+    /**
+     * @return storage in the default temporary directory.
+     */
+    public static SpillStorage ofTempDirectory() {
+        return new SpillStorage(Collections.singletonList(Paths.get(System.getProperty("java.io.tmpdir"))));
+    }
+
+    public List<Path> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Creates the file in the next directory having the free space.
+     * @param expectedBytes - expected size of the file.
+     * @throws UncheckedIOException if none of the directories has enough free space.
+     */
+    public File newFile(long expectedBytes) {
+        int first = Math.floorMod(nextDirectory.getAndIncrement(), directories.size());
+        try {
+            for (int i = 0; i < directories.size(); i++) {
+                Path directory = directories.get((first + i) % directories.size());
+                if (Files.getFileStore(directory).getUsableSpace() < expectedBytes) {
+                    continue;
+                }
+                Path file = Files.createTempFile(directory, FILE_PREFIX, "");
+                files.add(file);
+                return file.toFile();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        throw new UncheckedIOException(new IOException(String
+                .format("Not enough free space for %d bytes in spill directories %s.", expectedBytes, directories)));
+    }
+
+    /**
+     * The file is kept by {@link #close()}, like the checkpointed batch of the {@link JobManifest}.
+     */
+    public void release(File file) {
+        files.remove(file.toPath());
+    }
+
+    /**
+     * @return number of created files which are not deleted yet.
+     */
+    public int getFilesCount() {
+        files.removeIf(file -> !Files.exists(file));
+        return files.size();
+    }
+
+    /**
+     * Deletes all created files.
+     */
+    @Override
+    public void close() {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignore) {
+            }
+            files.remove(file);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.babich.sort;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps only the first items of the sorted order, the page of {@code limit} items after {@code offset} items.
+ * When the items of the page and before it fit in the batch of the {@link Sorter}, they are kept by the bounded
+ * max-heap and nothing is written in external memory. Otherwise the items go on to the sorter, and the counts
+ * of the items by the upper 16 bits, then by the lower 16 bits within the highest needed bucket, give the value
+ * which at least {@code offset + limit} items do not exceed. The greater items are dropped and the sorter prunes
+ * its batches by the value, see {@link Sorter#prune(int)}. The items are counted only if the duplicates are kept,
+ * the sorter also lowers the value by each sorted batch holding enough items, see {@link Sorter#pruneFirst(long)}.
+ * The merging stops as soon as the page is put.
+ * The greatest items are kept by inverting each item by {@code ~item} before the sorting and after the merging,
+ * so the page of them comes in descending order.
+ */
+public class TopSorter implements IntConsumer {
+
+    private static final int BUCKETS = 1 << 16;
+
+    private final Sorter sorter;
+    private final long offset;
+    private final long limit;
+    private final boolean largest;
+
+    /**
+     * number of items of the page and before it.
+     */
+    private final long items;
+
+    /**
+     * the max-heap of the smallest items, {@code null} if the items go on to the sorter.
+     */
+    private int[] heap;
+    private int heapSize;
+
+    /**
+     * the counts of the items less than or equal to the maximum value by their upper 16 bits,
+     * {@code null} if the items are not counted.
+     */
+    private final long[] buckets;
+    private int maxBucket = BUCKETS - 1;
+    private long countedItems;
+
+    /**
+     * the counts of the items of the highest bucket by their lower 16 bits, the items of the bucket are counted
+     * from the time it has become the highest one.
+     */
+    private final long[] lowBuckets;
+    private int maxLowBucket = BUCKETS - 1;
+    private long lowCountedItems;
+
+    private int maxValue = Integer.MAX_VALUE;
+    private long droppedItems;
+
+    private TopSorter(Sorter sorter, long offset, long limit, boolean largest) {
+        this.sorter = sorter;
+        this.offset = offset;
+        this.limit = limit;
+        this.largest = largest;
+        this.items = offset + limit;
+        boolean keep = Duplicates.KEEP == sorter.getDuplicates();
+        this.heap = keep && items <= sorter.getBatchSize() ? new int[(int) Math.min(items, 1 << 13)] : null;
+        this.buckets = keep && null == heap ? new long[BUCKETS] : null;
+        this.lowBuckets = null != buckets ? new long[BUCKETS] : null;
+        if (null == heap) {
+            sorter.pruneFirst(items);
+        }
+    }
+
+    @Override
+    public void accept(int value) {
+        if (largest) {
+            value = ~value;
+        }
+        if (null != heap) {
+            offer(value);
+            return;
+        }
+        if (value > maxValue || value > sorter.getMaxValue()) {
+            droppedItems++;
+            return;
+        }
+        if (null != buckets) {
+            count(value);
+        }
+        sorter.accept(value);
+    }
+
+    private void offer(int value) {
+        if (heapSize < items) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, (int) Math.min(items, 2L * heap.length));
+            }
+            siftUp(heapSize++, value);
+        } else if (value < heap[0]) {
+            siftDown(value);
+        } else {
+            droppedItems++;
+        }
+    }
+
+    private void siftUp(int index, int value) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Replaces the greatest item by the value.
+     */
+    private void siftDown(int value) {
+        int index = 0;
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (value >= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+        droppedItems++;
+    }
+
+    /**
+     * Counts the value and lowers the maximum value while the buckets below the highest one hold enough items,
+     * then while the items of the lower buckets and of the lower part of the highest one are enough.
+     */
+    private void count(int value) {
+        int bucket = (value >> 16) + (BUCKETS >> 1);
+        buckets[bucket]++;
+        countedItems++;
+        if (bucket == maxBucket) {
+            countLow(value & 0xFFFF);
+            return;
+        }
+        if (countedItems - buckets[maxBucket] < items) {
+            return;
+        }
+        do {
+            countedItems -= buckets[maxBucket--];
+        } while (countedItems - buckets[maxBucket] >= items);
+        Arrays.fill(lowBuckets, 0);
+        lowCountedItems = 0;
+        maxLowBucket = BUCKETS - 1;
+        lowerMaxValue();
+    }
+
+    /**
+     * The items of the lower buckets are less than {@code items}, otherwise the highest bucket would be lower.
+     */
+    private void countLow(int lowBits) {
+        lowBuckets[lowBits]++;
+        lowCountedItems++;
+        long lowerItems = countedItems - buckets[maxBucket];
+        if (lowerItems + lowCountedItems - lowBuckets[maxLowBucket] < items) {
+            return;
+        }
+        do {
+            lowCountedItems -= lowBuckets[maxLowBucket--];
+        } while (lowerItems + lowCountedItems - lowBuckets[maxLowBucket] >= items);
+        lowerMaxValue();
+    }
+
+    private void lowerMaxValue() {
+        maxValue = ((maxBucket - (BUCKETS >> 1)) << 16) | maxLowBucket;
+        sorter.prune(maxValue);
+    }
+
+    /**
+     * @return the merger of the page of the sorted items.
+     */
+    public Merger finish() {
+        Merger merger = sorter.finish();
+        if (null != heap) {
+            // the sorter has got no items, it is finished only to release its threads
+            int[] sorted = Arrays.copyOf(heap, heapSize);
+            heap = new int[0];
+            Arrays.sort(sorted);
+            merger = new Merger.ConcatenatingMerger(Collections.singletonList(
+                    new ParticleReader.InMemoryParticleReader(sorted, 0, sorted.length)));
+        }
+        return new Merger.LimitingMerger(merger, offset, limit, largest);
+    }
+
+    /**
+     * @return true if the items are kept by the heap instead of the sorter.
+     */
+    public boolean isHeap() {
+        return null != heap;
+    }
+
+    /**
+     * @return the value which the items put in the sorter do not exceed,
+     * or which they are not less than if the greatest items are kept.
+     */
+    public int getBoundValue() {
+        int bound = Math.min(maxValue, sorter.getMaxValue());
+        return largest ? ~bound : bound;
+    }
+
+    /**
+     * @return true if the page is taken from the greatest items in descending order.
+     */
+    public boolean isLargest() {
+        return largest;
+    }
+
+    /**
+     * @return number of items dropped as they are greater than the page.
+     */
+    public long getDroppedItems() {
+        return droppedItems;
+    }
+
+    public static TopSorterBuilder newTopSorter() {
+        return new TopSorterBuilder();
+    }
+
+    public static class TopSorterBuilder {
+
+        private Sorter sorter;
+        private long offset;
+        private long limit;
+        private boolean largest;
+
+        public TopSorterBuilder withSorter(Sorter sorter) {
+            this.sorter = sorter;
+            return this;
+        }
+
+        /**
+         * @param offset - number of the first items of the sorted order skipped, default 0.
+         */
+        public TopSorterBuilder withOffset(long offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        /**
+         * @param limit - number of items put in the result after the offset.
+         */
+        public TopSorterBuilder withLimit(long limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @param largest - the page is taken from the greatest items in descending order, default false.
+         */
+        public TopSorterBuilder withLargest(boolean largest) {
+            this.largest = largest;
+            return this;
+        }
+
+        public TopSorter build() {
+            if (null == sorter) {
+                throw new IllegalArgumentException("sorter must be set.");
+            }
+            if (offset < 0) {
+                throw new IllegalArgumentException("offset cannot be negative.");
+            }
+            if (limit <= 0 || limit > Long.MAX_VALUE - offset) {
+                throw new IllegalArgumentException("limit must be greater than zero.");
+            }
+            if (Duplicates.COUNTS == sorter.getDuplicates()) {
+                throw new IllegalArgumentException("The counts of duplicates cannot be limited.");
+            }
+            return new TopSorter(sorter, offset, limit, largest);
+        }
+    }
+}
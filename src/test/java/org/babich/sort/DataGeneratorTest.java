@@ -0,0 +1,72 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+class DataGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSameSeed_WhenGeneratingByDifferentThreads_ThenExpectSameDataInEachFormat() throws IOException {
+        int[] expected = newGenerator(DataGenerator.Distribution.UNIFORM, 1).toArray();
+
+        for (DataFormat format : DataFormat.values()) {
+            Path file = tempDir.resolve("data." + format);
+            long bytes = newGenerator(DataGenerator.Distribution.UNIFORM, 3).generate(file, format);
+            Assertions.assertEquals(Files.size(file), bytes);
+
+            int[] result = new int[expected.length + 1];
+            int[] idx = new int[]{0};
+            try (IntInput reader = format.createReader(file)) {
+                Assertions.assertEquals(expected.length, reader.readTo(value -> result[idx[0]++] = value));
+            }
+            Assertions.assertArrayEquals(expected, IntStream.of(result).limit(idx[0]).toArray(), format.name());
+        }
+    }
+
+    @Test
+    void givenOrderedDistributions_WhenGenerating_ThenExpectOrderedData() {
+        int[] sorted = newGenerator(DataGenerator.Distribution.SORTED, 2).toArray();
+        int[] reverse = newGenerator(DataGenerator.Distribution.REVERSE, 2).toArray();
+        int[] nearlySorted = newGenerator(DataGenerator.Distribution.NEARLY_SORTED, 2).toArray();
+
+        Assertions.assertTrue(IntStream.range(1, sorted.length).allMatch(i -> sorted[i - 1] <= sorted[i]));
+        Assertions.assertTrue(IntStream.range(1, reverse.length).allMatch(i -> reverse[i - 1] >= reverse[i]));
+        Assertions.assertTrue(sorted[0] < -2_000_000_000 && sorted[sorted.length - 1] > 2_000_000_000);
+        long descents = IntStream.range(1, nearlySorted.length)
+                .filter(i -> nearlySorted[i - 1] > nearlySorted[i])
+                .count();
+        Assertions.assertTrue(descents > 0 && descents < nearlySorted.length * 5 / 100, "descents " + descents);
+    }
+
+    @Test
+    void givenSkewedDistributions_WhenGenerating_ThenExpectValuesInRange() {
+        int[] duplicates = newGenerator(DataGenerator.Distribution.DUPLICATES, 2).toArray();
+        int[] zipf = newGenerator(DataGenerator.Distribution.ZIPF, 2).toArray();
+        int[] narrow = newGenerator(DataGenerator.Distribution.NARROW, 2).toArray();
+
+        Assertions.assertTrue(IntStream.of(duplicates).distinct().count() <= 100);
+        Assertions.assertTrue(IntStream.of(zipf).allMatch(value -> value >= 0 && value < 1_000_000));
+        Assertions.assertTrue(IntStream.of(zipf).filter(value -> 0 == value).count()
+                > IntStream.of(zipf).filter(value -> 1 == value).count());
+        Assertions.assertTrue(IntStream.of(narrow).allMatch(value -> value >= 0 && value < 1_000_000));
+    }
+
+    private static DataGenerator newGenerator(DataGenerator.Distribution distribution, int threads) {
+        return DataGenerator.newGenerator()
+                .withDistribution(distribution)
+                .withItems(100_000)
+                .withSeed(42L)
+                .withThreads(threads)
+                .withChunkSize(7_000)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class IntBinaryReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenBinaryIntegers_WhenReadingThroughMisalignedBuffer_ThenExpectSameIntegersInBothByteOrders()
+            throws IOException {
+        int[] source = IntStream.concat(IntStream.of(0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE)
+                , new Random().ints(10_000)).toArray();
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            Path file = tempDir.resolve("input-" + order + ".bin");
+            try (IntBinaryWriter writer = IntBinaryWriter.newWriter().withFile(file).withOrder(order)
+                    .withBufferSize(6).build()) {
+                IntStream.of(source).forEach(writer);
+            }
+
+            ByteBuffer expected = ByteBuffer.allocate(source.length * Integer.BYTES).order(order);
+            IntStream.of(source).forEach(expected::putInt);
+            Assertions.assertArrayEquals(expected.array(), Files.readAllBytes(file));
+
+            int[] result = new int[source.length];
+            int[] idx = new int[]{0};
+            try (IntBinaryReader reader = IntBinaryReader.newReader().withFile(file).withOrder(order)
+                    .withBufferSize(7).build()) {
+                Assertions.assertEquals(source.length, reader.readTo(value -> result[idx[0]++] = value));
+                Assertions.assertEquals(source.length * Integer.BYTES, reader.position());
+            }
+            Assertions.assertArrayEquals(source, result);
+        }
+
+        Path incomplete = tempDir.resolve("incomplete.bin");
+        Files.write(incomplete, new byte[]{1, 2, 3, 4, 5});
+        try (IntBinaryReader reader = IntBinaryReader.newReader().withFile(incomplete).build()) {
+            Assertions.assertThrows(UncheckedIOException.class, () -> reader.readTo(value -> {
+            }));
+        }
+    }
+
+    @Test
+    void givenBinaryInput_WhenSortingInBulkWithParallelMerge_ThenExpectSortedBinaryOutput() throws IOException {
+        int[] source = new Random().ints(100_000).toArray();
+        Path input = tempDir.resolve("input.bin");
+        Path output = tempDir.resolve("output.bin");
+        try (IntOutput writer = DataFormat.INT32_LE.createWriter(input)) {
+            IntStream.of(source).forEach(writer);
+        }
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(7_000)
+                .withMergeThreads(3)
+                .build();
+        try (IntInput reader = DataFormat.INT32_LE.createReader(input)) {
+            Assertions.assertEquals(source.length, reader.readTo(sorter));
+        }
+        Assertions.assertEquals(source.length, sorter.finish().doMergeInto(output, DataFormat.INT32_BE));
+
+        Arrays.sort(source);
+        int[] result = new int[source.length];
+        ByteBuffer.wrap(Files.readAllBytes(output)).asIntBuffer().get(result);
+        Assertions.assertArrayEquals(source, result);
+    }
+}
@@ -0,0 +1,63 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class IntHistogramTest {
+
+    @Test
+    void givenRepeatedKeys_WhenCounting_ThenExpectSortedKeysWithCountsAndLimitedNumberOfKeys() {
+        int[] source = IntStream.concat(IntStream.of(0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE)
+                , new Random().ints(100_000, -5_000, 5_000)).toArray();
+
+        IntHistogram histogram = new IntHistogram(10_003);
+        IntStream.of(source).forEach(key -> Assertions.assertTrue(histogram.add(key)));
+
+        Map<Integer, Long> expected = IntStream.of(source).boxed()
+                .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
+        List<Map.Entry<Integer, Long>> result = new ArrayList<>();
+        histogram.forEachSorted((key, count) -> result.add(new AbstractMap.SimpleEntry<>(key, count)));
+
+        Assertions.assertEquals(new ArrayList<>(expected.entrySet()), result);
+        Assertions.assertEquals(source.length, histogram.total());
+        Assertions.assertEquals(expected.size(), histogram.size());
+
+        IntHistogram full = new IntHistogram(2);
+        Assertions.assertTrue(full.add(1));
+        Assertions.assertTrue(full.add(2));
+        Assertions.assertFalse(full.add(3));
+        Assertions.assertTrue(full.add(1));
+        Assertions.assertEquals(2, full.count(1));
+        Assertions.assertEquals(0, full.count(3));
+    }
+
+    @Test
+    void givenConsumerDoneAfterSomeKeys_WhenWalkingSortedKeys_ThenExpectOnlySmallestKeysGiven() {
+        int[] source = new Random().ints(50_000, -100_000, 100_000).toArray();
+        IntHistogram histogram = new IntHistogram(200_000);
+        IntStream.of(source).forEach(histogram::add);
+        List<Integer> expected = IntStream.of(source).distinct().sorted().boxed().collect(Collectors.toList());
+
+        List<Integer> first = new ArrayList<>();
+        histogram.forEachSorted((key, count) -> first.add(key), () -> first.size() == 100);
+        List<Integer> all = new ArrayList<>();
+        histogram.forEachSorted((key, count) -> all.add(key), () -> false);
+
+        Assertions.assertEquals(expected.subList(0, 100), first);
+        Assertions.assertEquals(expected, all);
+
+        long[] page = new long[]{0};
+        new Merger.LimitingMerger(new Merger.CountingMerger(histogram), 10, 1_000).doMergeIn(value -> page[0]++);
+        Assertions.assertEquals(1_000, page[0]);
+    }
+}
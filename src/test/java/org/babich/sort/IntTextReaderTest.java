@@ -0,0 +1,85 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class IntTextReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 16, 1 << 20})
+    void givenTextOfIntegers_WhenParsingWithAnyBufferSize_ThenExpectSameResultAsParseInt(int bufferSize)
+            throws IOException {
+        int[] source = IntStream.concat(IntStream.of(0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE)
+                , new Random(bufferSize).ints(1000)).toArray();
+        String lines = IntStream.of(source)
+                .mapToObj(value -> value % 3 == 0 ? value + "\r\n" : value + "\n")
+                .collect(Collectors.joining());
+
+        Assertions.assertArrayEquals(IntStream.concat(IntStream.of(source), IntStream.of(42)).toArray()
+                , read(write(lines + "+42"), bufferSize, false).build().toArray());
+        Assertions.assertArrayEquals(source, read(write(lines), bufferSize, true).build().toArray());
+    }
+
+    @Test
+    void givenMalformedLine_WhenParsing_ThenExpectErrorWithLineOffset() throws IOException {
+        Path file = write("12\n-7\r\n1x3\n");
+
+        NumberFormatException e = Assertions.assertThrows(NumberFormatException.class
+                , () -> read(file, 4, false));
+        Assertions.assertTrue(e.getMessage().contains("line at byte offset 7"), e.getMessage());
+
+        Assertions.assertThrows(NumberFormatException.class, () -> read(write("1\n\n2\n"), 16, false));
+        Assertions.assertThrows(NumberFormatException.class, () -> read(write("2147483648\n"), 16, false));
+        Assertions.assertThrows(NumberFormatException.class, () -> read(write("5\n-"), 16, false));
+    }
+
+    @Test
+    void givenTextOfIntegers_WhenSkippingItems_ThenExpectReadingFromNextLine() throws IOException {
+        Path file = write("12\r\n-7\n300\n4");
+
+        for (boolean mapped : new boolean[]{false, true}) {
+            try (IntTextReader reader = IntTextReader.newReader().withFile(file).withBufferSize(3)
+                    .withMapped(mapped).build()) {
+                Assertions.assertEquals(7, reader.skip(2));
+                IntStream.Builder result = IntStream.builder();
+                reader.readTo(result);
+                Assertions.assertArrayEquals(new int[]{300, 4}, result.build().toArray());
+            }
+        }
+        try (IntTextReader reader = IntTextReader.newReader().withFile(file).build()) {
+            Assertions.assertEquals(12, reader.skip(4));
+            Assertions.assertThrows(UncheckedIOException.class, () -> reader.skip(1));
+        }
+    }
+
+    IntStream.Builder read(Path file, int bufferSize, boolean mapped) throws IOException {
+        IntStream.Builder result = IntStream.builder();
+        try (IntTextReader reader = IntTextReader.newReader()
+                .withFile(file)
+                .withBufferSize(bufferSize)
+                .withMapped(mapped)
+                .build()) {
+            reader.readTo(result);
+        }
+        return result;
+    }
+
+    Path write(String text) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "input", ".txt"), text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
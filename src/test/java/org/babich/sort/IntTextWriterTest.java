@@ -0,0 +1,52 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+class IntTextWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenIntegers_WhenWritingThroughSmallBuffer_ThenExpectSameTextAsStringValueOf() throws IOException {
+        int[] source = IntStream.concat(IntStream.of(0, 9, 10, 99, 100, -1, -10, -100
+                , Integer.MIN_VALUE, Integer.MAX_VALUE), new Random().ints(1000)).toArray();
+
+        Path file = tempDir.resolve("output.txt");
+        try (IntTextWriter writer = IntTextWriter.newWriter().withFile(file).withBufferSize(20).build()) {
+            IntStream.of(source).forEach(writer);
+        }
+
+        String expected = IntStream.of(source).mapToObj(value -> value + "\n").collect(Collectors.joining());
+        Assertions.assertEquals(expected, new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+        IntStream.of(source).forEach(value -> Assertions
+                .assertEquals(String.valueOf(value).length() + 1, IntTextWriter.lineLength(value)));
+    }
+
+    @Test
+    void givenValuesWithCounts_WhenWritingThroughSmallBuffer_ThenExpectValueAndCountOnEachLine() throws IOException {
+        long[] counts = new long[]{1, 9, 10, 1_000_000_007L, Long.MAX_VALUE};
+
+        Path file = tempDir.resolve("counts.txt");
+        try (IntTextWriter writer = IntTextWriter.newWriter().withFile(file).withBufferSize(20).build()) {
+            for (long count : counts) {
+                writer.acceptCount(Integer.MIN_VALUE, count);
+            }
+        }
+
+        String expected = LongStream.of(counts).mapToObj(count -> Integer.MIN_VALUE + " " + count + "\n")
+                .collect(Collectors.joining());
+        Assertions.assertEquals(expected, new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,184 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class JobManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSortingStoppedAfterSomeBatches_WhenResuming_ThenExpectRecordedBatchesReusedAndSortedResult()
+            throws IOException {
+        int[] source = new Random().ints(10_000).toArray();
+        Path input = Files.write(tempDir.resolve("input.txt"), IntStream.of(source)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.toList()));
+        Path manifestFile = tempDir.resolve("job.manifest");
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+
+        Sorter stopped = newSorter(JobManifest.open(manifestFile, input, "text"), storage);
+        IntStream.of(source).limit(5_500).forEach(stopped);
+        storage.close();
+
+        JobManifest manifest = JobManifest.open(manifestFile, input, "text");
+        List<JobManifest.Run> runs = manifest.getRuns();
+        Assertions.assertEquals(5, runs.size());
+        Assertions.assertEquals(5_000, manifest.getConsumedItems());
+        Assertions.assertEquals(-1, manifest.getConsumedOffset());
+        Assertions.assertTrue(runs.stream().allMatch(run -> run.getMin() <= run.getMax()
+                && Files.exists(run.getFile()) && JobManifest.checksumOf(run.getFile()) == run.getChecksum()));
+
+        int[] result = new int[source.length];
+        int[] idx = new int[]{0};
+        Sorter resumed = newSorter(manifest, storage);
+        try (IntInput reader = DataFormat.TEXT.createReader(input)) {
+            reader.skip(manifest.getConsumedItems());
+            Assertions.assertEquals(5_000, reader.readTo(resumed));
+        }
+        resumed.finish().doMergeIn(value -> result[idx[0]++] = value);
+        Assertions.assertEquals(5, resumed.getResumedParticlesCount());
+
+        manifest.complete();
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertFalse(Files.exists(manifestFile));
+        Assertions.assertTrue(runs.stream().noneMatch(run -> Files.exists(run.getFile())));
+    }
+
+    @Test
+    void givenTextReadingStoppedAfterSomeBatches_WhenResuming_ThenExpectReadingGoesOnFromRecordedOffset()
+            throws IOException {
+        int[] source = new Random().ints(10_000).toArray();
+        List<String> lines = IntStream.of(source).mapToObj(Integer::toString).collect(Collectors.toList());
+        Path input = Files.write(tempDir.resolve("input.txt"), String.join("\r\n", lines).getBytes());
+        Path manifestFile = tempDir.resolve("job.manifest");
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+
+        try (IntInput reader = DataFormat.TEXT.createReader(input)) {
+            Sorter stopped = newSorter(JobManifest.open(manifestFile, input, "text"), storage, reader);
+            int[] read = new int[]{0};
+            Assertions.assertThrows(IllegalStateException.class, () -> reader.readTo(value -> {
+                if (++read[0] > 5_500) {
+                    throw new IllegalStateException("Stopped.");
+                }
+                stopped.accept(value);
+            }));
+        }
+
+        JobManifest manifest = JobManifest.open(manifestFile, input, "text");
+        long offset = lines.stream().limit(5_000).mapToLong(line -> line.length() + 2).sum();
+        Assertions.assertEquals(5, manifest.getRuns().size());
+        Assertions.assertEquals(offset, manifest.getConsumedOffset());
+
+        int[] result = new int[source.length];
+        int[] idx = new int[]{0};
+        try (IntInput reader = DataFormat.TEXT.createReader(input)) {
+            Sorter resumed = newSorter(manifest, storage, reader);
+            reader.seek(manifest.getConsumedOffset());
+            Assertions.assertEquals(5_000, reader.readTo(resumed));
+            resumed.finish().doMergeIn(value -> result[idx[0]++] = value);
+        }
+        manifest.complete();
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+    }
+
+    @Test
+    void givenDamagedBatch_WhenOpeningManifest_ThenExpectOnlyBatchesBeforeItReused() throws IOException {
+        Path input = Files.write(tempDir.resolve("input.txt"), Collections.singletonList("1"));
+        Path manifestFile = tempDir.resolve("job.manifest");
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+
+        Sorter sorter = newSorter(JobManifest.open(manifestFile, input, "text"), storage);
+        new Random().ints(4_500).forEach(sorter);
+        List<JobManifest.Run> runs = JobManifest.open(manifestFile, input, "text").getRuns();
+        try (RandomAccessFile file = new RandomAccessFile(runs.get(2).getFile().toFile(), "rw")) {
+            file.writeInt(file.readInt() + 1);
+        }
+
+        JobManifest manifest = JobManifest.open(manifestFile, input, "text");
+        Assertions.assertEquals(2, manifest.getRuns().size());
+        Assertions.assertEquals(2_000, manifest.getConsumedItems());
+        Assertions.assertFalse(Files.exists(runs.get(3).getFile()));
+
+        Assertions.assertTrue(JobManifest.open(manifestFile, input, "int32-le").getRuns().isEmpty());
+        Assertions.assertFalse(Files.exists(runs.get(0).getFile()));
+    }
+
+    @Test
+    void givenBatchBeingWrittenWhenStopped_WhenOpeningManifest_ThenExpectItsFileDeletedAndRecordedBatchesKept()
+            throws IOException {
+        Path input = Files.write(tempDir.resolve("input.txt"), Collections.singletonList("1"));
+        Path manifestFile = tempDir.resolve("job.manifest");
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+
+        JobManifest stopped = JobManifest.open(manifestFile, input, "text");
+        new Random().ints(2_500).forEach(newSorter(stopped, storage));
+        Path pending = storage.newFile(Integer.BYTES).toPath();
+        stopped.addPendingRun(2, pending);
+        Files.write(pending, new byte[]{1, 2, 3});
+
+        JobManifest manifest = JobManifest.open(manifestFile, input, "text");
+        Assertions.assertFalse(Files.exists(pending));
+        Assertions.assertEquals(2, manifest.getRuns().size());
+        Assertions.assertEquals(2_000, manifest.getConsumedItems());
+    }
+
+    @Test
+    void givenMoreBatchesThanFanIn_WhenMergeFailsAfterIntermediatePasses_ThenExpectRecordedBatchesKept()
+            throws IOException {
+        Path input = Files.write(tempDir.resolve("input.txt"), Collections.singletonList("1"));
+        Path manifestFile = tempDir.resolve("job.manifest");
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withMaxFanIn(3)
+                .withSpillStorage(storage)
+                .withManifest(JobManifest.open(manifestFile, input, "text"))
+                .build();
+        new Random().ints(10_500).forEach(sorter);
+        int[] merged = new int[]{0};
+        Assertions.assertThrows(IllegalStateException.class, () -> sorter.finish().doMergeIn(value -> {
+            if (++merged[0] > 100) {
+                throw new IllegalStateException("Stopped.");
+            }
+        }));
+
+        JobManifest manifest = JobManifest.open(manifestFile, input, "text");
+        Assertions.assertEquals(10, manifest.getRuns().size());
+        Assertions.assertEquals(10_000, manifest.getConsumedItems());
+        Assertions.assertTrue(manifest.getRuns().stream().allMatch(run -> Files.exists(run.getFile())));
+    }
+
+    private static Sorter newSorter(JobManifest manifest, SpillStorage storage) {
+        return Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withSpillStorage(storage)
+                .withManifest(manifest)
+                .build();
+    }
+
+    private static Sorter newSorter(JobManifest manifest, SpillStorage storage, IntInput reader) {
+        return Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withSpillStorage(storage)
+                .withManifest(manifest)
+                .withInputOffset(reader::itemOffset)
+                .build();
+    }
+}
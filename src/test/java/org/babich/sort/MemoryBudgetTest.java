@@ -0,0 +1,49 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MemoryBudgetTest {
+
+    @Test
+    void givenBudgetWithSuffix_WhenParsing_ThenExpectBytes() {
+        Assertions.assertEquals(80L << 20, MemoryBudget.parse("80m").getBytes());
+        Assertions.assertEquals(1L << 30, MemoryBudget.parse("1G").getBytes());
+        Assertions.assertEquals(300_000, MemoryBudget.parse("300000").getBytes());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MemoryBudget.parse("80x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MemoryBudget.parse("1k"));
+    }
+
+    @Test
+    void givenBudget_WhenWorkingOutSortingAndMerging_ThenExpectBothPhasesWithinBudget() {
+        MemoryBudget budget = MemoryBudget.parse("60m");
+
+        int sortThreads = budget.sortThreads(16);
+        Assertions.assertEquals(MemoryBudget.MAX_SORT_THREADS, sortThreads);
+        Assertions.assertTrue((sortThreads + 1L) * budget.batchSize(sortThreads) * Integer.BYTES <= budget.getBytes());
+
+        int maxFanIn = budget.maxFanIn(2);
+        int readBufferSize = budget.readBufferSize(2, maxFanIn);
+        Assertions.assertTrue(2L * maxFanIn * readBufferSize <= budget.getBytes());
+        Assertions.assertTrue(readBufferSize >= MemoryBudget.MIN_READ_BUFFER_SIZE);
+    }
+
+    @Test
+    void givenRadixSorting_WhenWorkingOutBatchSize_ThenExpectBatchesAndBuffersWithinBudget() {
+        MemoryBudget budget = MemoryBudget.parse("60m");
+        int extraBytes = RunSorter.Algorithm.RADIX.extraBytesPerItem();
+
+        int batchSize = budget.batchSize(2, extraBytes);
+        Assertions.assertTrue(batchSize < budget.batchSize(2));
+        Assertions.assertTrue((3L * Integer.BYTES + 2L * extraBytes) * batchSize <= budget.getBytes());
+    }
+
+    @Test
+    void givenSmallBudget_WhenWorkingOutSortingThreads_ThenExpectSortingOnCallerThread() {
+        MemoryBudget budget = MemoryBudget.ofBytes(MemoryBudget.MIN_BATCH_SIZE * Integer.BYTES);
+
+        Assertions.assertEquals(0, budget.sortThreads(8));
+        Assertions.assertEquals(MemoryBudget.MIN_BATCH_SIZE, budget.batchSize(0));
+        Assertions.assertEquals(2, budget.maxFanIn(16));
+    }
+}
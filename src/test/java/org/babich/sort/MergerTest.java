@@ -0,0 +1,234 @@
+package org.babich.sort;
+
+import org.babich.sort.ParticleReader.FileBackedParticleReader.FileBackedParticleReaderBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class MergerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 64, 129})
+    void givenSortedParticles_WhenMergingWithLoserTree_ThenExpectSameResultAsMultiWayMerger(int particlesAmount) {
+        int[][] particles = randomSortedParticles(particlesAmount, new Random(particlesAmount));
+
+        int[] expected = merge(Merger.Strategy.LINEAR, particles);
+        int[] result = merge(Merger.Strategy.LOSER_TREE, particles);
+
+        int[] all = Arrays.stream(particles).flatMapToInt(Arrays::stream).sorted().toArray();
+        Assertions.assertArrayEquals(all, expected);
+        Assertions.assertArrayEquals(expected, result);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 8})
+    void givenSortedParticles_WhenMergingKeyRangesInParallel_ThenExpectSameResultAsSingleMerger(int partitions)
+            throws IOException {
+        Random random = new Random(partitions);
+        int[][] particles = randomSortedParticles(9, random);
+        particles[0] = random.ints(10_000).sorted().toArray();
+        particles[1] = random.ints(5_000, -2_000, 2_000).sorted().toArray();
+
+        int[] expected = merge(Merger.Strategy.LOSER_TREE, particles);
+
+        List<ParticleWriter> writers = writersOf(particles);
+        List<Integer> result = new ArrayList<>();
+        new Merger.PartitionedMerger(writers, partitions, Merger.Strategy.LOSER_TREE)
+                .doMergeIn(result::add);
+        Assertions.assertArrayEquals(expected, result.stream().mapToInt(Integer::intValue).toArray());
+
+        Path output = tempDir.resolve("output.txt");
+        long count = new Merger.PartitionedMerger(writers, partitions, Merger.Strategy.LOSER_TREE)
+                .doMergeInto(output);
+        Assertions.assertEquals(expected.length, count);
+        Assertions.assertArrayEquals(expected, Files.lines(output).mapToInt(Integer::parseInt).toArray());
+
+        int[] distinct = IntStream.of(expected).distinct().toArray();
+        long distinctCount = new Merger.PartitionedMerger(writers, partitions, Merger.Strategy.LOSER_TREE)
+                .doMergeDistinctInto(output, DataFormat.TEXT);
+        Assertions.assertEquals(distinct.length, distinctCount);
+        Assertions.assertArrayEquals(distinct, Files.lines(output).mapToInt(Integer::parseInt).toArray());
+        Assertions.assertTrue(Files.list(tempDir).noneMatch(file -> file.toString().contains(".range")));
+    }
+
+    @Test
+    void givenMoreParticlesThanFanIn_WhenMergingInPasses_ThenExpectSameResultAndReportedPasses() throws IOException {
+        int[][] particles = randomSortedParticles(20, new Random(20));
+        int[] expected = merge(Merger.Strategy.LOSER_TREE, particles);
+
+        Merger merger = new Merger.CascadingMerger(writersOf(particles), 4, Merger.Strategy.LOSER_TREE
+                , this::newWriter
+                , writers -> {
+                    Assertions.assertEquals(4, writers.size());
+                    return Merger.Strategy.LOSER_TREE.create(writers.stream()
+                            .map(ParticleWriter::asParticleReader)
+                            .collect(Collectors.toList()));
+                });
+        List<Integer> result = new ArrayList<>();
+        merger.doMergeIn(result::add);
+
+        Assertions.assertArrayEquals(expected, result.stream().mapToInt(Integer::intValue).toArray());
+        Assertions.assertTrue(merger.passes() >= 3);
+        Assertions.assertTrue(merger.rewrittenBytes() > 0);
+        Assertions.assertTrue(merger.rewrittenBytes() <= (merger.passes() - 1L) * expected.length * Integer.BYTES);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 1000})
+    void givenSortedParticles_WhenMergingReadInAdvance_ThenExpectSameResultAndStallOfEachParticle(int blockSize) {
+        int[][] particles = randomSortedParticles(17, new Random(blockSize));
+        int[] expected = merge(Merger.Strategy.LOSER_TREE, particles);
+
+        long[][] reported = new long[1][];
+        Merger.PrefetchingMerger merger = new Merger.PrefetchingMerger(readersOf(particles)
+                , Merger.Strategy.LOSER_TREE, blockSize, 2, stallNanos -> reported[0] = stallNanos);
+        List<Integer> result = new ArrayList<>();
+        merger.doMergeIn(result::add);
+
+        Assertions.assertArrayEquals(expected, result.stream().mapToInt(Integer::intValue).toArray());
+        Assertions.assertEquals(particles.length, merger.getStallNanos().length);
+        Assertions.assertArrayEquals(merger.getStallNanos(), reported[0]);
+    }
+
+    @Test
+    void givenPageOfMergedData_WhenMerging_ThenExpectMergeStoppedBeforeBatchesAreReadToTheEnd() {
+        Random random = new Random(7);
+        int[][] particles = new int[4][];
+        for (int i = 0; i < particles.length; i++) {
+            particles[i] = random.ints(5_000, -1_000, 1_000).sorted().toArray();
+        }
+        List<Function<List<ParticleReader>, Merger>> mergers = Arrays.asList(Merger.Strategy.LINEAR::create
+                , Merger.Strategy.LOSER_TREE::create, Merger.ConcatenatingMerger::new
+                , readers -> new Merger.CollapsingMerger(Merger.Strategy.LOSER_TREE.create(readers)
+                        , Duplicates.DISTINCT));
+
+        for (Function<List<ParticleReader>, Merger> merger : mergers) {
+            List<Integer> all = new ArrayList<>();
+            merger.apply(readersOf(particles)).doMergeIn(all::add);
+
+            AtomicInteger exhausted = new AtomicInteger();
+            List<ParticleReader> readers = readersOf(particles).stream()
+                    .map(reader -> new ParticleReader.OnExhaustedParticleReader(reader, exhausted::incrementAndGet))
+                    .collect(Collectors.toList());
+            List<Integer> result = new ArrayList<>();
+            new Merger.LimitingMerger(merger.apply(readers), 100, 300).doMergeIn(result::add);
+
+            Assertions.assertEquals(all.subList(100, 400), result);
+            Assertions.assertEquals(0, exhausted.get());
+        }
+    }
+
+    @Test
+    void givenBatchFailingToClose_WhenMergingWithLoserTree_ThenExpectMergeFailed() {
+        List<ParticleReader> readers = readersOf(new int[][]{{1, 3}, {2}});
+        ParticleReader failing = readers.get(0);
+        readers.set(0, new ParticleReader() {
+            @Override
+            public boolean hasNext() {
+                return failing.hasNext();
+            }
+
+            @Override
+            public int readInt() {
+                return failing.readInt();
+            }
+
+            @Override
+            public void close() throws IOException {
+                failing.close();
+                throw new IOException("The batch cannot be closed.");
+            }
+        });
+
+        Assertions.assertThrows(UncheckedIOException.class
+                , () -> Merger.Strategy.LOSER_TREE.create(readers).doMergeIn(value -> {
+                }));
+    }
+
+    ParticleWriter newWriter() {
+        try {
+            return ParticleWriter.FileBackedParticleWriter.newParticleWriter()
+                    .withFile(Files.createTempFile(tempDir, "particle", "").toFile())
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<ParticleWriter> writersOf(int[][] particles) throws IOException {
+        List<ParticleWriter> writers = new ArrayList<>();
+        for (int[] particle : particles) {
+            ParticleWriter writer = newWriter();
+            Arrays.stream(particle).forEach(writer::writeInt);
+            writer.close();
+            writers.add(writer);
+        }
+        return writers;
+    }
+
+    static int[][] randomSortedParticles(int particlesAmount, Random random) {
+        int[][] particles = new int[particlesAmount][];
+        for (int i = 0; i < particlesAmount; i++) {
+            // duplicates and boundary values are expected to be merged as well
+            particles[i] = random.ints(1 + random.nextInt(50), -20, 20).toArray();
+            if (i % 5 == 1) {
+                particles[i] = Arrays.copyOf(particles[i], particles[i].length + 2);
+                particles[i][particles[i].length - 2] = Integer.MIN_VALUE;
+                particles[i][particles[i].length - 1] = Integer.MAX_VALUE;
+            }
+            Arrays.sort(particles[i]);
+        }
+        return particles;
+    }
+
+    static int[] merge(Merger.Strategy strategy, int[][] particles) {
+        List<Integer> result = new ArrayList<>();
+        strategy.create(readersOf(particles)).doMergeIn(result::add);
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static List<ParticleReader> readersOf(int[][] particles) {
+        List<ParticleReader> readers = new ArrayList<>();
+        for (int[] particle : particles) {
+            readers.add(new FileBackedParticleReaderBuilder()
+                    .withInputStream(new ByteArrayInputStream(toBytes(particle)))
+                    .withSize(particle.length)
+                    .build());
+        }
+        return readers;
+    }
+
+    static byte[] toBytes(int[] particle) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutputStream = new DataOutputStream(bytes)) {
+            for (int value : particle) {
+                dataOutputStream.writeInt(value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+class ParticleWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenSortedItems_WhenWritingCompressedParticle_ThenExpectSameItemsInFewerBytes() throws IOException {
+        int[] items = new Random(3).ints(5000, 0, 1_000_000).sorted().toArray();
+        items[0] = Integer.MIN_VALUE;
+        items[items.length - 1] = Integer.MAX_VALUE;
+
+        ParticleWriter writer = write(items);
+
+        Assertions.assertEquals(items.length, writer.size());
+        Assertions.assertTrue(writer.bytesWritten() < items.length * 2L);
+        Assertions.assertArrayEquals(items, read(writer.asParticleReader(), items.length));
+        Assertions.assertEquals(writer.bytesWritten(), writer.bytesRead());
+    }
+
+    @Test
+    void givenNotSortedItems_WhenReadingPartsOfCompressedParticle_ThenExpectSameItems() throws IOException {
+        int[] items = new Random(5).ints(3000).toArray();
+
+        ParticleWriter writer = write(items);
+
+        for (int from : new int[]{0, 1, 1023, 1024, 2500, 3000}) {
+            int to = Math.min(items.length, from + 1500);
+            int[] expected = new int[to - from];
+            System.arraycopy(items, from, expected, 0, expected.length);
+            Assertions.assertArrayEquals(expected, read(writer.asParticleReader(from, to), expected.length));
+        }
+        Assertions.assertEquals(items[0], writer.valueAt(0));
+        Assertions.assertEquals(items[2049], writer.valueAt(2049));
+        Assertions.assertEquals(items[2999], writer.valueAt(2999));
+    }
+
+    @Test
+    void givenCompressedParticle_WhenReadingByRandomReader_ThenExpectEachBlockReadOnce() throws IOException {
+        int[] items = new Random(7).ints(3000, 0, 1_000_000).sorted().toArray();
+
+        ParticleWriter writer = write(items);
+
+        try (ParticleWriter.RandomReader reader = writer.randomReader()) {
+            Assertions.assertEquals(items[1024], reader.valueAt(1024));
+            long blockBytes = writer.bytesRead();
+            for (int i = 1024; i < 2048; i++) {
+                Assertions.assertEquals(items[i], reader.valueAt(i));
+            }
+            Assertions.assertEquals(blockBytes, writer.bytesRead());
+            Assertions.assertEquals(items[2999], reader.valueAt(2999));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void givenRawParticle_WhenReadingPartsByBlocks_ThenExpectSameItems(boolean mapped) throws IOException {
+        int[] items = new Random(9).ints(10_000).toArray();
+        ParticleWriter writer = ParticleWriter.FileBackedParticleWriter.newParticleWriter()
+                .withFile(tempDir.resolve("raw").toFile())
+                .withReadBufferSize(1000)
+                .withMappedReads(mapped)
+                .build();
+        for (int item : items) {
+            writer.writeInt(item);
+        }
+        writer.close();
+
+        for (int from : new int[]{0, 3, 250, 9999}) {
+            int[] expected = new int[items.length - from];
+            System.arraycopy(items, from, expected, 0, expected.length);
+
+            int[] result = new int[expected.length];
+            try (ParticleReader reader = writer.asParticleReader(from, items.length)) {
+                result[0] = reader.readInt();
+                int[] block = new int[777];
+                for (int count = 1, read; (read = reader.readInts(block)) > 0; count += read) {
+                    System.arraycopy(block, 0, result, count, read);
+                }
+            }
+            Assertions.assertArrayEquals(expected, result);
+        }
+        Assertions.assertEquals(items.length * Integer.BYTES * 4L - (3 + 250 + 9999) * Integer.BYTES
+                , writer.bytesRead());
+    }
+
+    private ParticleWriter write(int[] items) {
+        ParticleWriter writer = ParticleWriter.CompressedParticleWriter.newParticleWriter()
+                .withFile(tempDir.resolve("particle").toFile())
+                .build();
+        for (int item : items) {
+            writer.writeInt(item);
+        }
+        writer.close();
+        return writer;
+    }
+
+    private static int[] read(ParticleReader reader, int size) throws IOException {
+        int[] result = new int[size];
+        try (ParticleReader particleReader = reader) {
+            for (int i = 0; i < size; i++) {
+                result[i] = particleReader.readInt();
+            }
+            Assertions.assertFalse(particleReader.hasNext());
+        }
+        return result;
+    }
+}
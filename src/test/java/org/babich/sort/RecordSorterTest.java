@@ -0,0 +1,193 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+class RecordSorterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenRandomLongs_WhenSortingByBatches_ThenExpectSortedKeysAndNoFilesLeft() {
+        int size = 10_000;
+        long[] source = LongStream.concat(LongStream.of(Long.MIN_VALUE, Long.MAX_VALUE, 0, -1)
+                , new Random().longs(size - 4)).toArray();
+
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withBatchSize(1_000)
+                .withSpillStorage(storage)
+                .build();
+        LongStream.of(source).forEach(sorter);
+        RecordMerger merger = sorter.finish();
+
+        long[] result = new long[size];
+        int[] idx = new int[]{0};
+        merger.doMergeIn((LongConsumer) key -> result[idx[0]++] = key);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertEquals(10, merger.getRunsCount());
+        Assertions.assertEquals(0, storage.getFilesCount());
+    }
+
+    @Test
+    void givenMoreBatchesThanMaxFanIn_WhenMerging_ThenExpectSmallestBatchesMergedFirstAndNoFilesLeft() {
+        long[] source = new Random().longs(10_500).toArray();
+
+        SpillStorage storage = SpillStorage.of(Collections.singletonList(tempDir));
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withBatchSize(1_000)
+                .withMaxFanIn(3)
+                .withSpillStorage(storage)
+                .build();
+        LongStream.of(source).forEach(sorter);
+        RecordMerger merger = sorter.finish();
+
+        long[] result = new long[source.length];
+        int[] idx = new int[]{0};
+        merger.doMergeIn((LongConsumer) key -> result[idx[0]++] = key);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertEquals(11, merger.getRunsCount());
+        Assertions.assertEquals(4, merger.getIntermediateMerges());
+        Assertions.assertEquals(0, storage.getFilesCount());
+    }
+
+    @Test
+    void givenMaxFanInLessThanTwo_WhenBuilding_ThenExpectException() {
+        Assertions.assertThrows(IllegalArgumentException.class
+                , () -> RecordSorter.newRecordSorter().withBatchSize(1_000).withMaxFanIn(1).build());
+    }
+
+    @Test
+    void givenRecordsWithPayload_WhenSortingByKey_ThenExpectPayloadMovedWithItsKey() throws IOException {
+        int size = 10_000;
+        RecordLayout layout = RecordLayout.of(32, 8);
+        Random random = new Random();
+
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withLayout(layout)
+                .withBatchSize(700)
+                .build();
+        ByteBuffer record = ByteBuffer.allocate(layout.getRecordSize());
+        for (int i = 0; i < size; i++) {
+            long key = random.nextInt(1_000) - 500L;
+            record.clear();
+            record.putLong(~key).putLong(key).putLong(-key).putLong(key * 31);
+            sorter.accept(record.array(), 0);
+        }
+
+        Path output = tempDir.resolve("sorted.bin");
+        Assertions.assertEquals(size, sorter.finish().doMergeInto(output));
+
+        ByteBuffer result = ByteBuffer.wrap(Files.readAllBytes(output));
+        Assertions.assertEquals(size * layout.getRecordSize(), result.capacity());
+        long previous = Long.MIN_VALUE;
+        while (result.hasRemaining()) {
+            long prefix = result.getLong();
+            long key = result.getLong();
+            Assertions.assertTrue(previous <= key);
+            Assertions.assertEquals(~key, prefix);
+            Assertions.assertEquals(-key, result.getLong());
+            Assertions.assertEquals(key * 31, result.getLong());
+            previous = key;
+        }
+    }
+
+    @Test
+    void givenEqualKeysInSeveralBatches_WhenMerging_ThenExpectRecordsInIncomingOrder() throws IOException {
+        int size = 10_000;
+        RecordLayout layout = RecordLayout.of(16, 0);
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withLayout(layout)
+                .withBatchSize(300)
+                .build();
+        ByteBuffer record = ByteBuffer.allocate(layout.getRecordSize());
+        Random random = new Random();
+        for (int i = 0; i < size; i++) {
+            record.clear();
+            record.putLong(random.nextInt(3)).putLong(i);
+            sorter.accept(record.array(), 0);
+        }
+
+        Path output = tempDir.resolve("sorted.bin");
+        Assertions.assertEquals(size, sorter.finish().doMergeInto(output));
+
+        ByteBuffer result = ByteBuffer.wrap(Files.readAllBytes(output));
+        long previousKey = Long.MIN_VALUE;
+        long previousIndex = -1;
+        while (result.hasRemaining()) {
+            long key = result.getLong();
+            long index = result.getLong();
+            Assertions.assertTrue(previousKey < key || previousIndex < index);
+            previousKey = key;
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    void givenBatchOfRecordsExceedingMaxArraySize_WhenBuilding_ThenExpectException() {
+        RecordLayout layout = RecordLayout.of(1024, 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSorter.newRecordSorter()
+                .withLayout(layout)
+                .withBatchSize(RecordSorter.maxBatchSize(layout) + 1)
+                .build());
+    }
+
+    @Test
+    void givenMemoryBudget_WhenBuilding_ThenExpectBatchAndBlocksOfMergeFitInBudget() {
+        RecordLayout layout = RecordLayout.of(32, 8);
+        MemoryBudget budget = MemoryBudget.ofBytes(1 << 20);
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withLayout(layout)
+                .withMemoryBudget(budget)
+                .build();
+
+        Assertions.assertTrue((long) sorter.getBatchSize() * RecordSorter.bytesPerRecord(layout) <= budget.getBytes());
+        Assertions.assertTrue((long) sorter.getMaxFanIn() * RecordMerger.BLOCK_RECORDS * layout.getRecordSize()
+                <= budget.getBytes());
+        Assertions.assertTrue(sorter.getBatchSize() > 1_000);
+    }
+
+    @Test
+    void givenBinaryFileOfLongs_WhenReadingAndSorting_ThenExpectSortedFile() throws IOException {
+        long[] source = new Random().longs(5_000).toArray();
+        ByteBuffer bytes = ByteBuffer.allocate(source.length * Long.BYTES);
+        LongStream.of(source).forEach(bytes::putLong);
+        Path input = Files.write(tempDir.resolve("input.bin"), bytes.array());
+
+        RecordSorter sorter = RecordSorter.newRecordSorter()
+                .withBatchSize(1_000)
+                .withSpillStorage(SpillStorage.of(Collections.singletonList(tempDir)))
+                .build();
+        Assertions.assertEquals(source.length, sorter.readFrom(input));
+        Path output = tempDir.resolve("sorted.bin");
+        Assertions.assertEquals(source.length, sorter.finish().doMergeInto(output));
+
+        long[] result = new long[source.length];
+        ByteBuffer.wrap(Files.readAllBytes(output)).asLongBuffer().get(result);
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+
+        Files.write(input, new byte[Long.BYTES + 1]);
+        Assertions.assertThrows(UncheckedIOException.class, () -> RecordSorter.newRecordSorter()
+                .withBatchSize(1_000)
+                .build()
+                .readFrom(input));
+    }
+}
@@ -0,0 +1,53 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class RunSorterTest {
+
+    @ParameterizedTest
+    @EnumSource(RunSorter.Algorithm.class)
+    void givenFullRangeOfValues_WhenSortingRange_ThenExpectSortedRangeOnly(RunSorter.Algorithm algorithm) {
+        int[] items = new Random(7).ints(RunSorter.Algorithm.MIN_RADIX_SIZE * 2 + 10).toArray();
+        items[10] = Integer.MIN_VALUE;
+        items[11] = Integer.MAX_VALUE;
+        items[12] = -1;
+        items[13] = 0;
+
+        assertSorted(algorithm.create(), items, 5, items.length - 5);
+    }
+
+    @Test
+    void givenLowCardinalityData_WhenSortingByParallelRadix_ThenExpectSortedItems() {
+        Random random = new Random(11);
+        int[] items = random.ints(RunSorter.Algorithm.MIN_PARALLEL_SIZE + 3, -3, 3).toArray();
+
+        assertSorted(new RunSorter.ParallelRadixSorter(4), items, 1, items.length);
+        assertSorted(new RunSorter.ParallelRadixSorter(3), random.ints(RunSorter.Algorithm.MIN_PARALLEL_SIZE).toArray()
+                , 0, RunSorter.Algorithm.MIN_PARALLEL_SIZE);
+    }
+
+    @Test
+    void givenSmallBatch_WhenResolvingAutomaticSorter_ThenExpectJdkSorter() {
+        RunSorter.Algorithm auto = RunSorter.Algorithm.AUTO;
+
+        Assertions.assertEquals(RunSorter.Algorithm.JDK, auto.resolve(1000, 1, Long.MAX_VALUE));
+        Assertions.assertEquals(RunSorter.Algorithm.JDK, auto.resolve(1 << 20, 1, 1 << 20));
+        Assertions.assertNotEquals(RunSorter.Algorithm.JDK, auto.resolve(1 << 20, 1, Long.MAX_VALUE));
+        Assertions.assertEquals(RunSorter.Algorithm.RADIX, RunSorter.Algorithm.RADIX.resolve(10, 1, 0));
+    }
+
+    private static void assertSorted(RunSorter sorter, int[] items, int from, int to) {
+        int[] expected = items.clone();
+        Arrays.sort(expected, from, to);
+
+        sorter.sort(items, from, to);
+
+        Assertions.assertArrayEquals(expected, items);
+    }
+}
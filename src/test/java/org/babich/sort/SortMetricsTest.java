@@ -0,0 +1,60 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class SortMetricsTest {
+
+    @Test
+    void givenSortingWithMetrics_WhenMergeIsCompleted_ThenExpectPhasesRunsAndMergeInSummary() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        SortMetrics metrics = new SortMetrics().addListener(new SortListener() {
+            @Override
+            public void onPhaseCompleted(SortMetrics.Phase phase, long nanos) {
+                events.add(phase.name());
+            }
+
+            @Override
+            public void onRunWritten(int number, long items, long bytes) {
+                events.add("run " + number + " " + items + " " + bytes);
+            }
+        });
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withMaxFanIn(4)
+                .withListener(metrics)
+                .build();
+
+        metrics.startPhase(SortMetrics.Phase.READING);
+        IntStream.of(new Random().ints(9_500).toArray()).forEach(sorter);
+        metrics.recordInput(9_500, 9_500 * Integer.BYTES);
+        metrics.startPhase(SortMetrics.Phase.FINISHING);
+        Merger merger = sorter.finish();
+        metrics.startPhase(SortMetrics.Phase.MERGING);
+        long[] count = new long[]{0};
+        merger.doMergeIn(value -> count[0]++);
+        metrics.completePhase();
+        metrics.recordSorter(sorter);
+        metrics.recordMerger(merger, count[0]);
+
+        Assertions.assertEquals(9, metrics.getRunsWritten());
+        Assertions.assertEquals(9 * 1_000 * Integer.BYTES, metrics.getRunBytesWritten());
+        Assertions.assertTrue(events.contains("run 8 1000 4000"));
+        Assertions.assertTrue(events.containsAll(Arrays.asList("READING", "FINISHING", "MERGING")));
+        Assertions.assertEquals(4, merger.fanIn());
+        Assertions.assertEquals(2, merger.passes());
+
+        String json = metrics.toJson();
+        Assertions.assertTrue(json.contains("\"runs\":{\"count\":10,\"minItems\":500,\"maxItems\":1000"), json);
+        Assertions.assertTrue(json.contains("\"fanIn\":4,\"passes\":2"), json);
+        Assertions.assertTrue(json.contains("\"outputItems\":9500"), json);
+        Assertions.assertTrue(metrics.getHeapHighWater() > 0);
+    }
+}
@@ -2,11 +2,20 @@ package org.babich.sort;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collector;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,7 +42,7 @@ class SorterTest {
         IntStream.of(source)
                 .boxed()
                 .collect(sortedParticleCollector)
-                .doMergeIn(new Consumer<Integer>() {
+                .doMergeInBoxed(new Consumer<Integer>() {
                     int idx = 0;
 
                     @Override
@@ -46,4 +55,275 @@ class SorterTest {
         Assertions.assertArrayEquals(source, result);
     }
 
-}
\ No newline at end of file
+    @Test
+    void givenRandomPrimitiveItems_WhenThemSorting_ThenExpectSortedResultWithoutBoxing() {
+
+        int size = 91;
+        int[] source = new Random().ints(size).toArray();
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+
+        Sorter.collectSortedParticles(IntStream.of(source), 30)
+                .doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+    }
+
+    @Test
+    void givenParallelStream_WhenSortingWithWorkerThreads_ThenExpectNoLostItems() {
+
+        int size = 100_000;
+        int[] source = new Random().ints(size).toArray();
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+
+        Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withSortThreads(2)
+                .collect(IntStream.of(source).parallel())
+                .doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertEquals(size, idx[0]);
+        Assertions.assertArrayEquals(source, result);
+    }
+
+    @Test
+    void givenRandomItems_WhenSortingByReplacementSelection_ThenExpectSortedResultAndLongerBatches() {
+
+        int size = 10_000;
+        int[] source = new Random().ints(size).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(100)
+                .withRunStrategy(Sorter.RunStrategy.REPLACEMENT_SELECTION)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+        sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertTrue(sorter.getSortedParticlesCount() < size / 100 * 2 / 3);
+    }
+
+    @Test
+    void givenNearlySortedItems_WhenSortingByReplacementSelection_ThenExpectTheOnlyBatch() {
+
+        int size = 10_000;
+        int[] source = IntStream.range(0, size).map(i -> i % 10 == 0 ? i + 50 : i).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(100)
+                .withRunStrategy(Sorter.RunStrategy.REPLACEMENT_SELECTION)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+        sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertEquals(1, sorter.getSortedParticlesCount());
+    }
+
+    @Test
+    void givenAsyncSpill_WhenSortingWithCompressedBatches_ThenExpectSortedResultAndWrittenBytes() {
+
+        int size = 200_000;
+        int[] source = new Random().ints(size).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(10_000)
+                .withSortThreads(2)
+                .withAsyncSpill(true)
+                .withParticleFormat(ParticleFormat.DELTA_VARINT)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+        sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertEquals(20, sorter.getSortedParticlesCount());
+        Assertions.assertTrue(sorter.getBytesWritten() < (long) size * Integer.BYTES);
+        Assertions.assertEquals(sorter.getBytesWritten(), sorter.getBytesRead());
+    }
+
+    @Test
+    void givenSortedAndReversedItems_WhenThemSorting_ThenExpectBatchesReadWithoutMerging() {
+
+        int size = 10_000;
+        for (int[] source : new int[][]{IntStream.range(0, size).toArray()
+                , IntStream.range(0, size).map(idx -> size - idx).toArray()}) {
+
+            SpillStorage spillStorage = SpillStorage.ofTempDirectory();
+            Sorter sorter = Sorter.newSorter()
+                    .withBatchSize(1_000)
+                    .withSpillStorage(spillStorage)
+                    .build();
+            IntStream.of(source).forEach(sorter);
+
+            int[] result = new int[size];
+            int[] idx = new int[]{0};
+            sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+            Arrays.sort(source);
+            Assertions.assertArrayEquals(source, result);
+            Assertions.assertTrue(sorter.isInputSorted());
+            Assertions.assertEquals(10, sorter.getSortedParticlesCount());
+            Assertions.assertEquals(0, spillStorage.getFilesCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    void givenBatchesOfDisjointRanges_WhenMerging_ThenExpectEachBatchDeletedAsSoonAsItIsMerged(int mergeThreads) {
+
+        Random random = new Random();
+        SpillStorage spillStorage = SpillStorage.ofTempDirectory();
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(1_000)
+                .withMergeThreads(mergeThreads)
+                .withSpillStorage(spillStorage)
+                .withInMemoryLastBatch(false)
+                .build();
+        IntStream.range(0, 4).forEach(batch -> random.ints(1_000, batch * 1_000, (batch + 1) * 1_000)
+                .forEach(sorter));
+
+        Map<Integer, Integer> filesCount = new TreeMap<>();
+        sorter.finish().doMergeIn(value -> filesCount.putIfAbsent(value / 1_000
+                , spillStorage.getFilesCount()));
+
+        Assertions.assertEquals(4, filesCount.get(0));
+        Assertions.assertEquals(2, filesCount.get(2));
+        Assertions.assertEquals(1, filesCount.get(3));
+        Assertions.assertEquals(0, spillStorage.getFilesCount());
+    }
+
+    @Test
+    void givenItemsFittingInBatch_WhenThemSorting_ThenExpectNoSpilledBatches() {
+
+        int size = 1_000;
+        int[] source = new Random().ints(size).toArray();
+
+        SpillStorage spillStorage = SpillStorage.ofTempDirectory();
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(size)
+                .withSpillStorage(spillStorage)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+        sorter.finish().doMergeIn(value -> {
+            Assertions.assertEquals(0, spillStorage.getFilesCount());
+            result[idx[0]++] = value;
+        });
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertFalse(sorter.isInputSorted());
+        Assertions.assertEquals(0, sorter.getBytesWritten());
+    }
+
+    @Test
+    void givenLowCardinalityItems_WhenSortingDistinct_ThenExpectEachValueOnceAndSmallBatches() {
+
+        int size = 100_000;
+        int[] source = new Random().ints(size, 0, 100).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(10_000)
+                .withMergeThreads(2)
+                .withDuplicates(Duplicates.DISTINCT)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        List<Integer> result = new ArrayList<>();
+        sorter.finish().doMergeIn(result::add);
+
+        Assertions.assertEquals(IntStream.of(source).distinct().sorted().boxed().collect(Collectors.toList()), result);
+        Assertions.assertTrue(sorter.getBytesWritten() <= 9 * 100 * Integer.BYTES);
+    }
+
+    @Test
+    void givenLowCardinalityItems_WhenSortingCounts_ThenExpectNumberOfOccurrencesOfEachValue() {
+
+        int size = 100_000;
+        int[] source = new Random().ints(size, 0, 100).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(10_000)
+                .withMaxFanIn(4)
+                .withDuplicates(Duplicates.COUNTS)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        Map<Integer, Long> result = new LinkedHashMap<>();
+        sorter.finish().doMergeCountsIn(result::put);
+
+        Map<Integer, Long> expected = IntStream.of(source).boxed()
+                .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
+        Assertions.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(result.entrySet()));
+        Assertions.assertTrue(sorter.getBytesWritten() < (long) size * Integer.BYTES / 10);
+    }
+
+    @Test
+    void givenLowCardinalityItems_WhenCountingSort_ThenExpectSortedResultWithoutBatches() {
+
+        int size = 100_000;
+        int[] source = new Random().ints(size, -50, 50).toArray();
+
+        SpillStorage spillStorage = SpillStorage.ofTempDirectory();
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(10_000)
+                .withCounting(Sorter.Counting.AUTO)
+                .withSpillStorage(spillStorage)
+                .build();
+        IntStream.of(source).forEach(sorter);
+
+        int[] result = new int[size];
+        int[] idx = new int[]{0};
+        sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertTrue(sorter.isCounted());
+        Assertions.assertEquals(100, sorter.getCountedValues());
+        Assertions.assertEquals(0, sorter.getSortedParticlesCount());
+        Assertions.assertEquals(0, spillStorage.getFilesCount());
+    }
+
+    @Test
+    void givenTooManyDistinctItems_WhenCountingSort_ThenExpectFallbackToBatches() {
+
+        int size = 100_000;
+        for (Sorter.Counting counting : new Sorter.Counting[]{Sorter.Counting.AUTO, Sorter.Counting.ON}) {
+            int[] source = new Random().ints(size).toArray();
+
+            Sorter sorter = Sorter.newSorter()
+                    .withBatchSize(10_000)
+                    .withCounting(counting)
+                    .build();
+            IntStream.of(source).forEach(sorter);
+
+            int[] result = new int[size];
+            int[] idx = new int[]{0};
+            sorter.finish().doMergeIn(value -> result[idx[0]++] = value);
+
+            Arrays.sort(source);
+            Assertions.assertArrayEquals(source, result);
+            Assertions.assertFalse(sorter.isCounted());
+            Assertions.assertTrue(sorter.getSortedParticlesCount() > 1);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class SpillStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void givenTwoDirectories_WhenCreatingFiles_ThenExpectFilesStripedAndDeletedOnClose() throws IOException {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        SpillStorage storage = SpillStorage.of(Arrays.asList(first, second));
+
+        File[] files = IntStream.range(0, 4).mapToObj(i -> storage.newFile(0)).toArray(File[]::new);
+
+        Assertions.assertEquals(files[0].getParentFile().toPath(), files[2].getParentFile().toPath());
+        Assertions.assertNotEquals(files[0].getParentFile().toPath(), files[1].getParentFile().toPath());
+        Assertions.assertEquals(4, storage.getFilesCount());
+
+        storage.close();
+        Assertions.assertTrue(Arrays.stream(files).noneMatch(File::exists));
+        Assertions.assertThrows(UncheckedIOException.class, () -> storage.newFile(Long.MAX_VALUE));
+    }
+
+    @Test
+    void givenSpillStorage_WhenMergeIsCompleted_ThenExpectNoFilesLeft() {
+        SpillStorage storage = SpillStorage.of(Arrays.asList(tempDir));
+        int[] source = new Random().ints(10_000).toArray();
+
+        Sorter sorter = Sorter.newSorter()
+                .withBatchSize(500)
+                .withMaxFanIn(4)
+                .withInMemoryLastBatch(false)
+                .withSpillStorage(storage)
+                .build();
+        IntStream.of(source).forEach(sorter);
+        Merger merger = sorter.finish();
+        Assertions.assertEquals(20, storage.getFilesCount());
+
+        int[] result = new int[source.length];
+        int[] idx = new int[]{0};
+        merger.doMergeIn(value -> result[idx[0]++] = value);
+
+        Arrays.sort(source);
+        Assertions.assertArrayEquals(source, result);
+        Assertions.assertEquals(0, storage.getFilesCount());
+    }
+}
@@ -0,0 +1,92 @@
+package org.babich.sort;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class TopSorterTest {
+
+    @Test
+    void givenPageFittingInBatch_WhenSorting_ThenExpectPageKeptByHeapWithoutSpilling() {
+        int[] source = new Random().ints(10_000).toArray();
+        Sorter sorter = Sorter.newSorter().withBatchSize(1_000).build();
+        TopSorter top = TopSorter.newTopSorter().withSorter(sorter).withOffset(200).withLimit(300).build();
+
+        int[] result = sortPage(top, source);
+
+        Assertions.assertTrue(top.isHeap());
+        Assertions.assertEquals(0, sorter.getBytesWritten());
+        Assertions.assertEquals(source.length - 500, top.getDroppedItems());
+        Assertions.assertArrayEquals(IntStream.of(source).sorted().skip(200).limit(300).toArray(), result);
+    }
+
+    @Test
+    void givenPageExceedingBatch_WhenSorting_ThenExpectGreaterItemsDroppedAndBatchesPruned() {
+        int[] source = new Random().ints(50_000).toArray();
+        Sorter sorter = Sorter.newSorter().withBatchSize(1_000).withMaxFanIn(8).build();
+        TopSorter top = TopSorter.newTopSorter().withSorter(sorter).withOffset(1_000).withLimit(3_000).build();
+
+        int[] result = sortPage(top, source);
+
+        Assertions.assertFalse(top.isHeap());
+        Assertions.assertTrue(top.getDroppedItems() > source.length / 2, "dropped " + top.getDroppedItems());
+        Assertions.assertTrue(sorter.getSortedParticlesCount() < source.length / 1_000 / 2);
+        Assertions.assertArrayEquals(IntStream.of(source).sorted().skip(1_000).limit(3_000).toArray(), result);
+    }
+
+    @Test
+    void givenSortedAndNarrowData_WhenSortingPageExceedingBatch_ThenExpectSamePageAsFullSortAndItemsDropped() {
+        int[] sorted = IntStream.range(0, 20_000).map(i -> i * 3).toArray();
+        int[] narrow = new Random().ints(20_000, -50, 50).toArray();
+
+        for (int[] source : Arrays.asList(sorted, narrow)) {
+            Sorter sorter = Sorter.newSorter().withBatchSize(1_000).build();
+            TopSorter top = TopSorter.newTopSorter().withSorter(sorter).withOffset(5_000).withLimit(2_500).build();
+
+            int[] expected = IntStream.of(source).sorted().toArray();
+            Assertions.assertArrayEquals(Arrays.copyOfRange(expected, 5_000, 7_500), sortPage(top, source));
+            // the bound is close to the last item of the page
+            int range = expected[expected.length - 1] - expected[0];
+            Assertions.assertTrue(top.getBoundValue() - expected[7_499] <= range / 10, "bound " + top.getBoundValue());
+            Assertions.assertTrue(top.getDroppedItems() > 0);
+        }
+    }
+
+    @Test
+    void givenLargestItems_WhenSortingPage_ThenExpectPageOfGreatestItemsInDescendingOrder() {
+        int[] source = new Random().ints(50_000).toArray();
+        int[] descending = IntStream.of(source).map(value -> ~value).sorted().map(value -> ~value).toArray();
+
+        for (long limit : new long[]{300, 3_000}) {
+            Sorter sorter = Sorter.newSorter().withBatchSize(1_000).build();
+            TopSorter top = TopSorter.newTopSorter().withSorter(sorter).withOffset(200).withLimit(limit)
+                    .withLargest(true).build();
+
+            Assertions.assertArrayEquals(IntStream.of(descending).skip(200).limit(limit).toArray()
+                    , sortPage(top, source));
+            Assertions.assertTrue(top.getBoundValue() <= descending[(int) limit + 199]);
+        }
+    }
+
+    @Test
+    void givenDistinctDuplicates_WhenSorting_ThenExpectPageOfDistinctValuesAndGreaterItemsDropped() {
+        int[] source = new Random().ints(10_000, 0, 2_000).toArray();
+        Sorter sorter = Sorter.newSorter().withBatchSize(1_000).withDuplicates(Duplicates.DISTINCT).build();
+        TopSorter top = TopSorter.newTopSorter().withSorter(sorter).withOffset(10).withLimit(100).build();
+
+        Assertions.assertArrayEquals(IntStream.of(source).distinct().sorted().skip(10).limit(100).toArray()
+                , sortPage(top, source));
+        Assertions.assertTrue(top.getDroppedItems() > source.length / 2, "dropped " + top.getDroppedItems());
+    }
+
+    private static int[] sortPage(TopSorter top, int[] source) {
+        IntStream.of(source).forEach(top);
+        int[] result = new int[source.length];
+        int[] idx = new int[]{0};
+        top.finish().doMergeIn(value -> result[idx[0]++] = value);
+        return Arrays.copyOf(result, idx[0]);
+    }
+}